@@ -0,0 +1,111 @@
+package com.maze.mazeidea.editor;
+
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Highlighting a whole document: the previous regex ({@code MainWindowController.computeHighlighting}) against
+ * {@link JavaLexer}, both producing the style spans the editor applies, plus the lexer on its own.
+ * Run with {@code mvn -Pjmh test-compile exec:exec@jmh}.
+ * <p>
+ * The {@code javadoc} input keeps each comment under 1,000 characters: the regex's {@code (.|\R)*?} recurses
+ * per character and overflows the stack on comments of a few thousand characters.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LexerBenchmark {
+    private static final String[] KEYWORDS = JavaLexer.KEYWORDS;
+    private static final Pattern PATTERN = Pattern.compile(
+            "(?<KEYWORD>\\b(" + String.join("|", KEYWORDS) + ")\\b)"
+                    + "|(?<PAREN>\\(|\\))"
+                    + "|(?<BRACE>\\{|\\})"
+                    + "|(?<BRACKET>\\[|\\])"
+                    + "|(?<SEMICOLON>;)"
+                    + "|(?<STRING>\"([^\\\\\"]|\\\\.)*\")"
+                    + "|(?<COMMENT>//[^\\n]*|/\\*(.|\\R)*?\\*/)"
+    );
+
+    @Param({"source", "javadoc"})
+    public String input;
+
+    @Param({"10000"})
+    public int lines;
+
+    private String text;
+    private String[] paragraphs;
+    private final JavaLexer lexer = new JavaLexer();
+
+    @Setup
+    public void setUp() {
+        StringBuilder sb = new StringBuilder("package bench;\n\npublic class Big {\n");
+        for (int i = 0; sb.length() < lines * 40; i++) {
+            if ("javadoc".equals(input)) {
+                sb.append("    /**\n");
+                for (int j = 0; j < 12; j++) sb.append("     * Describes step ").append(j).append(" of method m").append(i).append(".\n");
+                sb.append("     */\n");
+            } else {
+                sb.append("    // method ").append(i).append('\n');
+            }
+            sb.append("    public static int m").append(i).append("(int[] a, String s) {\n")
+                    .append("        if (a.length > ").append(i).append(") return a[0] + s.indexOf(\"x\\\"y\");\n")
+                    .append("        for (int k = 0; k < a.length; k++) { a[k] *= 2; }\n")
+                    .append("        return 0;\n")
+                    .append("    }\n");
+        }
+        text = sb.append("}\n").toString();
+        paragraphs = text.split("\n", -1);
+    }
+
+    @Benchmark
+    public StyleSpans<Collection<String>> regexWholeDocument() {
+        Matcher matcher = PATTERN.matcher(text);
+        int lastKwEnd = 0;
+        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
+        while (matcher.find()) {
+            String styleClass =
+                    matcher.group("KEYWORD") != null ? "keyword" :
+                            matcher.group("PAREN") != null ? "paren" :
+                                    matcher.group("BRACE") != null ? "brace" :
+                                            matcher.group("BRACKET") != null ? "bracket" :
+                                                    matcher.group("SEMICOLON") != null ? "semicolon" :
+                                                            matcher.group("STRING") != null ? "string" : "comment";
+            spansBuilder.add(Collections.emptyList(), matcher.start() - lastKwEnd);
+            spansBuilder.add(Collections.singleton(styleClass), matcher.end() - matcher.start());
+            lastKwEnd = matcher.end();
+        }
+        spansBuilder.add(Collections.emptyList(), text.length() - lastKwEnd);
+        return spansBuilder.create();
+    }
+
+    @Benchmark
+    public void lexerWholeDocument(Blackhole bh) {
+        IncrementalHighlighter highlighter = new IncrementalHighlighter(new IncrementalHighlighter.Target() {
+            @Override public int paragraphCount() { return paragraphs.length; }
+            @Override public String paragraphText(int paragraph) { return paragraphs[paragraph]; }
+            @Override public int paragraphAt(int offset) { return 0; }
+            @Override public void setStyleSpans(int paragraph, StyleSpans<Collection<String>> spans) { bh.consume(spans); }
+        }, lexer);
+        highlighter.highlightAll();
+    }
+
+    @Benchmark
+    public int lexerTokensOnly() {
+        int[] tokens = new int[1];
+        Lexer.TokenSink sink = (start, end, type) -> tokens[0]++;
+        int state = Lexer.INITIAL;
+        for (String p : paragraphs) state = lexer.lex(p, state, sink);
+        return tokens[0];
+    }
+}
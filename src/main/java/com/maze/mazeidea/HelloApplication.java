@@ -1,6 +1,9 @@
 package com.maze.mazeidea;
 
+import com.maze.mazeidea.trace.StallDetector;
+import com.maze.mazeidea.trace.Tracer;
 import javafx.application.Application;
+import javafx.application.Platform;
 import javafx.fxml.FXMLLoader;
 import javafx.scene.Scene;
 import javafx.stage.Stage;
@@ -12,57 +15,47 @@ import java.nio.file.Paths;
 public class HelloApplication extends Application {
     @Override
     public void start(Stage stage) throws IOException {
-        // If Launcher did not initialize services, initialize them here using the startup arg or user.dir.
-        try {
-            java.util.List<String> params = getParameters().getRaw();
-            Path projectRoot = (params != null && !params.isEmpty()) ? Paths.get(params.get(0)) : Paths.get(System.getProperty("user.dir"));
-            if (WorkspaceManager.getWorkspaceRoot() == null) {
-                WorkspaceManager.setWorkspace(projectRoot);
-            }
-
-            if (!ServiceManager.isInitialized()) {
-                // initialize minimal services similar to Launcher
-                com.maze.mazeidea.fs.FileWatcherService watcher = new com.maze.mazeidea.fs.FileWatcherService(projectRoot);
-                com.maze.mazeidea.cache.CacheService cache = new com.maze.mazeidea.cache.CacheService(200);
-                com.maze.mazeidea.index.Indexer indexer = new com.maze.mazeidea.index.Indexer(cache);
-                com.maze.mazeidea.search.SearchService search = new com.maze.mazeidea.search.SearchService(indexer);
-                com.maze.mazeidea.lsp.LspService lsp = new com.maze.mazeidea.lsp.LspService();
-
-                ServiceManager.init(watcher, cache, indexer, search);
-                ServiceManager.setLspService(lsp);
-
-                watcher.registerListener(event -> {
-                    switch (event.type()) {
-                        case CREATE:
-                        case MODIFY:
-                            indexer.indexFileAsync(event.path());
-                            break;
-                        case DELETE:
-                            indexer.remove(event.path());
-                            break;
-                        default:
-                            break;
-                    }
-                });
-
-                watcher.start();
-                indexer.start();
+        // watch the FX thread from the first frame on, so blocking calls during startup show up too
+        StallDetector.installOnCurrentThread(Platform::runLater);
+        try (Tracer.Span ignored = Tracer.begin("app.start")) {
+            showMainWindow(stage);
+        }
+    }
 
-                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-                    try { watcher.stop(); } catch (Exception ignored) {}
-                    try { indexer.stop(); } catch (Exception ignored) {}
-                    try { cache.clear(); } catch (Exception ignored) {}
-                    try { lsp.shutdown(); } catch (Exception ignored) {}
-                }));
-            }
-        } catch (Exception ignored) {}
+    private void showMainWindow(Stage stage) throws IOException {
+        java.util.List<String> params = getParameters().getRaw();
+        Path projectRoot = (params != null && !params.isEmpty()) ? Paths.get(params.get(0)) : Paths.get(System.getProperty("user.dir"));
+        if (WorkspaceManager.getWorkspaceRoot() == null) {
+            WorkspaceManager.setWorkspace(projectRoot);
+        }
+
+        // services start in the background after the window is shown; the UI waits on their readiness futures
+        StartupOrchestrator startup = null;
+        if (!ServiceManager.isInitialized()) {
+            startup = StartupOrchestrator.forWorkspace(WorkspaceManager.getWorkspaceRoot());
+            ServiceManager.setStartup(startup);
+            Runtime.getRuntime().addShutdownHook(new Thread(ServiceManager::shutdown));
+        }
 
         FXMLLoader fxmlLoader = new FXMLLoader(HelloApplication.class.getResource("main-view.fxml"));
-        Scene scene = new Scene(fxmlLoader.load(), 1200, 800);
-        scene.getStylesheets().add(HelloApplication.class.getResource("syntax-highlighting.css").toExternalForm());
-        scene.getStylesheets().add(HelloApplication.class.getResource("ide-theme.css").toExternalForm());
+        Scene scene;
+        try (Tracer.Span ignored = Tracer.begin("fxml.load", "main-view.fxml")) {
+            scene = new Scene(fxmlLoader.load(), 1200, 800);
+        }
+        try (Tracer.Span ignored = Tracer.begin("css.load")) {
+            scene.getStylesheets().add(HelloApplication.class.getResource("syntax-highlighting.css").toExternalForm());
+            scene.getStylesheets().add(HelloApplication.class.getResource("ide-theme.css").toExternalForm());
+        }
         stage.setTitle("Maze IDE");
         stage.setScene(scene);
-        stage.show();
+        try (Tracer.Span ignored = Tracer.begin("stage.show")) {
+            stage.show();
+        }
+        Tracer.instant("window.shown");
+
+        if (startup != null) startup.start();
+        if (StartupScenario.isActive()) {
+            StartupScenario.windowShown(fxmlLoader.getController(), ServiceManager.whenStarted());
+        }
     }
 }
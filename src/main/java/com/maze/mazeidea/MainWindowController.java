@@ -1,5 +1,19 @@
 package com.maze.mazeidea;
 
+import com.maze.mazeidea.editor.BracketIndex;
+import com.maze.mazeidea.editor.BracketMarks;
+import com.maze.mazeidea.editor.CompletionPopup;
+import com.maze.mazeidea.editor.IncrementalHighlighter;
+import com.maze.mazeidea.editor.JavaLexer;
+import com.maze.mazeidea.editor.LargeFileViewer;
+import com.maze.mazeidea.editor.LexerRegistry;
+import com.maze.mazeidea.editor.PieceTable;
+import com.maze.mazeidea.fs.FileWatcherService;
+import com.maze.mazeidea.fs.WatchMode;
+import com.maze.mazeidea.project.ProjectTreeItem;
+import com.maze.mazeidea.project.ProjectTreeModel;
+import com.maze.mazeidea.trace.StallDetector;
+import com.maze.mazeidea.trace.Tracer;
 import com.maze.mazeidea.lsp.LspService;
 import com.maze.mazeidea.util.Debouncer;
 import javafx.collections.FXCollections;
@@ -19,13 +33,15 @@ import javafx.scene.layout.StackPane;
 import javafx.scene.layout.BorderPane;
 import javafx.stage.Stage;
 import javafx.stage.WindowEvent;
+import javafx.animation.KeyFrame;
+import javafx.animation.Timeline;
 import javafx.animation.TranslateTransition;
 import javafx.util.Duration;
 import org.kordamp.ikonli.javafx.FontIcon;
 import org.fxmisc.richtext.CodeArea;
 import org.fxmisc.richtext.LineNumberFactory;
-import org.fxmisc.richtext.model.StyleSpans;
-import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.fxmisc.richtext.model.TwoDimensional;
+import org.reactfx.Subscription;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -34,15 +50,13 @@ import java.io.BufferedReader;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.List;
-import java.util.Optional;
 import java.util.prefs.Preferences;
 import java.util.stream.Collectors;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class MainWindowController {
     @FXML public TreeView<java.nio.file.Path> projectTree;
@@ -55,7 +69,9 @@ public class MainWindowController {
     @FXML public ListView<String> toolList;
     @FXML public Label statusLabel;
     @FXML public Label healthStatusLabel;
+    @FXML public Label indexStatusLabel;
     @FXML public MenuItem menuNewProject;
+    @FXML public CheckMenuItem menuPollFileSystem;
     @FXML public TabPane toolTabs;
     @FXML public Button toolProjectButton;
     @FXML public Button toolDatabaseButton;
@@ -65,8 +81,22 @@ public class MainWindowController {
     @FXML public Button toolTerminalButton;
     @FXML public ChoiceBox<String> runConfigChoice;
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "syntax-highlighter"));
-    private final Debouncer debouncer = new Debouncer();
+    private final ExecutorService executor = ServiceManager.getExecutors().single("syntax-highlighter");
+    // workspace the tree and tabs currently show, and whether their changes are recorded for its snapshot
+    private Path uiRoot;
+    private boolean trackUiState = true;
+    private CompletionPopup completion;
+    private final ExecutorService fileLoader = ServiceManager.getExecutors().io("editor", 4, "file-loader", 2);
+    // project detection walks the source tree; keep it off the FX thread
+    private final ExecutorService projectScanner = ServiceManager.getExecutors().single("project-scan");
+    private final ExecutorService treeLister = ServiceManager.getExecutors().io("project-tree", 2, "project-tree", 1);
+    // listings of the tree currently shown; replaced when the tree is rebuilt for another root
+    private volatile ProjectTreeModel treeModel = newTreeModel();
+    // one key per editor, so typing in one tab never drops pending work for another
+    private final Debouncer debouncer = new Debouncer(executor);
+    // each run blocks a thread on the process output for as long as it runs
+    private final ExecutorService runExecutor = ServiceManager.getExecutors().io("run", 32, "run-project", 0);
+    private Timeline indexProgressPoll;
     private Stage runStage;
     private TextArea runConsole;
     private final Preferences prefs = Preferences.userNodeForPackage(MainWindowController.class);
@@ -80,31 +110,7 @@ public class MainWindowController {
     private static final String PREF_RUN_COUNT = "run.config.count";
     private static final String PREF_RUN_SELECTED = "run.config.selected";
 
-    private static final String[] KEYWORDS = new String[] {
-            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
-            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
-            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
-            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super",
-            "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while"
-    };
-
-    private static final String KEYWORD_PATTERN = "\\b(" + String.join("|", KEYWORDS) + ")\\b";
-    private static final String PAREN_PATTERN = "\\(|\\)";
-    private static final String BRACE_PATTERN = "\\{|\\}";
-    private static final String BRACKET_PATTERN = "\\[|\\]";
-    private static final String SEMICOLON_PATTERN = ";";
-    private static final String STRING_PATTERN = "\"([^\\\\\"]|\\\\.)*\"";
-    private static final String COMMENT_PATTERN = "//[^\\n]*|/\\*(.|\\R)*?\\*/";
-
-    private static final Pattern PATTERN = Pattern.compile(
-            "(?<KEYWORD>" + KEYWORD_PATTERN + ")"
-                    + "|(?<PAREN>" + PAREN_PATTERN + ")"
-                    + "|(?<BRACE>" + BRACE_PATTERN + ")"
-                    + "|(?<BRACKET>" + BRACKET_PATTERN + ")"
-                    + "|(?<SEMICOLON>" + SEMICOLON_PATTERN + ")"
-                    + "|(?<STRING>" + STRING_PATTERN + ")"
-                    + "|(?<COMMENT>" + COMMENT_PATTERN + ")"
-    );
+    private static final String[] KEYWORDS = JavaLexer.keywords();
 
     @FXML
     public void initialize() {
@@ -112,6 +118,7 @@ public class MainWindowController {
         loadRunConfigs();
         setupDrawer();
         updateProjectHealth(WorkspaceManager.getWorkspaceRoot());
+        updateWatchModeMenu(WorkspaceManager.getWorkspaceRoot());
 
         TreeItem<java.nio.file.Path> rootNode = new TreeItem<>(null);
         projectTree.setRoot(rootNode);
@@ -125,18 +132,25 @@ public class MainWindowController {
                 if (empty) {
                     setText(null);
                     setGraphic(null);
+                    getStyleClass().remove("ignored-entry");
                 } else if (item == null) {
                     setText("Workspace");
                     setGraphic(createIconNode(null, IconKind.WORKSPACE));
                 } else {
                     java.nio.file.Path fn = item.getFileName();
                     setText(fn != null ? fn.toString() : item.toString());
+                    // the listing already knows which entries are folders; never stat while rendering
                     IconKind kind = IconKind.FILE;
-                    try {
-                        if (java.nio.file.Files.isDirectory(item)) kind = IconKind.FOLDER;
-                        else if (fn != null && "pom.xml".equalsIgnoreCase(fn.toString())) kind = IconKind.POM;
-                    } catch (Exception ignored) {}
+                    if (getTreeItem() instanceof ProjectTreeItem && ((ProjectTreeItem) getTreeItem()).isDirectory()) kind = IconKind.FOLDER;
+                    else if (fn != null && "pom.xml".equalsIgnoreCase(fn.toString())) kind = IconKind.POM;
                     setGraphic(createIconNode(item, kind));
+                    // dim entries excluded by .gitignore and the default ignore rules
+                    boolean ignored = ServiceManager.getIgnoreRules().isIgnored(item, kind == IconKind.FOLDER);
+                    if (ignored) {
+                        if (!getStyleClass().contains("ignored-entry")) getStyleClass().add("ignored-entry");
+                    } else {
+                        getStyleClass().remove("ignored-entry");
+                    }
                 }
             }
         });
@@ -145,109 +159,215 @@ public class MainWindowController {
             if (ev.getClickCount() == 2) {
                 TreeItem<java.nio.file.Path> sel = projectTree.getSelectionModel().getSelectedItem();
                 if (sel != null && sel.getValue() != null) {
-                    Path val = sel.getValue();
-                    try {
-                        if (java.nio.file.Files.isDirectory(val)) {
-                            sel.setExpanded(!sel.isExpanded());
-                        } else {
-                            openFileInEditor(val);
-                        }
-                    } catch (Exception ex) {
-                        // fallback: open as file
-                        openFileInEditor(val);
+                    if (!sel.isLeaf()) {
+                        sel.setExpanded(!sel.isExpanded());
+                    } else {
+                        openFileInEditor(sel.getValue());
                     }
                 }
             }
         });
 
+        // keep expanded folders in step with the file system without listing them again
+        ServiceManager.addFileListener(events -> treeModel.applyEvents(events));
+
         // initial load from WorkspaceManager
-        refreshProjectTree(WorkspaceManager.getWorkspaceRoot());
+        uiRoot = WorkspaceManager.getWorkspaceRoot();
+        refreshProjectTree(uiRoot);
+        restoreUiState(uiRoot);
+        // keep the snapshot's view of open tabs and expanded folders current
+        editorTabs.getTabs().addListener((javafx.collections.ListChangeListener<Tab>) c -> rememberUiState());
+        editorTabs.getSelectionModel().selectedIndexProperty().addListener((obs, o, n) -> rememberUiState());
+        projectTree.getRoot().addEventHandler(TreeItem.<Path>branchExpandedEvent(), e -> rememberUiState());
+        projectTree.getRoot().addEventHandler(TreeItem.<Path>branchCollapsedEvent(), e -> rememberUiState());
+        // services come up after the window is shown; restyle the tree once ignore rules are known
+        ServiceManager.whenReady(StartupOrchestrator.IGNORE_RULES)
+                .whenComplete((r, ex) -> javafx.application.Platform.runLater(projectTree::refresh));
+        ServiceManager.whenStarted()
+                .whenComplete((r, ex) -> javafx.application.Platform.runLater(() -> statusLabel.setText("Services ready")));
+        // the index status is polled only while a workspace is being indexed; updateIndexStatus stops the poll
+        // once it is idle, and the next walk or workspace switch starts it again
+        indexProgressPoll = new Timeline(new KeyFrame(javafx.util.Duration.millis(500), e -> updateIndexStatus()));
+        indexProgressPoll.setCycleCount(Timeline.INDEFINITE);
+        ServiceManager.addIndexingListener(() -> javafx.application.Platform.runLater(indexProgressPoll::play));
+        indexProgressPoll.play();
         // listen for workspace changes
         WorkspaceManager.addListener(root -> {
             // close all editor tabs and refresh tree
             javafx.application.Platform.runLater(() -> {
+                // the previous workspace's state was already recorded; don't overwrite it with this teardown
+                trackUiState = false;
+                uiRoot = root;
                 editorTabs.getTabs().clear();
                 statusLabel.setText("Workspace switched to: " + (root != null ? root.toString() : "(none)"));
                 refreshProjectTree(root);
+                trackUiState = true;
+                restoreUiState(root);
                 refreshRunConfigsForWorkspace(root);
                 updateProjectHealth(root);
+                updateWatchModeMenu(root);
+                indexProgressPoll.play();
             });
         });
     }
 
-    private TreeItem<Path> createNode(Path file) {
-        TreeItem<Path> item = new TreeItem<>(file);
-        if (file != null && java.nio.file.Files.isDirectory(file)) {
-            // placeholder child so the node shows expandable arrow
-            item.getChildren().add(new TreeItem<>(null));
-            item.expandedProperty().addListener((obs, was, isNow) -> {
-                if (isNow) {
-                    // populate on first expansion (placeholder check)
-                    if (item.getChildren().size() == 1 && item.getChildren().get(0).getValue() == null) {
-                        item.getChildren().clear();
-                        try {
-                            java.util.List<Path> kids = new java.util.ArrayList<>();
-                            try (java.util.stream.Stream<Path> s = java.nio.file.Files.list(file)) {
-                                s.sorted().forEach(kids::add);
-                            }
-                            for (Path k : kids) item.getChildren().add(createNode(k));
-                        } catch (Exception ignored) {}
-                    }
-                }
-            });
+    private void rememberUiState() {
+        Path root = uiRoot;
+        if (root == null || !trackUiState) return;
+        Path normalized = root.toAbsolutePath().normalize();
+        List<Path> expanded = new ArrayList<>();
+        collectExpanded(projectTree.getRoot(), expanded);
+        List<Path> tabs = new ArrayList<>();
+        int selected = -1;
+        Tab current = editorTabs.getSelectionModel().getSelectedItem();
+        for (Tab t : editorTabs.getTabs()) {
+            if (!(t.getUserData() instanceof Path)) continue;
+            Path p = ((Path) t.getUserData()).toAbsolutePath().normalize();
+            if (!p.startsWith(normalized)) continue;
+            if (t == current) selected = tabs.size();
+            tabs.add(p);
+        }
+        ServiceManager.setUiState(new WorkspaceSnapshot.UiState(normalized, expanded, tabs, selected));
+    }
+
+    private static void collectExpanded(TreeItem<Path> item, List<Path> out) {
+        for (TreeItem<Path> child : item.getChildren()) {
+            if (child.getValue() != null && child.isExpanded()) {
+                out.add(child.getValue().toAbsolutePath().normalize());
+                collectExpanded(child, out);
+            }
+        }
+    }
+
+    /** Re-expand folders and reopen tabs from the workspace's last snapshot, if any. */
+    private void restoreUiState(Path root) {
+        if (root == null) return;
+        // a workspace visited earlier in this session remembers its state; otherwise use the stored snapshot
+        WorkspaceSnapshot.UiState remembered = ServiceManager.getWorkspaces().uiStateOf(root);
+        if (remembered != null) {
+            applyUiState(remembered);
+            return;
+        }
+        ServiceManager.snapshotFor(root).thenAccept(snapshot -> {
+            if (snapshot != null) javafx.application.Platform.runLater(() -> applyUiState(snapshot.getUi()));
+        });
+    }
+
+    private void applyUiState(WorkspaceSnapshot.UiState ui) {
+        Path current = uiRoot;
+        if (current == null || !current.toAbsolutePath().normalize().equals(ui.getRoot())) return;
+        trackUiState = false;
+        try {
+            applyExpandedAndTabs(ui);
+        } finally {
+            trackUiState = true;
+        }
+        rememberUiState();
+    }
+
+    private void applyExpandedAndTabs(WorkspaceSnapshot.UiState ui) {
+        List<Path> expanded = new ArrayList<>(ui.getExpanded());
+        expanded.sort(java.util.Comparator.comparingInt(Path::getNameCount));
+        for (Path p : expanded) expandWhenListed(projectTree.getRoot(), p);
+        if (!editorTabs.getTabs().isEmpty()) return;
+        List<Path> tabs = ui.getOpenTabs();
+        for (Path p : tabs) {
+            if (Files.isRegularFile(p)) openFileInEditor(p);
+        }
+        int selected = ui.getSelectedTab();
+        if (selected >= 0 && selected < tabs.size()) {
+            for (Tab t : editorTabs.getTabs()) {
+                if (tabs.get(selected).equals(t.getUserData())) editorTabs.getSelectionModel().select(t);
+            }
+        }
+    }
+
+    // expand the folder at target, waiting for each folder on the way to be listed
+    private static void expandWhenListed(TreeItem<Path> parent, Path target) {
+        for (TreeItem<Path> child : parent.getChildren()) {
+            if (!(child instanceof ProjectTreeItem) || child.isLeaf()) continue;
+            ProjectTreeItem item = (ProjectTreeItem) child;
+            Path p = item.getValue().toAbsolutePath().normalize();
+            if (!target.startsWith(p)) continue;
+            item.setExpanded(true);
+            if (!p.equals(target)) item.loaded().thenRun(() -> expandWhenListed(item, target));
+            return;
         }
-        return item;
     }
 
     private void refreshProjectTree(Path root) {
         projectTree.getRoot().getChildren().clear();
+        ProjectTreeModel tree = newTreeModel();
+        treeModel = tree;
         if (root == null) return;
-        try {
-            com.maze.mazeidea.project.ProjectImporter importer = new com.maze.mazeidea.project.ProjectImporter();
-            com.maze.mazeidea.project.ProjectModel model = importer.importProjectModel(root);
-            // create tree with lazy children
-            TreeItem<Path> proj = createNode(root);
-            // ensure top-level pom, modules, and source roots are visible quickly by expanding project node and adding those children
-            proj.setExpanded(true);
-            java.util.Set<Path> pinned = new java.util.LinkedHashSet<>();
-            Path pom = root.resolve("pom.xml");
-            if (pom.toFile().exists()) pinned.add(pom);
-            for (String m : model.getModules()) pinned.add(root.resolve(m));
-            pinned.addAll(model.getSourceRoots());
-            for (Path p : pinned) proj.getChildren().add(createNode(p));
-            projectTree.getRoot().getChildren().add(proj);
-         } catch (Exception e) {
-             // fallback: show user.dir
-             try {
-                 Path cwd = Path.of(System.getProperty("user.dir"));
-                try (java.util.stream.Stream<Path> s = Files.list(cwd)) {
-                    s.limit(200).sorted().forEach(p -> projectTree.getRoot().getChildren().add(createNode(p)));
+        Path dir = root.toAbsolutePath().normalize();
+        // folders are listed in the background as they are expanded
+        ProjectTreeItem proj = new ProjectTreeItem(tree, dir, true);
+        proj.setExpanded(true);
+        projectTree.getRoot().getChildren().add(proj);
+        // top-level pom, modules and source roots are pinned first once the project model is read
+        treeLister.execute(() -> {
+            List<ProjectTreeItem> pinned = new ArrayList<>();
+            boolean imported;
+            try {
+                com.maze.mazeidea.project.ProjectImporter importer = new com.maze.mazeidea.project.ProjectImporter();
+                com.maze.mazeidea.project.ProjectModel model = importer.importProjectModel(dir);
+                java.util.Set<Path> paths = new java.util.LinkedHashSet<>();
+                Path pom = dir.resolve("pom.xml");
+                if (Files.exists(pom)) paths.add(pom);
+                for (String m : model.getModules()) paths.add(dir.resolve(m).normalize());
+                for (Path p : model.getSourceRoots()) paths.add(p.toAbsolutePath().normalize());
+                for (Path p : paths) pinned.add(new ProjectTreeItem(tree, p, Files.isDirectory(p)));
+                imported = true;
+            } catch (Exception e) {
+                imported = false;
+            }
+            boolean ok = imported;
+            javafx.application.Platform.runLater(() -> {
+                if (treeModel != tree) return;
+                if (ok) {
+                    for (ProjectTreeItem p : pinned) proj.pin(p);
+                    return;
                 }
-             } catch (IOException ignored) {}
-         }
-     }
+                // fallback: show user.dir
+                ProjectTreeItem cwd = new ProjectTreeItem(tree, Path.of(System.getProperty("user.dir")).toAbsolutePath(), true);
+                cwd.setExpanded(true);
+                projectTree.getRoot().getChildren().setAll(List.of(cwd));
+            });
+        });
+    }
 
-    private void openFileInEditor(Path filePath) {
+    // folders the workspace watcher reports on stay cached; others are listed again on each expansion
+    private ProjectTreeModel newTreeModel() {
+        return new ProjectTreeModel(treeLister, dir -> {
+            com.maze.mazeidea.fs.FileWatcherService watcher = ServiceManager.getFileWatcher();
+            return watcher != null && watcher.covers(dir);
+        });
+    }
+
+    void openFileInEditor(Path filePath) {
         final String tabName = (filePath.getFileName() != null) ? filePath.getFileName().toString() : filePath.toString();
         Tab t = new Tab(tabName);
+        t.setUserData(filePath);
+        if (LargeFileViewer.isLarge(filePath)) {
+            try {
+                LargeFileViewer viewer = new LargeFileViewer(filePath, fileLoader);
+                t.setContent(viewer);
+                t.setOnClosed(e -> viewer.close());
+                editorTabs.getTabs().add(t);
+                editorTabs.getSelectionModel().select(t);
+                statusLabel.setText("Opened " + filePath + " read-only (large file)");
+            } catch (IOException e) {
+                statusLabel.setText("Failed to open " + filePath + ": " + e.getMessage());
+            }
+            return;
+        }
         final CodeArea codeArea = new CodeArea();
         codeArea.getStyleClass().add("code-area");
         codeArea.setParagraphGraphicFactory(LineNumberFactory.get(codeArea));
         codeArea.setWrapText(false);
         codeArea.setPrefSize(800,600);
 
-        // load file content
-        try {
-            if (Files.exists(filePath) && Files.isRegularFile(filePath)) {
-                String text = Files.readString(filePath);
-                codeArea.replaceText(0, 0, text);
-                StyleSpans<Collection<String>> spans = computeHighlighting(text);
-                codeArea.setStyleSpans(0, spans);
-                com.maze.mazeidea.lsp.LspService lsp = ServiceManager.getLspService(com.maze.mazeidea.lsp.LspService.class);
-                if (lsp != null) lsp.didOpen(filePath, text);
-            }
-        } catch (IOException ignored) {}
-
         // track dirty state
         final boolean[] dirty = new boolean[]{false};
         Runnable markDirty = () -> {
@@ -257,30 +377,71 @@ public class MainWindowController {
             }
         };
 
-        // Debounced syntax highlighting (300ms) and mark dirty
-        codeArea.textProperty().addListener((obs, oldText, newText) -> {
-            markDirty.run();
-            debouncer.debounce(() -> {
-                StyleSpans<Collection<String>> spans = computeHighlighting(newText);
-                javafx.application.Platform.runLater(() -> codeArea.setStyleSpans(0, spans));
-                // notify LSP of the change (debounced)
+        // the tab shows right away; the content is read off the FX thread and highlighted viewport first
+        codeArea.setEditable(false);
+        final boolean[] loading = new boolean[]{true};
+        // the text as a piece table, kept in step with the area; saves and LSP read snapshots
+        // of it instead of copying the whole text out of the area
+        final PieceTable[] document = new PieceTable[]{new PieceTable("")};
+        Subscription[] subscriptions = new Subscription[]{Subscription.EMPTY};
+        final BracketIndex brackets = new BracketIndex();
+        final com.maze.mazeidea.lsp.LspService.PendingChanges lspChanges = new com.maze.mazeidea.lsp.LspService.PendingChanges();
+        fileLoader.execute(() -> {
+            String text = null;
+            try {
+                if (Files.isRegularFile(filePath)) text = Files.readString(filePath);
+            } catch (IOException e) {
+                javafx.application.Platform.runLater(() -> statusLabel.setText("Failed to open " + filePath + ": " + e.getMessage()));
+            }
+            String loaded = text;
+            javafx.application.Platform.runLater(() -> {
+                if (!editorTabs.getTabs().contains(t)) return;
+                if (loaded != null) {
+                    codeArea.replaceText(0, 0, loaded);
+                    codeArea.getUndoManager().forgetHistory();
+                    codeArea.moveTo(0);
+                }
+                document[0] = new PieceTable(loaded != null ? loaded : "");
+                // highlighting follows each edit, re-lexing only the paragraphs it affects
+                Subscription highlighting = IncrementalHighlighter.attach(codeArea, LexerRegistry.forFile(filePath), brackets);
+                // mark dirty and send LSP the edits as ranged changes, batched (300ms, at least once a second while
+                // typing); the start position is the same before and after the edit
+                Subscription edits = codeArea.plainTextChanges().subscribe(c -> {
+                    document[0].replace(c.getPosition(), c.getRemoved().length(), c.getInserted());
+                    markDirty.run();
+                    TwoDimensional.Position start = codeArea.offsetToPosition(c.getPosition(), TwoDimensional.Bias.Forward);
+                    lspChanges.add(start.getMajor(), start.getMinor(), c.getRemoved(), c.getInserted(), document[0].snapshot());
+                    debouncer.debounce(codeArea, () -> {
+                        com.maze.mazeidea.lsp.LspService lsp = ServiceManager.getLspService(com.maze.mazeidea.lsp.LspService.class);
+                        if (lsp != null) lsp.didChange(filePath, lspChanges);
+                    }, 300, 1000);
+                });
+                subscriptions[0] = highlighting.and(edits);
+                loading[0] = false;
+                codeArea.setEditable(true);
+            });
+            if (loaded != null) {
                 com.maze.mazeidea.lsp.LspService lsp = ServiceManager.getLspService(com.maze.mazeidea.lsp.LspService.class);
-                if (lsp != null) lsp.didChange(filePath, newText);
-            }, 300);
+                if (lsp != null) lsp.didOpen(filePath, loaded);
+            }
+        });
+        t.setOnClosed(e -> {
+            debouncer.cancel(codeArea);
+            subscriptions[0].unsubscribe();
         });
 
-        // Save function
+        // Save in the background; the tab stays dirty if it was edited again while the save ran
         Runnable save = () -> {
-            try {
-                Files.writeString(filePath, codeArea.getText());
-                dirty[0] = false;
-                javafx.application.Platform.runLater(() -> t.setText(tabName));
-                if (ServiceManager.isInitialized() && ServiceManager.getIndexer() != null) {
-                    ServiceManager.getIndexer().indexFileAsync(filePath);
+            if (loading[0]) return;
+            PieceTable.Snapshot content = document[0].snapshot();
+            ServiceManager.getSaveService().save(filePath, content).whenComplete((stamp, ex) -> javafx.application.Platform.runLater(() -> {
+                if (ex != null) {
+                    statusLabel.setText("Save failed: " + ex.getMessage());
+                } else if (document[0].snapshot() == content) {
+                    dirty[0] = false;
+                    t.setText(tabName);
                 }
-            } catch (IOException e) {
-                javafx.application.Platform.runLater(() -> statusLabel.setText("Save failed: " + e.getMessage()));
-            }
+            }));
         };
 
         // Save on Ctrl+S and index the file
@@ -292,7 +453,7 @@ public class MainWindowController {
 
             // Basic auto-complete on Ctrl+Space
             if (ev.isControlDown() && ev.getCode() == KeyCode.SPACE) {
-                showSimpleCompletion(codeArea, filePath);
+                showSimpleCompletion(codeArea, filePath, lspChanges, document[0].snapshot());
                 ev.consume();
             }
 
@@ -327,25 +488,25 @@ public class MainWindowController {
         // Save on focus lost
         codeArea.focusedProperty().addListener((obs, oldF, newF) -> { if (!newF && dirty[0]) save.run(); });
 
-        // Bracket matching: highlight matching bracket for caret
-        codeArea.caretPositionProperty().addListener((obs, oldP, newP) -> {
-            int pos = newP.intValue();
-            // naive check: highlight the char at pos-1 if it's a bracket and try to find matching
-            try {
-                if (pos > 0) {
-                    char ch = codeArea.getText().charAt(pos-1);
-                    Optional<Integer> match = findMatchingBracket(codeArea.getText(), pos-1);
-                    if (match.isPresent()) {
-                        // simple visual feedback by selecting the bracket pair briefly
-                        int m = match.get();
-                        javafx.application.Platform.runLater(() -> {
-                            codeArea.selectRange(m, m+1);
-                            codeArea.deselect();
-                        });
-                    }
-                }
-            } catch (Exception ignored) {}
-        });
+        // Bracket matching: mark the bracket before the caret and its match with a style class, looked up in the
+        // bracket index once the edit that moved the caret has been lexed; the caret and selection stay put. The
+        // marks follow edits, so the characters un-marked are the ones that were marked
+        BracketMarks marks = new BracketMarks();
+        codeArea.plainTextChanges().subscribe(c -> marks.edited(c.getPosition(), c.getRemoved().length(), c.getInserted().length()));
+        codeArea.caretPositionProperty().addListener((obs, oldP, newP) -> javafx.application.Platform.runLater(() -> {
+            for (int pos : marks.clear()) markBracket(codeArea, pos, false);
+            int par = codeArea.getCurrentParagraph();
+            int col = codeArea.getCaretColumn();
+            if (col == 0 || !brackets.isBracket(par, col - 1)) return;
+            BracketIndex.Location match = brackets.match(par, col - 1);
+            if (match != null) {
+                int at = codeArea.getAbsolutePosition(par, col - 1);
+                int other = codeArea.getAbsolutePosition(match.paragraph, match.column);
+                markBracket(codeArea, at, true);
+                markBracket(codeArea, other, true);
+                marks.set(at, other);
+            }
+        }));
 
         t.setContent(codeArea);
         editorTabs.getTabs().add(t);
@@ -353,70 +514,44 @@ public class MainWindowController {
         statusLabel.setText("Opened " + filePath);
     }
 
-    private void showSimpleCompletion(CodeArea area, Path filePath) {
-        // try LSP completions first
-        com.maze.mazeidea.lsp.LspService lsp = ServiceManager.getLspService(com.maze.mazeidea.lsp.LspService.class);
-        String[] suggestions = null;
-        if (lsp != null) {
-            int offset = area.getCaretPosition();
-            String prefix = getCompletionPrefix(area);
-            suggestions = lsp.complete(filePath, offset, prefix, area.getText());
-        }
-        if (suggestions == null) {
-            suggestions = KEYWORDS;
-        }
+    // add or drop the matching-bracket class on the character at pos, keeping its syntax classes
+    private static void markBracket(CodeArea area, int pos, boolean on) {
+        if (pos < 0 || pos >= area.getLength()) return;
+        Collection<String> style = new ArrayList<>(area.getStyleOfChar(pos));
+        style.remove("matching-bracket");
+        if (on) style.add("matching-bracket");
+        area.setStyle(pos, pos + 1, style);
+    }
 
-        ContextMenu menu = new ContextMenu();
-        List<MenuItem> items = new ArrayList<>();
-        for (String s : suggestions) {
-            MenuItem it = new MenuItem(s);
-            it.setOnAction(e -> insertCompletion(area, s));
-            items.add(it);
-        }
-        menu.getItems().addAll(items);
-        area.getCaretBounds().ifPresent(bounds -> {
-            javafx.geometry.Point2D p = area.localToScreen(bounds.getMinX(), bounds.getMinY());
-            menu.show(area, p.getX(), p.getY());
-
-            // accept suggestion on Tab or Enter: pick first item if present
-            area.addEventFilter(KeyEvent.KEY_PRESSED, ke -> {
-                if ((ke.getCode() == KeyCode.TAB || ke.getCode() == KeyCode.ENTER) && !menu.getItems().isEmpty()) {
-                    MenuItem first = menu.getItems().get(0);
-                    first.fire();
-                    menu.hide();
-                    ke.consume();
-                }
-                // Escape to hide
-                if (ke.getCode() == KeyCode.ESCAPE) { menu.hide(); ke.consume(); }
-            });
-        });
+    private void showSimpleCompletion(CodeArea area, Path filePath,
+            com.maze.mazeidea.lsp.LspService.PendingChanges pending, CharSequence text) {
+        // local candidates show at once, the language server's are merged in when they arrive; typing on
+        // filters them in the popup instead of asking again
+        if (completion != null) completion.close();
+        com.maze.mazeidea.lsp.LspService lsp = ServiceManager.getLspService(com.maze.mazeidea.lsp.LspService.class);
+        String prefix = getCompletionPrefix(area);
+        int offset = area.getCaretPosition();
+        List<String> local = Arrays.asList(lsp != null ? lsp.localCompletions(filePath, prefix) : KEYWORDS);
+        CompletableFuture<List<String>> remote = lsp != null
+                ? lsp.completeAsync(filePath, pending, offset, text) : CompletableFuture.completedFuture(List.of());
+        completion = CompletionPopup.show(area, offset - prefix.length(), local, remote);
     }
 
+    // identifiers don't span lines, so only the caret's paragraph is looked at
     private static String getCompletionPrefix(CodeArea area) {
-        int pos = area.getCaretPosition();
-        int start = pos - 1;
-        String text = area.getText();
-        while (start >= 0) {
-            char c = text.charAt(start);
-            if (!Character.isJavaIdentifierPart(c)) break;
-            start--;
-        }
-        return text.substring(start+1, pos);
+        String line = area.getParagraph(area.getCurrentParagraph()).getText();
+        int col = area.getCaretColumn();
+        return line.substring(identifierStart(line, col), col);
     }
 
-    private static void insertCompletion(CodeArea area, String completion) {
-        int pos = area.getCaretPosition();
-        int start = pos - 1;
-        String text = area.getText();
+    private static int identifierStart(String line, int col) {
+        int start = col - 1;
         while (start >= 0) {
-            char c = text.charAt(start);
+            char c = line.charAt(start);
             if (!Character.isJavaIdentifierPart(c)) break;
             start--;
         }
-        int replaceFrom = start + 1;
-        javafx.application.Platform.runLater(() -> {
-            area.replaceText(replaceFrom, pos, completion);
-        });
+        return start + 1;
     }
 
     private static String getIndentFromLine(String line) {
@@ -428,52 +563,6 @@ public class MainWindowController {
         return sb.toString();
     }
 
-    private Optional<Integer> findMatchingBracket(String text, int pos) {
-        char ch = text.charAt(pos);
-        char match;
-        int dir;
-        if (ch == '(') { match = ')'; dir = 1; }
-        else if (ch == ')') { match = '('; dir = -1; }
-        else if (ch == '{') { match = '}'; dir = 1; }
-        else if (ch == '}') { match = '{'; dir = -1; }
-        else if (ch == '[') { match = ']'; dir = 1; }
-        else if (ch == ']') { match = '['; dir = -1; }
-        else return Optional.empty();
-
-        int depth = 0;
-        int i = pos;
-        while (i >= 0 && i < text.length()) {
-            char c = text.charAt(i);
-            if (c == ch) depth++;
-            if (c == match) depth--;
-            if (depth == 0 && i != pos) return Optional.of(i);
-            i += dir;
-        }
-        return Optional.empty();
-    }
-
-    private static StyleSpans<Collection<String>> computeHighlighting(String text) {
-        Matcher matcher = PATTERN.matcher(text);
-        int lastKwEnd = 0;
-        StyleSpansBuilder<Collection<String>> spansBuilder = new StyleSpansBuilder<>();
-        while (matcher.find()) {
-            String styleClass =
-                    matcher.group("KEYWORD") != null ? "keyword" :
-                            matcher.group("PAREN") != null ? "paren" :
-                                    matcher.group("BRACE") != null ? "brace" :
-                                            matcher.group("BRACKET") != null ? "bracket" :
-                                                    matcher.group("SEMICOLON") != null ? "semicolon" :
-                                                            matcher.group("STRING") != null ? "string" :
-                                                                    matcher.group("COMMENT") != null ? "comment" : null;
-            assert styleClass != null;
-            spansBuilder.add(java.util.Collections.emptyList(), matcher.start() - lastKwEnd);
-            spansBuilder.add(java.util.Collections.singleton(styleClass), matcher.end() - matcher.start());
-            lastKwEnd = matcher.end();
-        }
-        spansBuilder.add(java.util.Collections.emptyList(), text.length() - lastKwEnd);
-        return spansBuilder.create();
-    }
-
     @FXML
     public void onNewProject() {
         try {
@@ -494,12 +583,97 @@ public class MainWindowController {
         java.io.File dir = chooser.showDialog(null);
         if (dir != null && dir.exists() && dir.isDirectory()) {
             Path p = dir.toPath();
+            // the workspace listener refreshes the tree and tabs
             WorkspaceManager.setWorkspace(p);
-            ServiceManager.switchWorkspace(p);
-            refreshProjectTree(p);
+            ServiceManager.switchWorkspaceAsync(p);
         }
     }
 
+    @FXML
+    public void onTogglePolling() {
+        Path root = WorkspaceManager.getWorkspaceRoot();
+        if (root == null || menuPollFileSystem == null) return;
+        // unchecking asks for native events explicitly; AUTO would go on polling a remote file system
+        WatchMode mode = menuPollFileSystem.isSelected() ? WatchMode.POLLING : WatchMode.NATIVE;
+        WatchMode.setForWorkspace(root, mode);
+        statusLabel.setText("Restarting file watcher...");
+        ServiceManager.restartFileWatcherAsync().whenComplete((active, ex) -> javafx.application.Platform.runLater(() -> {
+            if (active == WatchMode.POLLING) {
+                statusLabel.setText(mode == WatchMode.POLLING ? "Polling for file changes"
+                        : "Native file watching unavailable; polling for file changes");
+            } else if (active == WatchMode.NATIVE) {
+                statusLabel.setText("Watching file changes natively");
+            }
+            updateWatchModeMenu(root);
+        }));
+    }
+
+    // checked when the workspace is polled, whether chosen or resolved from AUTO
+    private void updateWatchModeMenu(Path root) {
+        if (menuPollFileSystem == null) return;
+        menuPollFileSystem.setDisable(root == null);
+        FileWatcherService watcher = ServiceManager.getFileWatcher();
+        WatchMode active = watcher != null ? watcher.getActiveMode() : null;
+        menuPollFileSystem.setSelected(root != null
+                && (active != null ? active : WatchMode.forWorkspace(root)) == WatchMode.POLLING);
+    }
+
+    /** Live table of the thread pools, to see which subsystem is saturated while the IDE stutters. */
+    @FXML
+    public void onShowThreadPools() {
+        TextArea report = new TextArea(ServiceManager.getExecutors().report());
+        report.setEditable(false);
+        report.setStyle("-fx-font-family: monospace;");
+        Timeline refresh = new Timeline(new KeyFrame(javafx.util.Duration.seconds(1),
+                e -> report.setText(ServiceManager.getExecutors().report())));
+        refresh.setCycleCount(Timeline.INDEFINITE);
+        Stage stage = new Stage();
+        stage.setTitle("Thread Pools");
+        stage.setScene(new Scene(report, 960, 420));
+        stage.setOnHidden(e -> refresh.stop());
+        stage.show();
+        refresh.play();
+    }
+
+    /** Stalls of the FX thread recorded by the watchdog, with the stacks it was stuck in. */
+    @FXML
+    public void onShowUiStalls() {
+        StallDetector detector = StallDetector.get();
+        TextArea report = new TextArea(detector != null ? detector.report()
+                : "The stall detector is disabled (-D" + StallDetector.THRESHOLD_PROPERTY + "=0).");
+        report.setEditable(false);
+        report.setStyle("-fx-font-family: monospace;");
+        Button refresh = new Button("Refresh");
+        Button clear = new Button("Clear");
+        Button save = new Button("Save...");
+        HBox buttons = new HBox(8, refresh, clear, save);
+        buttons.setPadding(new javafx.geometry.Insets(6));
+        buttons.setDisable(detector == null);
+        BorderPane content = new BorderPane(report);
+        content.setBottom(buttons);
+        Stage stage = new Stage();
+        refresh.setOnAction(e -> report.setText(detector.report()));
+        clear.setOnAction(e -> {
+            detector.clear();
+            report.setText(detector.report());
+        });
+        save.setOnAction(e -> {
+            javafx.stage.FileChooser chooser = new javafx.stage.FileChooser();
+            chooser.setInitialFileName("ui-stalls.txt");
+            java.io.File file = chooser.showSaveDialog(stage);
+            if (file == null) return;
+            try {
+                detector.dump(file.toPath());
+                statusLabel.setText("UI stalls written to " + file);
+            } catch (IOException ex) {
+                statusLabel.setText("Failed to write UI stalls: " + ex.getMessage());
+            }
+        });
+        stage.setTitle("UI Stalls");
+        stage.setScene(new Scene(content, 960, 520));
+        stage.show();
+    }
+
     @FXML
     public void onSearch() {
         try {
@@ -605,7 +779,7 @@ public class MainWindowController {
         console.appendText("> " + String.join(" ", cmd) + System.lineSeparator());
         statusLabel.setText((debug ? "Debugging " : "Running ") + cfg.name + "...");
 
-        Thread t = new Thread(() -> {
+        runExecutor.execute(() -> {
             ProcessBuilder pb = new ProcessBuilder(cmd);
             pb.directory(workDir.toFile());
             pb.redirectErrorStream(true);
@@ -634,9 +808,7 @@ public class MainWindowController {
                     statusLabel.setText("Run failed.");
                 });
             }
-        }, "run-project");
-        t.setDaemon(true);
-        t.start();
+        });
     }
 
     private RunConfig getSelectedRunConfig() {
@@ -731,18 +903,30 @@ public class MainWindowController {
                 runConfigs.add(new RunConfig(name, RunType.valueOf(type), cmd, args, dir));
             }
         }
-        if (runConfigs.isEmpty()) {
-            Path root = WorkspaceManager.getWorkspaceRoot();
-            runConfigs.addAll(detectDefaultConfigs(root));
-        } else {
-            ensureDefaultConfigs(WorkspaceManager.getWorkspaceRoot());
-        }
         refreshRunConfigChoice();
+        addDetectedConfigs(WorkspaceManager.getWorkspaceRoot());
     }
 
     private void refreshRunConfigsForWorkspace(Path root) {
-        ensureDefaultConfigs(root);
-        refreshRunConfigChoice();
+        addDetectedConfigs(root);
+    }
+
+    /** Detect run configurations in the background and add the ones not configured yet. */
+    private void addDetectedConfigs(Path root) {
+        if (root == null) return;
+        projectScanner.execute(() -> {
+            List<RunConfig> detected = detectDefaultConfigs(root);
+            javafx.application.Platform.runLater(() -> {
+                boolean changed = false;
+                for (RunConfig c : detected) {
+                    if (!hasRunConfig(c.name)) {
+                        runConfigs.add(c);
+                        changed = true;
+                    }
+                }
+                if (changed) refreshRunConfigChoice();
+            });
+        });
     }
 
     private void saveRunConfigs() {
@@ -792,21 +976,6 @@ public class MainWindowController {
         return out;
     }
 
-    private void ensureDefaultConfigs(Path root) {
-        if (root == null) return;
-        if (isSpringBootProject(root) && !hasRunConfig("Spring Boot")) {
-            runConfigs.add(new RunConfig("Spring Boot", RunType.SPRING_BOOT, "mvn", "spring-boot:run", root.toString()));
-        }
-        if (Files.exists(root.resolve("angular.json")) && !hasRunConfig("Angular")) {
-            runConfigs.add(new RunConfig("Angular", RunType.ANGULAR, "", "", root.toString()));
-        }
-        if (isReactProject(root) && !hasRunConfig("React")) {
-            runConfigs.add(new RunConfig("React", RunType.NODE, "", "", root.toString()));
-        } else if (Files.exists(root.resolve("package.json")) && !hasRunConfig("Node")) {
-            runConfigs.add(new RunConfig("Node", RunType.NODE, "", "", root.toString()));
-        }
-    }
-
     private boolean hasRunConfig(String name) {
         for (RunConfig c : runConfigs) {
             if (name.equalsIgnoreCase(c.name)) return true;
@@ -848,6 +1017,10 @@ public class MainWindowController {
 
     private void updateProjectHealth(Path root) {
         if (healthStatusLabel == null) return;
+        projectScanner.execute(() -> detectProjectHealth(root));
+    }
+
+    private void detectProjectHealth(Path root) {
         boolean spring = isSpringBootProject(root);
         boolean angular = root != null && Files.exists(root.resolve("angular.json"));
         boolean react = isReactProject(root);
@@ -983,6 +1156,26 @@ public class MainWindowController {
         stage.show();
     }
 
+    private void updateIndexStatus() {
+        if (indexStatusLabel == null) return;
+        WorkspaceContext ctx = ServiceManager.getActiveWorkspace();
+        if (ctx == null || !ctx.isStarted()) {
+            indexStatusLabel.setText("");
+            indexProgressPoll.stop();
+            return;
+        }
+        WorkspaceContext.IndexProgress p = ctx.progress();
+        if (p.found() == 0 && !p.scanning()) {
+            indexStatusLabel.setText("");
+            indexProgressPoll.stop();
+        } else if (p.isDone()) {
+            indexStatusLabel.setText("Indexed " + p.found() + " files");
+            indexProgressPoll.stop();
+        } else {
+            indexStatusLabel.setText("Indexed " + p.indexed() + " of " + p.found() + (p.scanning() ? "+" : "") + " files");
+        }
+    }
+
     private String defaultWorkingDir() {
         Path root = WorkspaceManager.getWorkspaceRoot();
         return root != null ? root.toString() : System.getProperty("user.dir");
@@ -990,8 +1183,13 @@ public class MainWindowController {
 
     @FXML
     public void onExit() {
+        if (indexProgressPoll != null) indexProgressPoll.stop();
         debouncer.shutdown();
         executor.shutdownNow();
+        fileLoader.shutdownNow();
+        projectScanner.shutdownNow();
+        treeLister.shutdownNow();
+        runExecutor.shutdownNow();
         System.exit(0);
     }
 
@@ -1040,7 +1238,7 @@ public class MainWindowController {
         return l;
     }
 
-    private void selectToolTab(String name) {
+    void selectToolTab(String name) {
         if (toolTabs == null) return;
         for (Tab t : toolTabs.getTabs()) {
             if (name.equalsIgnoreCase(t.getText())) {
@@ -1059,7 +1257,20 @@ public class MainWindowController {
         if (toolTabs != null) {
             toolTabs.getSelectionModel().selectedItemProperty().addListener((obs, oldV, newV) -> {
                 if (newV != null && drawerTitle != null) drawerTitle.setText(newV.getText());
+                loadLazyTab(newV);
             });
+            loadLazyTab(toolTabs.getSelectionModel().getSelectedItem());
+        }
+    }
+
+    /** Tool tabs declare their FXML in userData and are loaded the first time they are selected. */
+    private void loadLazyTab(Tab tab) {
+        if (tab == null || tab.getContent() != null || !(tab.getUserData() instanceof String)) return;
+        String fxml = (String) tab.getUserData();
+        try (Tracer.Span ignored = Tracer.begin("tool.load", fxml)) {
+            tab.setContent(FXMLLoader.load(getClass().getResource(fxml)));
+        } catch (Exception e) {
+            tab.setContent(new Label("Failed to load " + tab.getText() + ": " + e.getMessage()));
         }
     }
 
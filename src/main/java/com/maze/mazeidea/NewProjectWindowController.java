@@ -743,7 +743,7 @@ public class NewProjectWindowController {
                              if (btn == ButtonType.YES) {
                                  try {
                                      WorkspaceManager.setWorkspace(finalTarget);
-                                     ServiceManager.switchWorkspace(finalTarget);
+                                     ServiceManager.switchWorkspaceAsync(finalTarget);
                                  } catch (Exception ignored) {}
                              } else {
                                  Alert info = new Alert(Alert.AlertType.INFORMATION, "Created project at: " + finalTarget.toAbsolutePath().toString(), ButtonType.OK);
@@ -754,7 +754,7 @@ public class NewProjectWindowController {
                  }
              } else {
                  WorkspaceManager.setWorkspace(target);
-                 ServiceManager.switchWorkspace(target);
+                 ServiceManager.switchWorkspaceAsync(target);
              }
 
          } catch (Exception e) {
@@ -14,7 +14,6 @@ import javafx.stage.Stage;
 import java.nio.file.Path;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class SearchWindowController {
     @FXML
@@ -25,7 +24,7 @@ public class SearchWindowController {
     public ListView<String> resultsList;
 
     private final SearchService searchService;
-    private final ExecutorService searchExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "search-worker"));
+    private final ExecutorService searchExecutor = ServiceManager.getExecutors().io("search", 1, "search-worker", 1);
 
     public SearchWindowController() {
         // prefer global search service if initialized
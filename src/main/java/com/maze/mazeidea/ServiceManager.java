@@ -1,104 +1,213 @@
 package com.maze.mazeidea;
 
 import com.maze.mazeidea.cache.CacheService;
+import com.maze.mazeidea.fs.FileEvent;
+import com.maze.mazeidea.fs.FileStamp;
 import com.maze.mazeidea.fs.FileWatcherService;
+import com.maze.mazeidea.fs.WatchMode;
+import com.maze.mazeidea.fs.IgnoreRules;
+import com.maze.mazeidea.fs.SaveService;
 import com.maze.mazeidea.index.Indexer;
 import com.maze.mazeidea.search.SearchService;
+import com.maze.mazeidea.trace.Tracer;
+import com.maze.mazeidea.util.ExecutorRegistry;
 
-import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
 
+/**
+ * Global access to the services of the active workspace. Each open workspace has its own
+ * {@link WorkspaceContext} in the {@link WorkspaceRegistry}; the getters below resolve against the active one.
+ */
 public final class ServiceManager {
-    private static volatile FileWatcherService fileWatcher;
-    private static volatile CacheService cacheService;
-    private static volatile Indexer indexer;
-    private static volatile SearchService searchService;
+    private static final ExecutorRegistry executors = ExecutorRegistry.shared();
+    private static final WorkspaceRegistry workspaces = new WorkspaceRegistry(WorkspaceBudget.fromSystemProperties());
     private static volatile Object lspService; // keep generic to avoid tight coupling initially
+    private static volatile StartupOrchestrator startup;
+    // workspace switches start services and processes; they run here, one at a time, off the FX thread
+    private static final ExecutorService switcher = executors.single("workspace-switch");
+    private static final List<Consumer<List<FileEvent>>> fileListeners = new CopyOnWriteArrayList<>();
+    private static final List<Runnable> indexingListeners = new CopyOnWriteArrayList<>();
+    // saved files go straight to their workspace's indexer, and its watcher skips the events they cause
+    private static final SaveService saves = new SaveService(executors.io("editor", 4, "file-saver", 1), new SaveService.Listener() {
+        @Override
+        public void replacing(Path file, FileStamp stamp) {
+            WorkspaceContext ctx = workspaces.owning(file);
+            FileWatcherService watcher = ctx != null ? ctx.getFileWatcher() : null;
+            if (watcher != null) watcher.expectOwnWrite(file, stamp);
+        }
+
+        @Override
+        public void saved(Path file, String content, FileStamp stamp) {
+            WorkspaceContext ctx = workspaces.owning(file);
+            Indexer indexer = ctx != null ? ctx.getIndexer() : null;
+            if (indexer != null) indexer.indexSaved(file, content, stamp);
+        }
+    });
 
     private ServiceManager() {}
 
-    public static void init(FileWatcherService watcher, CacheService cache, Indexer idx, SearchService search) {
-        fileWatcher = watcher;
-        cacheService = cache;
-        indexer = idx;
-        searchService = search;
+    public static WorkspaceRegistry getWorkspaces() { return workspaces; }
+
+    /** Thread pools of all subsystems, with their queue depth, latency and rejection metrics. */
+    public static ExecutorRegistry getExecutors() { return executors; }
+    public static WorkspaceContext getActiveWorkspace() { return workspaces.active(); }
+
+    public static FileWatcherService getFileWatcher() {
+        WorkspaceContext ctx = workspaces.active();
+        return ctx != null ? ctx.getFileWatcher() : null;
+    }
+
+    public static CacheService getCacheService() {
+        WorkspaceContext ctx = workspaces.active();
+        return ctx != null ? ctx.getCacheService() : null;
+    }
+
+    public static Indexer getIndexer() {
+        WorkspaceContext ctx = workspaces.active();
+        return ctx != null ? ctx.getIndexer() : null;
+    }
+
+    /**
+     * Receive the coalesced events of the workspace file watchers, on their dispatcher threads. Unlike a
+     * listener on one {@link FileWatcherService}, this survives workspace switches and watcher restarts.
+     */
+    public static void addFileListener(Consumer<List<FileEvent>> listener) {
+        fileListeners.add(listener);
+    }
+
+    static void fileEvents(List<FileEvent> events) {
+        for (Consumer<List<FileEvent>> listener : fileListeners) {
+            try {
+                listener.accept(events);
+            } catch (Exception ignored) {}
+        }
+    }
+
+    /** Called, on a background thread, whenever a workspace starts bringing its index up to date. */
+    public static void addIndexingListener(Runnable listener) {
+        indexingListeners.add(listener);
+    }
+
+    static void indexingStarted() {
+        for (Runnable listener : indexingListeners) {
+            try {
+                listener.run();
+            } catch (Exception ignored) {}
+        }
+    }
+
+    /** Background saving of editor content; see {@link SaveService}. */
+    public static SaveService getSaveService() { return saves; }
+
+    public static SearchService getSearchService() {
+        WorkspaceContext ctx = workspaces.active();
+        return ctx != null ? ctx.getSearchService() : null;
+    }
+
+    public static boolean isInitialized() { return getIndexer() != null; }
+
+    /** The orchestrator bringing services up, so callers can wait for a specific stage. */
+    public static void setStartup(StartupOrchestrator orchestrator) { startup = orchestrator; }
+
+    public static CompletableFuture<Void> whenReady(String stage) {
+        StartupOrchestrator o = startup;
+        return o != null ? o.readiness(stage) : CompletableFuture.completedFuture(null);
     }
 
-    public static FileWatcherService getFileWatcher() { return fileWatcher; }
-    public static CacheService getCacheService() { return cacheService; }
-    public static Indexer getIndexer() { return indexer; }
-    public static SearchService getSearchService() { return searchService; }
+    public static CompletableFuture<Void> whenStarted() {
+        StartupOrchestrator o = startup;
+        return o != null ? o.completion() : CompletableFuture.completedFuture(null);
+    }
+
+    /** Ignore rules of the active workspace, shared by the watcher, the indexer and the project tree. */
+    public static IgnoreRules getIgnoreRules() {
+        WorkspaceContext ctx = workspaces.active();
+        return ctx != null ? ctx.getIgnoreRules() : IgnoreRules.none();
+    }
 
-    public static boolean isInitialized() { return indexer != null; }
+    public static void setIgnoreRules(IgnoreRules rules) {
+        WorkspaceContext ctx = workspaces.active();
+        if (ctx != null) ctx.setIgnoreRules(rules);
+    }
 
     // LSP service accessor - object typed to avoid requiring the class before it's created
     public static void setLspService(Object svc) { lspService = svc; }
     public static <T> T getLspService(Class<T> cls) { return cls.cast(lspService); }
 
     /**
-     * Switch the watched workspace root: stop the current watcher, create a new watcher for the new root,
-     * re-wire events to the existing indexer, start watching, and perform an initial indexing of files.
+     * Switch the active workspace. A workspace that is still hot is reused as is; otherwise its services
+     * are started (restoring its snapshot if there is one) and the least recently used workspaces beyond
+     * the budget are paged out.
      */
     public static synchronized void switchWorkspace(Path newRoot) {
-        try {
-            if (fileWatcher != null) {
-                try { fileWatcher.stop(); } catch (Exception ignored) {}
+        try (Tracer.Span ignored = Tracer.begin("workspace.switch", String.valueOf(newRoot))) {
+            WorkspaceContext ctx = workspaces.activate(newRoot);
+            if (!ctx.isStarted()) {
+                try {
+                    ctx.open();
+                } catch (Exception e) {
+                    System.err.println("Failed to switch workspace watcher: " + e.getMessage());
+                }
+
+                // start LSP for new workspace
+                try (Tracer.Span lspSpan = Tracer.begin("lsp.start")) {
+                    com.maze.mazeidea.lsp.LspService lsp = getLspService(com.maze.mazeidea.lsp.LspService.class);
+                    if (lsp != null) lsp.startForWorkspace(ctx.getRoot());
+                } catch (Exception ignoredLsp) {}
+
+                // bring the index up to date in the background
+                ctx.indexWorkspace();
             }
-        } catch (Exception ignored) {}
+            workspaces.enforceBudget();
+        }
+    }
+
+    /** {@link #switchWorkspace} in the background; use this from the FX thread. */
+    public static CompletableFuture<Void> switchWorkspaceAsync(Path newRoot) {
+        return CompletableFuture.runAsync(() -> switchWorkspace(newRoot), switcher);
+    }
+
+    /** Latest project tree and editor state of a workspace, saved with its snapshot. */
+    public static void setUiState(WorkspaceSnapshot.UiState state) { workspaces.setUiState(state); }
+
+    /** The stored snapshot of {@code root} (null value if there is none), loaded once in the background. */
+    public static CompletableFuture<WorkspaceSnapshot> snapshotFor(Path root) {
+        return workspaces.snapshotFor(root);
+    }
 
-        // stop LSP for previous workspace
+    /** Stop all background services; used from the JVM shutdown hook. */
+    public static void shutdown() {
+        saves.close(5000);
+        workspaces.closeAll();
         try {
             com.maze.mazeidea.lsp.LspService lsp = getLspService(com.maze.mazeidea.lsp.LspService.class);
-            if (lsp != null) {
-                Path prev = (fileWatcher != null) ? fileWatcher.getRoot() : null;
-                if (prev != null) lsp.stopForWorkspace(prev);
-            }
+            if (lsp != null) lsp.shutdown();
         } catch (Exception ignored) {}
+    }
 
-        try {
-            FileWatcherService watcher = new FileWatcherService(newRoot);
-            // wire up file events to the indexer
-            watcher.registerListener(event -> {
-                switch (event.type()) {
-                    case CREATE:
-                    case MODIFY:
-                        if (indexer != null) indexer.indexFileAsync(event.path());
-                        break;
-                    case DELETE:
-                        if (indexer != null) indexer.remove(event.path());
-                        break;
-                    default:
-                        break;
-                }
-            });
-            watcher.start();
-            fileWatcher = watcher;
-
-            // start LSP for new workspace
-            try {
-                com.maze.mazeidea.lsp.LspService lsp = getLspService(com.maze.mazeidea.lsp.LspService.class);
-                if (lsp != null) lsp.startForWorkspace(newRoot);
-            } catch (Exception ignored) {}
+    /**
+     * Restart only the file watcher for the active workspace, e.g. after its watch mode changed. Runs on the
+     * workspace switch thread, since starting a watcher opens the watch service and registers the root;
+     * completes with the mode the new watcher runs in, or null if the workspace has none.
+     */
+    public static CompletableFuture<WatchMode> restartFileWatcherAsync() {
+        return CompletableFuture.supplyAsync(ServiceManager::restartFileWatcher, switcher);
+    }
 
-            // re-index existing files under new root
-            if (indexer != null) {
-                List<Path> toIndex = new ArrayList<>();
-                try {
-                    Files.walk(newRoot)
-                            .filter(Files::isRegularFile)
-                            .limit(10000)
-                            .forEach(toIndex::add);
-                } catch (Exception ignored) {}
-                for (Path p : toIndex) {
-                    try { indexer.indexFileAsync(p); } catch (Exception ignored) {}
-                }
-            }
+    private static synchronized WatchMode restartFileWatcher() {
+        WorkspaceContext ctx = workspaces.active();
+        if (ctx == null || ctx.getFileWatcher() == null) return null;
+        try {
+            ctx.startWatcher();
         } catch (Exception e) {
-            // if watcher creation failed, leave previous state
-            System.err.println("Failed to switch workspace watcher: " + e.getMessage());
+            System.err.println("Failed to restart workspace watcher: " + e.getMessage());
         }
-
+        FileWatcherService w = ctx.getFileWatcher();
+        return w != null ? w.getActiveMode() : null;
     }
 }
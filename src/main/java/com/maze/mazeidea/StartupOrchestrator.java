@@ -0,0 +1,103 @@
+package com.maze.mazeidea;
+
+import com.maze.mazeidea.lsp.LspService;
+import com.maze.mazeidea.trace.Tracer;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Brings background services up after the main window is shown. Each stage names the stages it depends
+ * on and starts as soon as they are done, so independent services (e.g. LSP and indexing) start
+ * concurrently. Every stage exposes a readiness future; a failed stage fails its dependents but not
+ * unrelated stages.
+ */
+public final class StartupOrchestrator {
+    public static final String IGNORE_RULES = "ignore-rules";
+    public static final String INDEX = "index";
+    public static final String WATCHER = "watcher";
+    public static final String LSP = "lsp";
+    public static final String INITIAL_INDEX = "initial-index";
+
+    private final ExecutorService executor;
+    private final CompletableFuture<Void> trigger = new CompletableFuture<>();
+    private final Map<String, CompletableFuture<Void>> stages = new LinkedHashMap<>();
+    private final CompletableFuture<Void> completion = new CompletableFuture<>();
+
+    public StartupOrchestrator() {
+        this.executor = ServiceManager.getExecutors().cached("startup");
+    }
+
+    /**
+     * Declare a stage. Dependencies must already be declared, which also rules out cycles.
+     */
+    public synchronized StartupOrchestrator stage(String name, Runnable action, String... dependsOn) {
+        if (stages.containsKey(name)) throw new IllegalArgumentException("Duplicate startup stage: " + name);
+        List<CompletableFuture<Void>> deps = new ArrayList<>();
+        deps.add(trigger);
+        for (String d : dependsOn) {
+            CompletableFuture<Void> dep = stages.get(d);
+            if (dep == null) throw new IllegalArgumentException("Stage " + name + " depends on undeclared stage " + d);
+            deps.add(dep);
+        }
+        CompletableFuture<Void> future = CompletableFuture.allOf(deps.toArray(new CompletableFuture[0]))
+                .thenRunAsync(() -> {
+                    try (Tracer.Span ignored = Tracer.begin("startup." + name)) {
+                        action.run();
+                    } catch (RuntimeException e) {
+                        System.err.println("Startup stage '" + name + "' failed: " + e.getMessage());
+                        throw e;
+                    }
+                }, executor);
+        stages.put(name, future);
+        return this;
+    }
+
+    /** Future for a stage; completes immediately for unknown stages so callers never hang. */
+    public synchronized CompletableFuture<Void> readiness(String name) {
+        CompletableFuture<Void> f = stages.get(name);
+        return f != null ? f : CompletableFuture.completedFuture(null);
+    }
+
+    /** Completes when every stage has finished, successfully or not. */
+    public CompletableFuture<Void> completion() {
+        return completion;
+    }
+
+    public synchronized CompletableFuture<Void> start() {
+        CompletableFuture<?>[] all = stages.values().stream()
+                .map(f -> f.handle((r, ex) -> null))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(all).whenComplete((r, ex) -> {
+            Tracer.instant("startup.complete");
+            completion.complete(null);
+            executor.shutdown();
+        });
+        trigger.complete(null);
+        return completion;
+    }
+
+    /**
+     * The standard service graph for a workspace:
+     * ignore rules -> index (cache, indexer, search) -> watcher -> initial indexing, with LSP alongside.
+     */
+    public static StartupOrchestrator forWorkspace(Path root) {
+        StartupOrchestrator o = new StartupOrchestrator();
+        WorkspaceContext ctx = ServiceManager.getWorkspaces().activate(root);
+        o.stage(IGNORE_RULES, ctx::loadIgnoreRules);
+        o.stage(INDEX, ctx::startIndex, IGNORE_RULES);
+        o.stage(WATCHER, ctx::startWatcher, IGNORE_RULES, INDEX);
+        o.stage(LSP, () -> {
+            LspService lsp = new LspService();
+            ServiceManager.setLspService(lsp);
+            lsp.startForWorkspace(ctx.getRoot());
+        });
+        o.stage(INITIAL_INDEX, () -> ctx.indexWorkspace().join(), WATCHER);
+        return o;
+    }
+}
@@ -0,0 +1,79 @@
+package com.maze.mazeidea;
+
+import javafx.application.Platform;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * Scripted startups used by the {@code cds} build profile.
+ * <ul>
+ *   <li>{@code -Dmazeidea.training=true}: open the workspace, an editor tab, the search window and the heavy
+ *   tool tabs, then exit, so an AppCDS archive dumped at exit contains the classes of a typical session.</li>
+ *   <li>{@code -Dmazeidea.benchmark=true}: print how long after JVM start the window was shown and the
+ *   services were ready, then exit.</li>
+ * </ul>
+ */
+final class StartupScenario {
+    static final String TRAINING = "mazeidea.training";
+    static final String BENCHMARK = "mazeidea.benchmark";
+
+    private StartupScenario() {}
+
+    static boolean isActive() {
+        return Boolean.getBoolean(TRAINING) || Boolean.getBoolean(BENCHMARK);
+    }
+
+    /** Called on the FX thread right after the main window is shown. */
+    static void windowShown(MainWindowController controller, CompletableFuture<Void> servicesReady) {
+        if (Boolean.getBoolean(BENCHMARK)) {
+            System.out.println("startup.window-shown-ms=" + sinceJvmStart());
+            servicesReady.whenComplete((r, ex) -> {
+                System.out.println("startup.services-ready-ms=" + sinceJvmStart());
+                exit();
+            });
+        } else if (Boolean.getBoolean(TRAINING)) {
+            servicesReady.whenComplete((r, ex) -> Platform.runLater(() -> train(controller)));
+        }
+    }
+
+    private static void train(MainWindowController controller) {
+        try {
+            Path file = sampleFile(WorkspaceManager.getWorkspaceRoot());
+            if (file != null) controller.openFileInEditor(file);
+            controller.onSearch();
+            for (String tab : new String[] {"Database", "Build", "Git", "Tools"}) controller.selectToolTab(tab);
+        } catch (Exception e) {
+            System.err.println("Training run failed: " + e.getMessage());
+        }
+        // let highlighting, completion and indexing settle before the archive is written at exit
+        CompletableFuture.delayedExecutor(3, TimeUnit.SECONDS).execute(StartupScenario::exit);
+    }
+
+    private static Path sampleFile(Path root) {
+        if (root == null) return null;
+        try (Stream<Path> s = Files.walk(root, 6)) {
+            return s.filter(p -> p.toString().endsWith(".java") && Files.isRegularFile(p)).findFirst()
+                    .orElseGet(() -> Files.isRegularFile(root.resolve("pom.xml")) ? root.resolve("pom.xml") : null);
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
+    private static long sinceJvmStart() {
+        return ProcessHandle.current().info().startInstant()
+                .map(start -> Duration.between(start, Instant.now()).toMillis())
+                .orElse(-1L);
+    }
+
+    private static void exit() {
+        Platform.exit();
+        // background services own non-daemon threads; a normal exit also writes -XX:ArchiveClassesAtExit
+        System.exit(0);
+    }
+}
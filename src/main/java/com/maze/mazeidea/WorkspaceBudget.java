@@ -0,0 +1,47 @@
+package com.maze.mazeidea;
+
+/**
+ * Resources each open workspace may use, and how many workspaces stay hot (watched and indexed in memory)
+ * before the least recently used ones are paged out to their snapshot. The in-memory indexes of all hot
+ * workspaces together are held to {@link #indexBytes()}: past it, the least recently used workspaces other than
+ * the active one are paged out as well. Defaults can be overridden with {@code -Dmazeidea.workspace.cacheMb},
+ * {@code .cacheEntries}, {@code .indexerThreads}, {@code .hot} and {@code .indexMb}.
+ */
+public final class WorkspaceBudget {
+    private final long cacheBytes;
+    private final int cacheEntries;
+    private final int indexerThreads;
+    private final int hotWorkspaces;
+    private final long indexBytes;
+
+    public WorkspaceBudget(long cacheBytes, int cacheEntries, int indexerThreads, int hotWorkspaces) {
+        this(cacheBytes, cacheEntries, indexerThreads, hotWorkspaces, Long.MAX_VALUE);
+    }
+
+    public WorkspaceBudget(long cacheBytes, int cacheEntries, int indexerThreads, int hotWorkspaces, long indexBytes) {
+        if (cacheBytes <= 0 || cacheEntries <= 0 || indexerThreads <= 0 || hotWorkspaces <= 0 || indexBytes <= 0) {
+            throw new IllegalArgumentException("Workspace budget values must be positive");
+        }
+        this.cacheBytes = cacheBytes;
+        this.cacheEntries = cacheEntries;
+        this.indexerThreads = indexerThreads;
+        this.hotWorkspaces = hotWorkspaces;
+        this.indexBytes = indexBytes;
+    }
+
+    public static WorkspaceBudget fromSystemProperties() {
+        return new WorkspaceBudget(
+                Long.getLong("mazeidea.workspace.cacheMb", 64) * 1024 * 1024,
+                Integer.getInteger("mazeidea.workspace.cacheEntries", 200),
+                Integer.getInteger("mazeidea.workspace.indexerThreads", 2),
+                Integer.getInteger("mazeidea.workspace.hot", 2),
+                Long.getLong("mazeidea.workspace.indexMb", 512) * 1024 * 1024);
+    }
+
+    public long cacheBytes() { return cacheBytes; }
+    public int cacheEntries() { return cacheEntries; }
+    public int indexerThreads() { return indexerThreads; }
+    public int hotWorkspaces() { return hotWorkspaces; }
+    /** Memory all hot workspaces' indexes may take together. */
+    public long indexBytes() { return indexBytes; }
+}
@@ -0,0 +1,257 @@
+package com.maze.mazeidea;
+
+import com.maze.mazeidea.cache.CacheService;
+import com.maze.mazeidea.fs.FileStamp;
+import com.maze.mazeidea.fs.FileWatcherService;
+import com.maze.mazeidea.fs.IgnoreRules;
+import com.maze.mazeidea.fs.ParallelWalker;
+import com.maze.mazeidea.index.InMemoryIndexStore;
+import com.maze.mazeidea.index.Indexer;
+import com.maze.mazeidea.lsp.LspService;
+import com.maze.mazeidea.search.SearchService;
+import com.maze.mazeidea.trace.Tracer;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Services of one open workspace: its ignore rules, content cache, indexer, search and file watcher,
+ * sized by a {@link WorkspaceBudget}. Created by {@link WorkspaceRegistry}; paging out saves the index to
+ * the workspace snapshot and releases everything but the root.
+ */
+public final class WorkspaceContext {
+    private final Path root;
+    private final WorkspaceRegistry registry;
+    private final WorkspaceBudget budget;
+    private volatile IgnoreRules ignoreRules = IgnoreRules.none();
+    private volatile CacheService cache;
+    private volatile Indexer indexer;
+    private volatile SearchService search;
+    private volatile FileWatcherService watcher;
+    private final AtomicLong filesFound = new AtomicLong();
+    private volatile boolean scanning;
+
+    WorkspaceContext(Path root, WorkspaceRegistry registry, WorkspaceBudget budget) {
+        this.root = root;
+        this.registry = registry;
+        this.budget = budget;
+    }
+
+    public Path getRoot() { return root; }
+    public IgnoreRules getIgnoreRules() { return ignoreRules; }
+    public CacheService getCacheService() { return cache; }
+    public Indexer getIndexer() { return indexer; }
+    public SearchService getSearchService() { return search; }
+    public FileWatcherService getFileWatcher() { return watcher; }
+
+    public boolean isStarted() { return indexer != null; }
+
+    /** Heap taken by this workspace's index; 0 once paged out. */
+    public long indexBytes() {
+        Indexer idx = indexer;
+        return idx != null ? idx.indexBytes() : 0;
+    }
+
+    /** Load rules, start indexing and watching; the initial index is brought up to date separately. */
+    public void open() {
+        loadIgnoreRules();
+        startIndex();
+        startWatcher();
+    }
+
+    public void loadIgnoreRules() {
+        try (Tracer.Span ignored = Tracer.begin("ignore-rules.load", root.toString())) {
+            setIgnoreRules(IgnoreRules.load(root));
+        }
+    }
+
+    public void setIgnoreRules(IgnoreRules rules) {
+        ignoreRules = rules != null ? rules : IgnoreRules.none();
+        Indexer idx = indexer;
+        if (idx != null) idx.setIgnoreRules(ignoreRules);
+    }
+
+    public synchronized void startIndex() {
+        if (indexer != null) return;
+        cache = new CacheService(budget.cacheEntries(), budget.cacheBytes());
+        Indexer idx = new Indexer(cache, new InMemoryIndexStore(), budget.indexerThreads());
+        idx.setIgnoreRules(ignoreRules);
+        search = new SearchService(idx);
+        idx.start();
+        indexer = idx;
+    }
+
+    /** Start watching the root, replacing any current watcher (e.g. after the watch mode changed). */
+    public synchronized void startWatcher() {
+        stopWatcher();
+        try (Tracer.Span ignored = Tracer.begin("watcher.start", root.toString())) {
+            FileWatcherService w = new FileWatcherService(root);
+            w.setIgnoreRules(ignoreRules);
+            // wire up file events to the indexer
+            w.registerBatchListener(events -> {
+                Indexer idx = indexer;
+                if (idx != null) idx.applyEvents(events);
+            });
+            w.registerBatchListener(ServiceManager::fileEvents);
+            if (indexer != null) w.setStampSource(indexer);
+            w.start();
+            watcher = w;
+        }
+    }
+
+    private void stopWatcher() {
+        FileWatcherService w = watcher;
+        watcher = null;
+        if (w != null) {
+            try { w.stop(); } catch (Exception ignored) {}
+        }
+    }
+
+    /**
+     * Bring the index up to date with the files under the root in the background. A stored snapshot is
+     * restored first, so search works immediately and only files whose stamps changed are queued.
+     */
+    public CompletableFuture<Void> indexWorkspace() {
+        Indexer idx = indexer;
+        if (idx == null) return CompletableFuture.completedFuture(null);
+        return registry.snapshotFor(root).thenAcceptAsync(snapshot -> {
+            if (snapshot != null && idx.stampsUnder(root).isEmpty()) restoreIndex(idx, snapshot);
+            validateIndex(idx);
+            // the index has its full size now; it may push older workspaces out
+            registry.enforceBudget();
+        }, registry.executor());
+    }
+
+    private void restoreIndex(Indexer idx, WorkspaceSnapshot snapshot) {
+        try (Tracer.Span ignored = Tracer.begin("snapshot.restore", root.toString());
+             DataInputStream in = snapshot.openIndex()) {
+            if (in != null) idx.restore(root, snapshot.getFiles(), in);
+        } catch (IOException e) {
+            System.err.println("Failed to restore index snapshot: " + e.getMessage());
+        }
+    }
+
+    private void validateIndex(Indexer idx) {
+        // whatever is still in here after a complete walk was deleted while the workspace was closed
+        Set<Path> missing = ConcurrentHashMap.newKeySet();
+        missing.addAll(idx.stampsUnder(root).keySet());
+        filesFound.set(0);
+        scanning = true;
+        ServiceManager.indexingStarted();
+        BulkFeeder feeder = new BulkFeeder(idx);
+        boolean complete;
+        try (Tracer.Span ignored = Tracer.begin("index.walk", root.toString())) {
+            complete = new ParallelWalker(registry.walkPool()).walk(root, ignoreRules, (file, attrs) -> {
+                filesFound.incrementAndGet();
+                missing.remove(file);
+                FileStamp known = idx.stampOf(file);
+                if (known == null || !known.sameAs(attrs.size(), attrs.lastModifiedTime().toMillis())) feeder.add(file);
+            });
+            feeder.flush();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            complete = false;
+        } finally {
+            scanning = false;
+        }
+        if (complete) {
+            for (Path p : missing) idx.remove(p);
+        }
+    }
+
+    /** Indexing progress of the current walk, for the status bar. */
+    public IndexProgress progress() {
+        Indexer idx = indexer;
+        return new IndexProgress(filesFound.get(), idx != null ? idx.backlog() : 0, scanning);
+    }
+
+    public static final class IndexProgress {
+        private final long found;
+        private final long pending;
+        private final boolean scanning;
+
+        IndexProgress(long found, long pending, boolean scanning) {
+            this.found = found;
+            this.pending = pending;
+            this.scanning = scanning;
+        }
+
+        public long found() { return found; }
+        public long indexed() { return Math.max(0, found - pending); }
+        public boolean scanning() { return scanning; }
+        public boolean isDone() { return !scanning && pending == 0; }
+    }
+
+    /** Hands changed files to the indexer in chunks, blocking walker threads while its backlog is full. */
+    private static final class BulkFeeder {
+        private static final int CHUNK = 256;
+        private final Indexer idx;
+        private List<Path> chunk = new ArrayList<>(CHUNK);
+
+        BulkFeeder(Indexer idx) {
+            this.idx = idx;
+        }
+
+        void add(Path file) throws InterruptedException {
+            List<Path> full = null;
+            synchronized (this) {
+                chunk.add(file);
+                if (chunk.size() >= CHUNK) {
+                    full = chunk;
+                    chunk = new ArrayList<>(CHUNK);
+                }
+            }
+            if (full != null) idx.submitBulk(full);
+        }
+
+        void flush() throws InterruptedException {
+            List<Path> rest;
+            synchronized (this) {
+                rest = chunk;
+                chunk = new ArrayList<>(CHUNK);
+            }
+            if (!rest.isEmpty()) idx.submitBulk(rest);
+        }
+    }
+
+    /** Persist the index and UI state so the next open can start from them. */
+    public void saveSnapshot(WorkspaceSnapshot.UiState ui) {
+        Indexer idx = indexer;
+        if (idx == null) return;
+        try (Tracer.Span ignored = Tracer.begin("snapshot.save", root.toString())) {
+            // stamps before contents: a file indexed in between is re-validated on the next open, not missed
+            long generation = idx.generation();
+            Map<Path, FileStamp> files = idx.stampsUnder(root);
+            new WorkspaceSnapshot(root, generation, files, ui).save(out -> idx.writeIndex(out, root));
+            registry.forgetSnapshot(root);
+        } catch (Exception e) {
+            System.err.println("Failed to save workspace snapshot for " + root + ": " + e.getMessage());
+        }
+    }
+
+    /** Stop watching, write the snapshot and release the index, cache and language server. */
+    public synchronized void pageOut(WorkspaceSnapshot.UiState ui) {
+        stopWatcher();
+        try {
+            LspService lsp = ServiceManager.getLspService(LspService.class);
+            if (lsp != null) lsp.stopForWorkspace(root);
+        } catch (Exception ignored) {}
+        Indexer idx = indexer;
+        if (idx == null) return;
+        saveSnapshot(ui);
+        indexer = null;
+        search = null;
+        try { idx.stop(); } catch (Exception ignored) {}
+        CacheService c = cache;
+        cache = null;
+        if (c != null) c.clear();
+    }
+}
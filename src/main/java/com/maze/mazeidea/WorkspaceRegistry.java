@@ -0,0 +1,168 @@
+package com.maze.mazeidea;
+
+import com.maze.mazeidea.util.ExecutorRegistry;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Open workspaces in least-recently-activated order. Up to {@link WorkspaceBudget#hotWorkspaces()} stay
+ * hot, so switching back to one of them is free; older ones are paged out to their snapshot and restored
+ * from it when activated again.
+ */
+public final class WorkspaceRegistry {
+    private final WorkspaceBudget budget;
+    private final LinkedHashMap<Path, WorkspaceContext> contexts = new LinkedHashMap<>(8, 0.75f, true);
+    private final Map<Path, CompletableFuture<WorkspaceSnapshot>> snapshots = new ConcurrentHashMap<>();
+    private final Map<Path, WorkspaceSnapshot.UiState> uiStates = new ConcurrentHashMap<>();
+    // evicted workspaces whose page-out has not finished; activating one takes it back or waits for it
+    private final Map<Path, PageOut> pagingOut = new ConcurrentHashMap<>();
+    // snapshot loading, saving and validation walks run here, one at a time
+    private final ExecutorService executor = ExecutorRegistry.shared().single("workspace-snapshot");
+    // shared by the workspace walks
+    private final ForkJoinPool walkPool = ExecutorRegistry.shared().forkJoin("workspace-walk",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private volatile WorkspaceContext active;
+
+    public WorkspaceRegistry(WorkspaceBudget budget) {
+        this.budget = budget;
+    }
+
+    public WorkspaceBudget getBudget() { return budget; }
+
+    public WorkspaceContext active() { return active; }
+
+    /**
+     * Make {@code root} the active workspace, creating its (not yet started) context if needed. A workspace
+     * evicted but not yet paged out is taken back as it is; one being paged out is waited for, so the old
+     * context's page-out cannot stop the language server or watcher of the new one.
+     */
+    public synchronized WorkspaceContext activate(Path root) {
+        Path normalized = root.toAbsolutePath().normalize();
+        WorkspaceContext ctx = contexts.get(normalized);
+        if (ctx == null) {
+            PageOut pending = pagingOut.get(normalized);
+            if (pending != null) {
+                if (pending.claimed.compareAndSet(false, true)) {
+                    pagingOut.remove(normalized, pending);
+                    ctx = pending.ctx;
+                } else {
+                    pending.done.join();
+                }
+            }
+            if (ctx == null) ctx = new WorkspaceContext(normalized, this, budget);
+            contexts.put(normalized, ctx);
+        }
+        active = ctx;
+        return ctx;
+    }
+
+    public synchronized WorkspaceContext get(Path root) {
+        return contexts.get(root.toAbsolutePath().normalize());
+    }
+
+    /** The open workspace {@code file} belongs to (the innermost one, if workspaces nest), or null. */
+    public synchronized WorkspaceContext owning(Path file) {
+        Path p = file.toAbsolutePath().normalize();
+        WorkspaceContext best = null;
+        for (WorkspaceContext ctx : contexts.values()) {
+            if (p.startsWith(ctx.getRoot()) && (best == null || ctx.getRoot().startsWith(best.getRoot()))) best = ctx;
+        }
+        return best;
+    }
+
+    public synchronized List<WorkspaceContext> contexts() {
+        return new ArrayList<>(contexts.values());
+    }
+
+    /**
+     * Page out the least recently activated workspaces beyond the hot budget, and more of them while the hot
+     * indexes together exceed the index budget, in the background. The active workspace always stays.
+     */
+    public void enforceBudget() {
+        List<WorkspaceContext> victims = new ArrayList<>();
+        synchronized (this) {
+            int excess = contexts.size() - budget.hotWorkspaces();
+            long indexBytes = 0;
+            for (WorkspaceContext ctx : contexts.values()) indexBytes += ctx.indexBytes();
+            for (WorkspaceContext ctx : contexts.values()) {
+                if (excess <= 0 && indexBytes <= budget.indexBytes()) break;
+                if (ctx == active) continue;
+                victims.add(ctx);
+                excess--;
+                indexBytes -= ctx.indexBytes();
+            }
+            for (WorkspaceContext ctx : victims) contexts.remove(ctx.getRoot());
+        }
+        for (WorkspaceContext ctx : victims) {
+            PageOut p = new PageOut(ctx);
+            pagingOut.put(ctx.getRoot(), p);
+            executor.execute(() -> {
+                // taken back by activate before it got here
+                if (!p.claimed.compareAndSet(false, true)) return;
+                try {
+                    ctx.pageOut(uiStates.get(ctx.getRoot()));
+                } finally {
+                    pagingOut.remove(ctx.getRoot(), p);
+                    p.done.complete(null);
+                }
+            });
+        }
+    }
+
+    // the page-out of an evicted workspace; whoever claims it first either runs it or cancels it
+    private static final class PageOut {
+        final WorkspaceContext ctx;
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        PageOut(WorkspaceContext ctx) {
+            this.ctx = ctx;
+        }
+    }
+
+    /** Page out every workspace synchronously; used on shutdown. */
+    public void closeAll() {
+        List<WorkspaceContext> all;
+        synchronized (this) {
+            all = new ArrayList<>(contexts.values());
+            contexts.clear();
+            active = null;
+        }
+        for (WorkspaceContext ctx : all) ctx.pageOut(uiStates.get(ctx.getRoot()));
+    }
+
+    public void setUiState(WorkspaceSnapshot.UiState state) {
+        uiStates.put(state.getRoot(), state);
+    }
+
+    public WorkspaceSnapshot.UiState uiStateOf(Path root) {
+        return uiStates.get(root.toAbsolutePath().normalize());
+    }
+
+    /** The stored snapshot of {@code root} (null value if there is none), loaded once in the background. */
+    public CompletableFuture<WorkspaceSnapshot> snapshotFor(Path root) {
+        return snapshots.computeIfAbsent(root.toAbsolutePath().normalize(),
+                r -> CompletableFuture.supplyAsync(() -> WorkspaceSnapshot.load(r), executor));
+    }
+
+    void forgetSnapshot(Path root) {
+        snapshots.remove(root);
+    }
+
+    ExecutorService executor() {
+        return executor;
+    }
+
+    ForkJoinPool walkPool() {
+        return walkPool;
+    }
+}
@@ -0,0 +1,188 @@
+package com.maze.mazeidea;
+
+import com.maze.mazeidea.fs.FileStamp;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * What we knew about a workspace when it was last closed: the indexed files with their stamps, the index
+ * generation they belong to, and the project tree and editor state. Stored under
+ * {@code ~/.mazeidea/snapshots/<hash of root>/} so reopening a workspace can show the previous UI and search
+ * results immediately while the tree is re-validated in the background.
+ */
+public final class WorkspaceSnapshot {
+    public static final String DIR_PROPERTY = "mazeidea.snapshot.dir";
+    static final String SNAPSHOT_FILE = "snapshot.bin";
+    static final String INDEX_FILE = "index.bin";
+    private static final int MAGIC = 0x4D5A5350; // "MZSP"
+    private static final int VERSION = 1;
+
+    private final Path root;
+    private final long generation;
+    private final Map<Path, FileStamp> files;
+    private final UiState ui;
+
+    public WorkspaceSnapshot(Path root, long generation, Map<Path, FileStamp> files, UiState ui) {
+        this.root = root.toAbsolutePath().normalize();
+        this.generation = generation;
+        this.files = Collections.unmodifiableMap(new LinkedHashMap<>(files));
+        this.ui = ui != null ? ui : UiState.empty(this.root);
+    }
+
+    public Path getRoot() { return root; }
+    /** Indexer generation the stamps and the stored index were taken at. */
+    public long getGeneration() { return generation; }
+    public Map<Path, FileStamp> getFiles() { return files; }
+    public UiState getUi() { return ui; }
+
+    public static Path directoryFor(Path root) {
+        String base = System.getProperty(DIR_PROPERTY);
+        Path dir = base != null ? Paths.get(base) : Paths.get(System.getProperty("user.home"), ".mazeidea", "snapshots");
+        return dir.resolve(Integer.toHexString(root.toAbsolutePath().normalize().toString().hashCode()));
+    }
+
+    /** The stored snapshot for {@code root}, or null if there is none or it cannot be read. */
+    public static WorkspaceSnapshot load(Path root) {
+        Path file = directoryFor(root).resolve(SNAPSHOT_FILE);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) return null;
+            Path stored = Paths.get(in.readUTF());
+            Path normalized = root.toAbsolutePath().normalize();
+            if (!stored.equals(normalized)) return null; // hash collision
+            long generation = in.readLong();
+            int n = in.readInt();
+            Map<Path, FileStamp> files = new LinkedHashMap<>(n * 4 / 3 + 1);
+            for (int i = 0; i < n; i++) {
+                Path p = normalized.resolve(in.readUTF());
+                files.put(p, new FileStamp(in.readLong(), in.readLong()));
+            }
+            List<Path> expanded = readPaths(in, normalized);
+            List<Path> tabs = readPaths(in, normalized);
+            int selected = in.readInt();
+            return new WorkspaceSnapshot(normalized, generation, files, new UiState(normalized, expanded, tabs, selected));
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Ignoring unreadable workspace snapshot " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /** Write the snapshot atomically; {@code index} (may be null) writes the index data belonging to it. */
+    public void save(DataWriter index) throws IOException {
+        Path dir = directoryFor(root);
+        Files.createDirectories(dir);
+        if (index != null) {
+            writeAtomically(dir.resolve(INDEX_FILE), out -> {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(generation);
+                index.write(out);
+            });
+        }
+        writeAtomically(dir.resolve(SNAPSHOT_FILE), out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeUTF(root.toString());
+            out.writeLong(generation);
+            out.writeInt(files.size());
+            for (Map.Entry<Path, FileStamp> e : files.entrySet()) {
+                out.writeUTF(root.relativize(e.getKey()).toString());
+                out.writeLong(e.getValue().size());
+                out.writeLong(e.getValue().modified());
+            }
+            writePaths(out, ui.getExpanded());
+            writePaths(out, ui.getOpenTabs());
+            out.writeInt(ui.getSelectedTab());
+        });
+    }
+
+    /**
+     * Open the stored index data, positioned after its header, if it belongs to this snapshot's generation.
+     * Returns null otherwise; the caller closes the stream.
+     */
+    public DataInputStream openIndex() {
+        Path file = directoryFor(root).resolve(INDEX_FILE);
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 1 << 16));
+            if (in.readInt() == MAGIC && in.readInt() == VERSION && in.readLong() == generation) return in;
+        } catch (IOException ignored) {
+        }
+        if (in != null) {
+            try { in.close(); } catch (IOException ignored) {}
+        }
+        return null;
+    }
+
+    private void writeAtomically(Path target, DataWriter body) throws IOException {
+        Path tmp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+            body.write(out);
+        }
+        try {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private void writePaths(DataOutputStream out, List<Path> paths) throws IOException {
+        List<String> rel = new ArrayList<>();
+        for (Path p : paths) {
+            if (p.startsWith(root)) rel.add(root.relativize(p).toString());
+        }
+        out.writeInt(rel.size());
+        for (String r : rel) out.writeUTF(r);
+    }
+
+    private static List<Path> readPaths(DataInputStream in, Path root) throws IOException {
+        int n = in.readInt();
+        List<Path> out = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) out.add(root.resolve(in.readUTF()));
+        return out;
+    }
+
+    public interface DataWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    /** Project tree and editor state, captured on the FX thread whenever it changes. */
+    public static final class UiState {
+        private final Path root;
+        private final List<Path> expanded;
+        private final List<Path> openTabs;
+        private final int selectedTab;
+
+        public UiState(Path root, List<Path> expanded, List<Path> openTabs, int selectedTab) {
+            this.root = root;
+            this.expanded = List.copyOf(expanded);
+            this.openTabs = List.copyOf(openTabs);
+            this.selectedTab = selectedTab;
+        }
+
+        public static UiState empty(Path root) {
+            return new UiState(root, List.of(), List.of(), -1);
+        }
+
+        public Path getRoot() { return root; }
+        public List<Path> getExpanded() { return expanded; }
+        public List<Path> getOpenTabs() { return openTabs; }
+        /** Index into {@link #getOpenTabs()}, or -1. */
+        public int getSelectedTab() { return selectedTab; }
+    }
+}
@@ -1,6 +1,7 @@
 package com.maze.mazeidea.build;
 
 import com.maze.mazeidea.WorkspaceManager;
+import com.maze.mazeidea.util.ExecutorRegistry;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -13,7 +14,6 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class BuildToolController {
     @FXML private ChoiceBox<String> toolChoice;
@@ -25,7 +25,7 @@ public class BuildToolController {
     @FXML private Label statusLabel;
     @FXML private TextArea outputArea;
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "build-tool"));
+    private final ExecutorService executor = ExecutorRegistry.shared().io("build", 1, "build-tool", 1);
 
     @FXML
     public void initialize() {
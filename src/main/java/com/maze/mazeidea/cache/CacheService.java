@@ -1,29 +1,51 @@
 package com.maze.mazeidea.cache;
 
 import java.nio.file.Path;
+import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Optional;
 
 /**
- * Simple thread-safe bounded LRU cache for file contents.
+ * Simple thread-safe bounded LRU cache for file contents, bounded by entry count and optionally by the
+ * approximate heap size of the cached strings.
  */
 public class CacheService {
     private final int maxEntries;
+    private final long maxBytes;
     private final Map<Path, String> map;
+    private long bytes;
 
     public CacheService(int maxEntries) {
+        this(maxEntries, Long.MAX_VALUE);
+    }
+
+    public CacheService(int maxEntries, long maxBytes) {
         this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
         this.map = new LinkedHashMap<>(16, 0.75f, true) {
             @Override
             protected boolean removeEldestEntry(Map.Entry<Path, String> eldest) {
-                return size() > CacheService.this.maxEntries;
+                if (size() <= CacheService.this.maxEntries) return false;
+                bytes -= weight(eldest.getValue());
+                return true;
             }
         };
     }
 
     public synchronized void put(Path path, String content) {
-        map.put(path, content);
+        String previous = map.put(path, content);
+        bytes += weight(content) - weight(previous);
+        if (bytes > maxBytes) {
+            // evict least recently used entries, but always keep the one just added
+            Iterator<Map.Entry<Path, String>> it = map.entrySet().iterator();
+            while (bytes > maxBytes && map.size() > 1 && it.hasNext()) {
+                Map.Entry<Path, String> e = it.next();
+                if (e.getKey().equals(path)) continue;
+                bytes -= weight(e.getValue());
+                it.remove();
+            }
+        }
     }
 
     public synchronized Optional<String> get(Path path) {
@@ -31,10 +53,24 @@ public class CacheService {
     }
 
     public synchronized void remove(Path path) {
-        map.remove(path);
+        bytes -= weight(map.remove(path));
     }
 
     public synchronized void clear() {
         map.clear();
+        bytes = 0;
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    /** Approximate heap used by cached contents (two bytes per char). */
+    public synchronized long sizeInBytes() {
+        return bytes;
+    }
+
+    private static long weight(String s) {
+        return s == null ? 0 : 2L * s.length();
     }
 }
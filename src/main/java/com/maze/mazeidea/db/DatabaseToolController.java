@@ -1,5 +1,6 @@
 package com.maze.mazeidea.db;
 
+import com.maze.mazeidea.util.ExecutorRegistry;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -8,7 +9,6 @@ import java.sql.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class DatabaseToolController {
     @FXML private TextField jdbcUrlField;
@@ -28,7 +28,7 @@ public class DatabaseToolController {
     @FXML private Label queryStatusLabel;
     @FXML private TextArea queryOutput;
 
-    private final ExecutorService dbExecutor = Executors.newSingleThreadExecutor(r -> new Thread(r, "db-tool"));
+    private final ExecutorService dbExecutor = ExecutorRegistry.shared().single("db-tool");
     private Connection connection;
     private boolean manualUrl = false;
     private boolean updatingUrl = false;
@@ -0,0 +1,342 @@
+package com.maze.mazeidea.editor;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.SplittableRandom;
+
+/**
+ * Brackets of a document, per paragraph, as found by the lexer (so brackets in strings and comments don't
+ * count). The paragraphs are the nodes of an implicit treap (ordered by position, balanced by random
+ * priorities), and each node keeps, per bracket kind and for its whole subtree, the net depth change (opens
+ * minus closes), the lowest running depth over its prefixes and the highest over its suffixes. That is enough
+ * to find the paragraph holding the match of a bracket, or the innermost unclosed bracket before a position,
+ * in O(log n) instead of scanning the text.
+ * <p>
+ * Re-lexing a paragraph updates the nodes on its path; inserting or removing lines splits the treap and
+ * merges it back, so an Enter costs O(log n) rather than a rebuild.
+ */
+public final class BracketIndex {
+    public static final int PAREN = 0, BRACKET = 1, BRACE = 2;
+    private static final int KINDS = 3;
+    private static final int[] NONE = new int[0];
+
+    /** Where a bracket is. */
+    public static final class Location {
+        public final int paragraph;
+        public final int column;
+
+        Location(int paragraph, int column) {
+            this.paragraph = paragraph;
+            this.column = column;
+        }
+
+        @Override
+        public String toString() {
+            return paragraph + ":" + column;
+        }
+    }
+
+    // one paragraph, and the aggregates of the subtree it roots
+    private static final class Node {
+        final int priority;
+        int[] brackets = NONE;
+        Node left, right;
+        int size = 1;
+        // this paragraph alone
+        final int[] ownSum = new int[KINDS], ownMin = new int[KINDS], ownMaxSuffix = new int[KINDS];
+        // the whole subtree, in paragraph order
+        final int[] sum = new int[KINDS], minPrefix = new int[KINDS], maxSuffix = new int[KINDS];
+
+        Node(int priority) {
+            this.priority = priority;
+        }
+    }
+
+    private final SplittableRandom random = new SplittableRandom(0x5eed);
+    private Node root;
+
+    /** Kind of bracket character {@code c}, or -1. */
+    public static int kindOf(char c) {
+        switch (c) {
+            case '(': case ')': return PAREN;
+            case '[': case ']': return BRACKET;
+            case '{': case '}': return BRACE;
+            default: return -1;
+        }
+    }
+
+    static int encode(int column, int kind, boolean open) {
+        return column << 3 | kind << 1 | (open ? 1 : 0);
+    }
+
+    private static int column(int b) { return b >>> 3; }
+    private static int kind(int b) { return (b >> 1) & 3; }
+    private static boolean open(int b) { return (b & 1) != 0; }
+
+    /** Reset to {@code paragraphs} paragraphs without brackets. */
+    public void reset(int paragraphs) {
+        root = build(paragraphs);
+    }
+
+    public int paragraphCount() {
+        return size(root);
+    }
+
+    /** Replace the brackets of {@code paragraph}: values from {@link #encode}, in column order. */
+    public void set(int paragraph, int[] paragraphBrackets) {
+        set(root, paragraph, paragraphBrackets.length == 0 ? NONE : paragraphBrackets);
+    }
+
+    private void set(Node t, int index, int[] list) {
+        int ls = size(t.left);
+        if (index < ls) {
+            set(t.left, index, list);
+        } else if (index > ls) {
+            set(t.right, index - ls - 1, list);
+        } else {
+            t.brackets = list;
+            own(t);
+        }
+        pull(t);
+    }
+
+    public void insertParagraphs(int at, int n) {
+        if (n <= 0) return;
+        Node[] parts = split(root, at);
+        root = merge(merge(parts[0], build(n)), parts[1]);
+    }
+
+    public void removeParagraphs(int at, int n) {
+        if (n <= 0) return;
+        Node[] head = split(root, at);
+        Node[] tail = split(head[1], n);
+        root = merge(head[0], tail[1]);
+    }
+
+    /** Whether the character at {@code paragraph}:{@code column} is a bracket the lexer reported. */
+    public boolean isBracket(int paragraph, int column) {
+        return paragraph < paragraphCount() && find(brackets(paragraph), column) >= 0;
+    }
+
+    /** The bracket matching the one at {@code paragraph}:{@code column}, or null if it is unmatched or no bracket. */
+    public Location match(int paragraph, int column) {
+        if (paragraph >= paragraphCount()) return null;
+        int[] list = brackets(paragraph);
+        int i = find(list, column);
+        if (i < 0) return null;
+        int b = list[i];
+        return open(b) ? closing(kind(b), paragraph, i + 1) : opening(kind(b), paragraph, i);
+    }
+
+    /** The innermost bracket of {@code kind} still open at {@code paragraph}:{@code column}, or null. */
+    public Location enclosing(int kind, int paragraph, int column) {
+        if (paragraph >= paragraphCount()) return null;
+        int[] list = brackets(paragraph);
+        int i = 0;
+        while (i < list.length && column(list[i]) < column) i++;
+        return opening(kind, paragraph, i);
+    }
+
+    // the unmatched open bracket before list index `end` of `paragraph`, looking backwards
+    private Location opening(int kind, int paragraph, int end) {
+        int depth = 1;
+        int[] list = brackets(paragraph);
+        for (int i = end - 1; i >= 0; i--) {
+            if (kind(list[i]) != kind) continue;
+            depth += open(list[i]) ? -1 : 1;
+            if (depth == 0) return new Location(paragraph, column(list[i]));
+        }
+        if (paragraph == 0) return null;
+        int[] d = {depth};
+        int p = backward(root, 0, paragraph - 1, kind, d);
+        if (p < 0) return null;
+        list = brackets(p);
+        depth = d[0];
+        for (int i = list.length - 1; i >= 0; i--) {
+            if (kind(list[i]) != kind) continue;
+            depth += open(list[i]) ? -1 : 1;
+            if (depth == 0) return new Location(p, column(list[i]));
+        }
+        return null;
+    }
+
+    // the unmatched close bracket from list index `start` of `paragraph` on
+    private Location closing(int kind, int paragraph, int start) {
+        int depth = 1;
+        int[] list = brackets(paragraph);
+        for (int i = start; i < list.length; i++) {
+            if (kind(list[i]) != kind) continue;
+            depth += open(list[i]) ? 1 : -1;
+            if (depth == 0) return new Location(paragraph, column(list[i]));
+        }
+        if (paragraph + 1 >= paragraphCount()) return null;
+        int[] d = {depth};
+        int p = forward(root, 0, paragraph + 1, kind, d);
+        if (p < 0) return null;
+        list = brackets(p);
+        depth = d[0];
+        for (int b : list) {
+            if (kind(b) != kind) continue;
+            depth += open(b) ? 1 : -1;
+            if (depth == 0) return new Location(p, column(b));
+        }
+        return null;
+    }
+
+    // first paragraph >= from (in subtree t, whose first paragraph is base) where the running depth reaches 0;
+    // d carries the depth past skipped paragraphs
+    private static int forward(Node t, int base, int from, int k, int[] d) {
+        if (t == null || base + t.size <= from) return -1;
+        if (base >= from && d[0] + t.minPrefix[k] > 0) {
+            d[0] += t.sum[k];
+            return -1;
+        }
+        int self = base + size(t.left);
+        int r = forward(t.left, base, from, k, d);
+        if (r >= 0) return r;
+        if (self >= from) {
+            if (d[0] + t.ownMin[k] <= 0) return self;
+            d[0] += t.ownSum[k];
+        }
+        return forward(t.right, self + 1, from, k, d);
+    }
+
+    // last paragraph <= to in which, read backwards, the unmatched closes (d) are all opened
+    private static int backward(Node t, int base, int to, int k, int[] d) {
+        if (t == null || base > to) return -1;
+        if (base + t.size - 1 <= to && t.maxSuffix[k] < d[0]) {
+            d[0] -= t.sum[k];
+            return -1;
+        }
+        int self = base + size(t.left);
+        int r = backward(t.right, self + 1, to, k, d);
+        if (r >= 0) return r;
+        if (self <= to) {
+            if (t.ownMaxSuffix[k] >= d[0]) return self;
+            d[0] -= t.ownSum[k];
+        }
+        return backward(t.left, base, to, k, d);
+    }
+
+    private int[] brackets(int paragraph) {
+        Node t = root;
+        while (true) {
+            int ls = size(t.left);
+            if (paragraph < ls) {
+                t = t.left;
+            } else if (paragraph > ls) {
+                paragraph -= ls + 1;
+                t = t.right;
+            } else {
+                return t.brackets;
+            }
+        }
+    }
+
+    // n paragraphs without brackets, as a treap: a Cartesian tree over random priorities, built in O(n)
+    private Node build(int n) {
+        Deque<Node> spine = new ArrayDeque<>();
+        for (int i = 0; i < n; i++) {
+            Node node = new Node(random.nextInt());
+            Node last = null;
+            while (!spine.isEmpty() && spine.peek().priority < node.priority) last = spine.pop();
+            node.left = last;
+            if (!spine.isEmpty()) spine.peek().right = node;
+            spine.push(node);
+        }
+        Node top = spine.peekLast();
+        pullAll(top);
+        return top;
+    }
+
+    private static void pullAll(Node t) {
+        if (t == null) return;
+        pullAll(t.left);
+        pullAll(t.right);
+        pull(t);
+    }
+
+    // the first n paragraphs of t, and the rest
+    private static Node[] split(Node t, int n) {
+        if (t == null) return new Node[2];
+        int ls = size(t.left);
+        if (n <= ls) {
+            Node[] parts = split(t.left, n);
+            t.left = parts[1];
+            parts[1] = pull(t);
+            return parts;
+        }
+        Node[] parts = split(t.right, n - ls - 1);
+        t.right = parts[0];
+        parts[0] = pull(t);
+        return parts;
+    }
+
+    private static Node merge(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            return pull(a);
+        }
+        b.left = merge(a, b.left);
+        return pull(b);
+    }
+
+    private static int size(Node t) {
+        return t == null ? 0 : t.size;
+    }
+
+    private static void own(Node t) {
+        for (int k = 0; k < KINDS; k++) {
+            int s = 0, min = 0;
+            for (int b : t.brackets) {
+                if (kind(b) != k) continue;
+                s += open(b) ? 1 : -1;
+                min = Math.min(min, s);
+            }
+            // the best suffix ends at the paragraph end: total minus the lowest prefix
+            t.ownSum[k] = s;
+            t.ownMin[k] = min;
+            t.ownMaxSuffix[k] = s - min;
+        }
+    }
+
+    // subtree aggregates of t from its children: left, then t itself, then right
+    private static Node pull(Node t) {
+        Node l = t.left, r = t.right;
+        t.size = 1 + size(l) + size(r);
+        for (int k = 0; k < KINDS; k++) {
+            int sum = 0, min = 0, maxSuffix = 0;
+            if (l != null) {
+                sum = l.sum[k];
+                min = l.minPrefix[k];
+                maxSuffix = l.maxSuffix[k];
+            }
+            min = Math.min(min, sum + t.ownMin[k]);
+            maxSuffix = Math.max(t.ownMaxSuffix[k], t.ownSum[k] + maxSuffix);
+            sum += t.ownSum[k];
+            if (r != null) {
+                min = Math.min(min, sum + r.minPrefix[k]);
+                maxSuffix = Math.max(r.maxSuffix[k], r.sum[k] + maxSuffix);
+                sum += r.sum[k];
+            }
+            t.sum[k] = sum;
+            t.minPrefix[k] = min;
+            t.maxSuffix[k] = maxSuffix;
+        }
+        return t;
+    }
+
+    private static int find(int[] list, int column) {
+        int lo = 0, hi = list.length - 1;
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int c = column(list[mid]);
+            if (c < column) lo = mid + 1;
+            else if (c > column) hi = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+}
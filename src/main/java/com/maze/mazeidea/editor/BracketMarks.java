@@ -0,0 +1,34 @@
+package com.maze.mazeidea.editor;
+
+import java.util.Arrays;
+
+/**
+ * Offsets of the characters carrying the matching-bracket mark. Edits move the marked characters, so the
+ * offsets are shifted with every change, the way the text moves; a marked character that was deleted is
+ * forgotten. Un-marking then hits the characters that were marked, not whatever now sits at the old offsets.
+ */
+public final class BracketMarks {
+    private static final int[] NONE = new int[0];
+    private int[] marks = NONE;
+
+    /** Remember {@code offsets} as marked. */
+    public void set(int... offsets) {
+        marks = offsets.clone();
+    }
+
+    /** Forget the marks, returning the offsets still to un-mark. */
+    public int[] clear() {
+        int[] was = marks;
+        marks = NONE;
+        return Arrays.stream(was).filter(m -> m >= 0).toArray();
+    }
+
+    /** Follow an edit replacing {@code removed} characters at {@code position} with {@code inserted} ones. */
+    public void edited(int position, int removed, int inserted) {
+        for (int i = 0; i < marks.length; i++) {
+            int m = marks[i];
+            if (m < position) continue;
+            marks[i] = m < position + removed ? -1 : m - removed + inserted;
+        }
+    }
+}
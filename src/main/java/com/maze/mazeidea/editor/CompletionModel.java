@@ -0,0 +1,38 @@
+package com.maze.mazeidea.editor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Candidates of one completion session, filtered and ranked on the client as the typed prefix grows, so
+ * typing on never needs a new request. Candidates arrive in batches (local ones first, the language server's
+ * later); duplicates are dropped. Ranking: exact-case prefix matches before case-insensitive ones, then
+ * shorter before longer, then alphabetical.
+ */
+public final class CompletionModel {
+    private final Set<String> candidates = new LinkedHashSet<>();
+
+    public void addAll(Collection<String> more) {
+        candidates.addAll(more);
+    }
+
+    public int size() {
+        return candidates.size();
+    }
+
+    /** Up to {@code limit} candidates matching {@code prefix}, best first. */
+    public List<String> filter(String prefix, int limit) {
+        List<String> out = new ArrayList<>();
+        for (String c : candidates) {
+            if (c.regionMatches(true, 0, prefix, 0, prefix.length()) && !c.equals(prefix)) out.add(c);
+        }
+        out.sort(Comparator.<String>comparingInt(c -> c.startsWith(prefix) ? 0 : 1)
+                .thenComparingInt(String::length)
+                .thenComparing(Comparator.naturalOrder()));
+        return out.size() > limit ? new ArrayList<>(out.subList(0, limit)) : out;
+    }
+}
@@ -0,0 +1,121 @@
+package com.maze.mazeidea.editor;
+
+import javafx.application.Platform;
+import javafx.beans.value.ChangeListener;
+import javafx.event.EventHandler;
+import javafx.scene.control.ContextMenu;
+import javafx.scene.control.MenuItem;
+import javafx.scene.input.KeyCode;
+import javafx.scene.input.KeyEvent;
+import org.fxmisc.richtext.CodeArea;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Completion popup for the identifier at the caret. Local candidates show at once; the language server's are
+ * merged in when they arrive. As the user types on, the candidates are re-filtered here instead of being
+ * requested again; the session closes (and cancels a request still in flight) when the caret leaves the
+ * identifier, on Escape, on accepting an item, or when a new session starts.
+ */
+public final class CompletionPopup {
+    private static final int MAX_ITEMS = 50;
+
+    private final CodeArea area;
+    // offset and paragraph where the identifier being completed starts
+    private final int start;
+    private final int paragraph;
+    private final CompletionModel model = new CompletionModel();
+    private final ContextMenu menu = new ContextMenu();
+    private final CompletableFuture<List<String>> remote;
+    private final ChangeListener<Integer> caretListener = (obs, o, n) -> Platform.runLater(this::update);
+    private final EventHandler<KeyEvent> keys = this::onKey;
+    private boolean closed;
+
+    private CompletionPopup(CodeArea area, int start, List<String> local, CompletableFuture<List<String>> remote) {
+        this.area = area;
+        this.start = start;
+        this.paragraph = area.getCurrentParagraph();
+        this.remote = remote;
+        model.addAll(local);
+    }
+
+    /**
+     * Complete the identifier before the caret, which starts at {@code start}: {@code local} candidates now,
+     * {@code remote} ones when (if) they arrive.
+     */
+    public static CompletionPopup show(CodeArea area, int start, List<String> local, CompletableFuture<List<String>> remote) {
+        CompletionPopup popup = new CompletionPopup(area, start, local, remote);
+        area.caretPositionProperty().addListener(popup.caretListener);
+        area.addEventFilter(KeyEvent.KEY_PRESSED, popup.keys);
+        remote.thenAccept(items -> Platform.runLater(() -> {
+            if (popup.closed) return;
+            popup.model.addAll(items);
+            popup.update();
+        }));
+        popup.update();
+        return popup;
+    }
+
+    public void close() {
+        if (closed) return;
+        closed = true;
+        remote.cancel(true);
+        area.caretPositionProperty().removeListener(caretListener);
+        area.removeEventFilter(KeyEvent.KEY_PRESSED, keys);
+        menu.hide();
+    }
+
+    // the typed prefix, or null once the caret has left the identifier
+    private String prefix() {
+        int caret = area.getCaretPosition();
+        if (caret < start || area.getCurrentParagraph() != paragraph) return null;
+        String line = area.getParagraph(paragraph).getText();
+        int from = start - (caret - area.getCaretColumn());
+        String prefix = line.substring(from, area.getCaretColumn());
+        for (int i = 0; i < prefix.length(); i++) {
+            if (!Character.isJavaIdentifierPart(prefix.charAt(i))) return null;
+        }
+        return prefix;
+    }
+
+    private void update() {
+        if (closed) return;
+        String prefix = prefix();
+        if (prefix == null) {
+            close();
+            return;
+        }
+        List<String> shown = model.filter(prefix, MAX_ITEMS);
+        List<MenuItem> items = new ArrayList<>(shown.size());
+        for (String s : shown) {
+            MenuItem item = new MenuItem(s);
+            item.setOnAction(e -> accept(s));
+            items.add(item);
+        }
+        menu.getItems().setAll(items);
+        if (items.isEmpty()) {
+            // keep the session: server results may still come, or the prefix may shrink again
+            menu.hide();
+        } else if (!menu.isShowing()) {
+            area.getCaretBounds().ifPresent(b -> menu.show(area, b.getMinX(), b.getMaxY()));
+        }
+    }
+
+    private void accept(String completion) {
+        int caret = area.getCaretPosition();
+        close();
+        area.replaceText(start, caret, completion);
+    }
+
+    private void onKey(KeyEvent ke) {
+        if (ke.getCode() == KeyCode.ESCAPE) {
+            close();
+            ke.consume();
+        } else if ((ke.getCode() == KeyCode.TAB || ke.getCode() == KeyCode.ENTER) && !menu.getItems().isEmpty()) {
+            accept(menu.getItems().get(0).getText());
+            ke.consume();
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package com.maze.mazeidea.editor;
+
+import javafx.application.Platform;
+import org.fxmisc.richtext.CodeArea;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.fxmisc.richtext.model.StyleSpansBuilder;
+import org.fxmisc.richtext.model.TwoDimensional;
+import org.reactfx.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Syntax highlighting that only re-lexes what an edit can have changed. The lexer state at the end of every
+ * paragraph (e.g. "inside a block comment") is kept; after an edit, lexing restarts at the first edited
+ * paragraph and stops at the first paragraph past the edit whose end state is unchanged, and only the style
+ * spans of that range are replaced. Typing inside a line of a large file re-lexes that one line.
+ * <p>
+ * A newly opened file is styled viewport first: the visible paragraphs right away, the rest in chunks posted
+ * to the UI thread, so a large file shows up before it is fully highlighted. Paragraphs below the
+ * highlighted {@code frontier} have no known state yet; edits there wait for the background pass.
+ * <p>
+ * The brackets the lexer reports for each paragraph go into an optional {@link BracketIndex}.
+ */
+public final class IncrementalHighlighter {
+    private static final int UNKNOWN = -1;
+    private static final Collection<String> PLAIN = Collections.emptyList();
+    /** Paragraphs lexed per background step. */
+    static final int CHUNK = 2000;
+    // visible range assumed before the area has been laid out
+    private static final int INITIAL_VIEWPORT = 200;
+    private static final List<Collection<String>> STYLES = new ArrayList<>();
+
+    static {
+        for (TokenType type : TokenType.values()) STYLES.add(Collections.singleton(type.styleClass()));
+    }
+
+    /** The text being highlighted, as paragraphs separated by single line breaks. */
+    public interface Target {
+        int paragraphCount();
+        String paragraphText(int paragraph);
+        int paragraphAt(int offset);
+        /** Replace the styles from the start of {@code paragraph} on; the spans end at a paragraph end. */
+        void setStyleSpans(int paragraph, StyleSpans<Collection<String>> spans);
+        /** First paragraph on screen, or -1 if not known yet. */
+        default int firstVisibleParagraph() { return -1; }
+        default int lastVisibleParagraph() { return -1; }
+    }
+
+    private final Target target;
+    private final Lexer lexer;
+    private final BracketIndex brackets;
+    private final SpanSink sink = new SpanSink();
+    // lexer state at the end of each paragraph
+    private int[] states = new int[64];
+    private int count;
+    // states[0..frontier) are known
+    private int frontier;
+    private long lexedParagraphs;
+    private Consumer<Runnable> post;
+    private int chunk;
+    private volatile boolean stopped;
+
+    public IncrementalHighlighter(Target target, Lexer lexer) {
+        this(target, lexer, null);
+    }
+
+    public IncrementalHighlighter(Target target, Lexer lexer, BracketIndex brackets) {
+        this.target = target;
+        this.lexer = lexer;
+        this.brackets = brackets;
+    }
+
+    /**
+     * Highlight {@code area}, visible part first and the rest in the background, and keep it highlighted as it
+     * is edited; unsubscribe to stop.
+     */
+    public static Subscription attach(CodeArea area, Lexer lexer, BracketIndex brackets) {
+        IncrementalHighlighter highlighter = new IncrementalHighlighter(new Target() {
+            @Override public int paragraphCount() { return area.getParagraphs().size(); }
+            @Override public String paragraphText(int paragraph) { return area.getText(paragraph); }
+            @Override public int paragraphAt(int offset) {
+                return area.offsetToPosition(offset, TwoDimensional.Bias.Forward).getMajor();
+            }
+            @Override public void setStyleSpans(int paragraph, StyleSpans<Collection<String>> spans) {
+                area.setStyleSpans(area.getAbsolutePosition(paragraph, 0), spans);
+            }
+            // these throw until the area has been laid out
+            @Override public int firstVisibleParagraph() {
+                try { return area.firstVisibleParToAllParIndex(); } catch (Exception e) { return -1; }
+            }
+            @Override public int lastVisibleParagraph() {
+                try { return area.lastVisibleParToAllParIndex(); } catch (Exception e) { return -1; }
+            }
+        }, lexer, brackets);
+        highlighter.highlightInBackground(Platform::runLater, CHUNK);
+        Subscription edits = area.plainTextChanges()
+                .subscribe(c -> highlighter.textChanged(c.getPosition(), c.getRemoved(), c.getInserted()));
+        return edits.and(highlighter::stop);
+    }
+
+    /** Lex the whole text from scratch. */
+    public void highlightAll() {
+        reset();
+        relex(0, count - 1);
+    }
+
+    /**
+     * Lex the visible paragraphs now and the rest in steps of {@code chunk} paragraphs, each posted with
+     * {@code post}; before each step, a viewport that was scrolled past the highlighted part is styled first.
+     */
+    public void highlightInBackground(Consumer<Runnable> post, int chunk) {
+        reset();
+        this.post = post;
+        this.chunk = Math.max(1, chunk);
+        highlightVisible();
+        if (frontier < count) post.accept(this::step);
+    }
+
+    /** Stop the background pass. */
+    public void stop() {
+        stopped = true;
+    }
+
+    /** True once every paragraph has been lexed. */
+    public boolean isComplete() {
+        return frontier >= count;
+    }
+
+    private void reset() {
+        count = target.paragraphCount();
+        states = new int[Math.max(64, count)];
+        Arrays.fill(states, 0, count, UNKNOWN);
+        frontier = 0;
+        if (brackets != null) brackets.reset(count);
+    }
+
+    private void step() {
+        if (stopped || frontier >= count) return;
+        highlightVisible();
+        if (frontier < count) relex(frontier, Math.min(count, frontier + chunk) - 1);
+        if (frontier < count) post.accept(this::step);
+    }
+
+    // style the viewport if it lies beyond the frontier; paragraphs past the frontier get a best-guess start state
+    private void highlightVisible() {
+        int first = target.firstVisibleParagraph();
+        int last = target.lastVisibleParagraph();
+        if (first < 0 || last < first) {
+            first = 0;
+            last = INITIAL_VIEWPORT - 1;
+        }
+        last = Math.min(last, count - 1);
+        if (last < frontier) return;
+        if (first <= frontier) relex(frontier, last);
+        else styleGuessed(first, last);
+    }
+
+    /**
+     * Update after {@code removed} was replaced by {@code inserted} at {@code position}; the target already
+     * holds the new text.
+     */
+    public void textChanged(int position, String removed, String inserted) {
+        int first = target.paragraphAt(position);
+        int removedBreaks = countBreaks(removed);
+        int insertedBreaks = countBreaks(inserted);
+        // paragraphs first..first+removedBreaks became first..first+insertedBreaks; shifting at `first` keeps
+        // the old end state of the last edited paragraph in place, where lexing can stop if it still matches
+        int delta = insertedBreaks - removedBreaks;
+        if (delta > 0) insertStates(first, delta);
+        else if (delta < 0) removeStates(first, -delta);
+        for (int p = first; p < first + insertedBreaks; p++) states[p] = UNKNOWN;
+        if (first < frontier) frontier = Math.max(first, frontier + delta);
+        // past the frontier the background pass will get to it
+        if (first <= frontier) relex(first, first + insertedBreaks);
+    }
+
+    /** Paragraphs lexed so far, for tests and tracing. */
+    long lexedParagraphs() {
+        return lexedParagraphs;
+    }
+
+    int stateAt(int paragraph) {
+        return states[paragraph];
+    }
+
+    // lex from `first` (at most the frontier) through at least `last`, then on until a paragraph's end state is
+    // what it was before or the frontier is reached
+    private void relex(int first, int last) {
+        if (count == 0) return;
+        int state = first > 0 ? states[first - 1] : Lexer.INITIAL;
+        StyleSpansBuilder<Collection<String>> spans = new StyleSpansBuilder<>();
+        int p = first;
+        for (; p < count; p++) {
+            if (p > first) spans.add(PLAIN, 1); // the line break before p
+            int before = states[p];
+            String text = target.paragraphText(p);
+            sink.reset(spans, brackets != null ? text : null);
+            state = lexer.lex(text, state, sink);
+            sink.finish(text.length());
+            if (brackets != null) brackets.set(p, sink.brackets());
+            states[p] = state;
+            lexedParagraphs++;
+            if (p >= last && (before == state || p + 1 >= frontier)) break;
+        }
+        frontier = Math.max(frontier, Math.min(count, p + 1));
+        target.setStyleSpans(first, spans.create());
+    }
+
+    // style first..last assuming no comment or text block is open before them; the states are left unknown
+    private void styleGuessed(int first, int last) {
+        int state = Lexer.INITIAL;
+        StyleSpansBuilder<Collection<String>> spans = new StyleSpansBuilder<>();
+        for (int p = first; p <= last; p++) {
+            if (p > first) spans.add(PLAIN, 1);
+            String text = target.paragraphText(p);
+            sink.reset(spans, null);
+            state = lexer.lex(text, state, sink);
+            sink.finish(text.length());
+            lexedParagraphs++;
+        }
+        target.setStyleSpans(first, spans.create());
+    }
+
+    /**
+     * Turns the tokens of one paragraph into style spans, filling the gaps with unstyled spans, and collects its
+     * brackets if given the text.
+     */
+    private static final class SpanSink implements Lexer.TokenSink {
+        private StyleSpansBuilder<Collection<String>> out;
+        private int pos;
+        private String text;
+        private int[] found = new int[16];
+        private int foundCount;
+
+        void reset(StyleSpansBuilder<Collection<String>> out, String text) {
+            this.out = out;
+            this.pos = 0;
+            this.text = text;
+            this.foundCount = 0;
+        }
+
+        @Override
+        public void token(int start, int end, TokenType type) {
+            out.add(PLAIN, start - pos);
+            out.add(STYLES.get(type.ordinal()), end - start);
+            pos = end;
+            if (text != null && end == start + 1) {
+                char c = text.charAt(start);
+                int kind = BracketIndex.kindOf(c);
+                if (kind < 0) return;
+                if (foundCount == found.length) found = Arrays.copyOf(found, foundCount * 2);
+                found[foundCount++] = BracketIndex.encode(start, kind, c == '(' || c == '[' || c == '{');
+            }
+        }
+
+        int[] brackets() {
+            return Arrays.copyOf(found, foundCount);
+        }
+
+        void finish(int length) {
+            out.add(PLAIN, length - pos);
+        }
+    }
+
+    private static int countBreaks(String s) {
+        int n = 0;
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) == '\n') n++;
+        }
+        return n;
+    }
+
+    private void insertStates(int at, int n) {
+        if (brackets != null) brackets.insertParagraphs(at, n);
+        if (count + n > states.length) states = Arrays.copyOf(states, Math.max(states.length * 2, count + n));
+        System.arraycopy(states, at, states, at + n, count - at);
+        count += n;
+    }
+
+    private void removeStates(int at, int n) {
+        if (brackets != null) brackets.removeParagraphs(at, n);
+        System.arraycopy(states, at + n, states, at, count - at - n);
+        count -= n;
+    }
+}
@@ -0,0 +1,220 @@
+package com.maze.mazeidea.editor;
+
+/**
+ * Single-pass Java lexer driven by a character-class table. No regular expressions and no allocation per
+ * call: identifiers are checked against an open-addressing keyword table by hashing the characters in
+ * place. Block comments and text blocks carry over to the next paragraph through the lexer state.
+ */
+public final class JavaLexer implements Lexer {
+    public static final int BLOCK_COMMENT = 1;
+    public static final int TEXT_BLOCK = 2;
+
+    static final String[] KEYWORDS = new String[] {
+            "abstract", "assert", "boolean", "break", "byte", "case", "catch", "char", "class", "const",
+            "continue", "default", "do", "double", "else", "enum", "extends", "final", "finally", "float",
+            "for", "goto", "if", "implements", "import", "instanceof", "int", "interface", "long", "native",
+            "new", "package", "private", "protected", "public", "return", "short", "static", "strictfp", "super",
+            "switch", "synchronized", "this", "throw", "throws", "transient", "try", "void", "volatile", "while"
+    };
+
+    private static final byte OTHER = 0, SPACE = 1, IDENT = 2, DIGIT = 3, QUOTE = 4, APOS = 5, SLASH = 6,
+            PAREN = 7, BRACE = 8, BRACKET = 9, SEMI = 10;
+    private static final byte[] CLASSES = new byte[128];
+    private static final int TABLE_SIZE = 128;
+    private static final char[][] KEYWORD_TABLE = new char[TABLE_SIZE][];
+    private static final int MAX_KEYWORD = 12;
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) CLASSES[c] = IDENT;
+        for (char c = 'A'; c <= 'Z'; c++) CLASSES[c] = IDENT;
+        for (char c = '0'; c <= '9'; c++) CLASSES[c] = DIGIT;
+        CLASSES['_'] = IDENT;
+        CLASSES['$'] = IDENT;
+        CLASSES[' '] = SPACE;
+        CLASSES['\t'] = SPACE;
+        CLASSES['\r'] = SPACE;
+        CLASSES['"'] = QUOTE;
+        CLASSES['\''] = APOS;
+        CLASSES['/'] = SLASH;
+        CLASSES['('] = PAREN;
+        CLASSES[')'] = PAREN;
+        CLASSES['{'] = BRACE;
+        CLASSES['}'] = BRACE;
+        CLASSES['['] = BRACKET;
+        CLASSES[']'] = BRACKET;
+        CLASSES[';'] = SEMI;
+        for (String k : KEYWORDS) {
+            int slot = slot(hash(k, 0, k.length()));
+            while (KEYWORD_TABLE[slot] != null) slot = (slot + 1) & (TABLE_SIZE - 1);
+            KEYWORD_TABLE[slot] = k.toCharArray();
+        }
+    }
+
+    /** Java keywords, e.g. for completion. */
+    public static String[] keywords() {
+        return KEYWORDS.clone();
+    }
+
+    @Override
+    public int lex(CharSequence text, int state, TokenSink sink) {
+        int n = text.length();
+        int i = 0;
+        if (state == BLOCK_COMMENT) {
+            int end = indexOfCommentEnd(text, 0);
+            if (end < 0) {
+                if (n > 0) sink.token(0, n, TokenType.COMMENT);
+                return BLOCK_COMMENT;
+            }
+            sink.token(0, end, TokenType.COMMENT);
+            i = end;
+        } else if (state == TEXT_BLOCK) {
+            int end = indexOfTextBlockEnd(text, 0);
+            if (end < 0) {
+                if (n > 0) sink.token(0, n, TokenType.STRING);
+                return TEXT_BLOCK;
+            }
+            sink.token(0, end, TokenType.STRING);
+            i = end;
+        }
+        while (i < n) {
+            char c = text.charAt(i);
+            int cls = c < 128 ? CLASSES[c] : (Character.isJavaIdentifierStart(c) ? IDENT : OTHER);
+            switch (cls) {
+                case IDENT: {
+                    int start = i++;
+                    while (i < n && isIdentifierPart(text.charAt(i))) i++;
+                    if (isKeyword(text, start, i)) sink.token(start, i, TokenType.KEYWORD);
+                    break;
+                }
+                case DIGIT:
+                    // numbers are plain; skip them whole so suffixes like 1L aren't read as identifiers
+                    while (i < n && (isIdentifierPart(text.charAt(i)) || text.charAt(i) == '.')) i++;
+                    break;
+                case QUOTE: {
+                    if (i + 2 < n && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') {
+                        int end = indexOfTextBlockEnd(text, i + 3);
+                        if (end < 0) {
+                            sink.token(i, n, TokenType.STRING);
+                            return TEXT_BLOCK;
+                        }
+                        sink.token(i, end, TokenType.STRING);
+                        i = end;
+                    } else {
+                        int end = endOfQuoted(text, i + 1, '"');
+                        sink.token(i, end, TokenType.STRING);
+                        i = end;
+                    }
+                    break;
+                }
+                case APOS: {
+                    int end = endOfQuoted(text, i + 1, '\'');
+                    sink.token(i, end, TokenType.STRING);
+                    i = end;
+                    break;
+                }
+                case SLASH: {
+                    char next = i + 1 < n ? text.charAt(i + 1) : 0;
+                    if (next == '/') {
+                        sink.token(i, n, TokenType.COMMENT);
+                        return INITIAL;
+                    }
+                    if (next == '*') {
+                        int end = indexOfCommentEnd(text, i + 2);
+                        if (end < 0) {
+                            sink.token(i, n, TokenType.COMMENT);
+                            return BLOCK_COMMENT;
+                        }
+                        sink.token(i, end, TokenType.COMMENT);
+                        i = end;
+                    } else {
+                        i++;
+                    }
+                    break;
+                }
+                case PAREN:
+                    sink.token(i, ++i, TokenType.PAREN);
+                    break;
+                case BRACE:
+                    sink.token(i, ++i, TokenType.BRACE);
+                    break;
+                case BRACKET:
+                    sink.token(i, ++i, TokenType.BRACKET);
+                    break;
+                case SEMI:
+                    sink.token(i, ++i, TokenType.SEMICOLON);
+                    break;
+                default:
+                    i++;
+                    break;
+            }
+        }
+        return INITIAL;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        if (c < 128) {
+            byte cls = CLASSES[c];
+            return cls == IDENT || cls == DIGIT;
+        }
+        return Character.isJavaIdentifierPart(c);
+    }
+
+    // end (exclusive) of a string or char literal; unterminated ones run to the end of the line
+    private static int endOfQuoted(CharSequence text, int from, char quote) {
+        int n = text.length();
+        for (int i = from; i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') i++;
+            else if (c == quote) return i + 1;
+        }
+        return n;
+    }
+
+    // end (exclusive) of the "*/" closing a block comment, or -1
+    private static int indexOfCommentEnd(CharSequence text, int from) {
+        for (int i = from; i + 1 < text.length(); i++) {
+            if (text.charAt(i) == '*' && text.charAt(i + 1) == '/') return i + 2;
+        }
+        return -1;
+    }
+
+    // end (exclusive) of the unescaped """ closing a text block, or -1
+    private static int indexOfTextBlockEnd(CharSequence text, int from) {
+        int n = text.length();
+        for (int i = from; i < n; i++) {
+            char c = text.charAt(i);
+            if (c == '\\') i++;
+            else if (c == '"' && i + 2 < n && text.charAt(i + 1) == '"' && text.charAt(i + 2) == '"') return i + 3;
+        }
+        return -1;
+    }
+
+    private static boolean isKeyword(CharSequence text, int start, int end) {
+        int len = end - start;
+        if (len < 2 || len > MAX_KEYWORD) return false;
+        int slot = slot(hash(text, start, end));
+        char[] k;
+        while ((k = KEYWORD_TABLE[slot]) != null) {
+            if (k.length == len && regionMatches(text, start, k)) return true;
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        return false;
+    }
+
+    private static boolean regionMatches(CharSequence text, int start, char[] k) {
+        for (int j = 0; j < k.length; j++) {
+            if (text.charAt(start + j) != k[j]) return false;
+        }
+        return true;
+    }
+
+    private static int hash(CharSequence s, int start, int end) {
+        int h = 0;
+        for (int i = start; i < end; i++) h = 31 * h + s.charAt(i);
+        return h;
+    }
+
+    private static int slot(int hash) {
+        return (hash ^ (hash >>> 7) ^ (hash >>> 15)) & (TABLE_SIZE - 1);
+    }
+}
@@ -0,0 +1,199 @@
+package com.maze.mazeidea.editor;
+
+import javafx.application.Platform;
+import javafx.collections.ObservableListBase;
+import javafx.scene.control.Button;
+import javafx.scene.control.Label;
+import javafx.scene.control.ListView;
+import javafx.scene.control.TextField;
+import javafx.scene.layout.BorderPane;
+import javafx.scene.layout.HBox;
+import javafx.scene.layout.Priority;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Read-only view of a file too large for the editor (see {@link #isLarge}). The file is memory-mapped and shown
+ * in a virtualized list whose items are decoded from the mapping only when their cells are on screen; the list
+ * grows while the line index is built in the background. Find searches the mapped bytes from the current line.
+ * If the file is truncated or replaced on disk, it is mapped and indexed again.
+ * <p>
+ * The threshold is {@code -Dmazeidea.largeFile.thresholdMb} (default 20).
+ */
+public final class LargeFileViewer extends BorderPane {
+    public static final String THRESHOLD_PROPERTY = "mazeidea.largeFile.thresholdMb";
+
+    private volatile MappedText text;
+    private final Executor executor;
+    private Lines lines = new Lines();
+    private final ListView<String> view = new ListView<>(lines);
+    private final TextField query = new TextField();
+    private final Label status = new Label();
+    private final AtomicBoolean updatePosted = new AtomicBoolean();
+    // FX thread only
+    private boolean reloading;
+    private boolean closed;
+
+    public LargeFileViewer(Path file, Executor executor) throws IOException {
+        this.text = MappedText.open(file);
+        this.executor = executor;
+        view.setFixedCellSize(18);
+        view.setStyle("-fx-font-family: monospace;");
+        query.setPromptText("Find in file");
+        query.setOnAction(e -> findNext());
+        Button find = new Button("Find Next");
+        find.setOnAction(e -> findNext());
+        HBox bar = new HBox(8, new Label("Read-only, " + (text.size() >> 20) + " MB"), query, find, status);
+        HBox.setHgrow(query, Priority.ALWAYS);
+        bar.setPadding(new javafx.geometry.Insets(4));
+        setTop(bar);
+        setCenter(view);
+        startIndexing();
+    }
+
+    private void startIndexing() {
+        MappedText current = text;
+        status.setText("Indexing lines...");
+        executor.execute(() -> {
+            try {
+                current.buildIndex(n -> postUpdate());
+            } catch (MappedText.ExternalChangeException e) {
+                Platform.runLater(this::reload);
+            }
+        });
+    }
+
+    // the file changed under the mapping: drop it and map the file again
+    private void reload() {
+        if (reloading || closed) return;
+        reloading = true;
+        MappedText old = text;
+        old.close();
+        status.setText("File changed on disk; reloading...");
+        executor.execute(() -> {
+            try {
+                MappedText fresh = MappedText.open(old.file());
+                Platform.runLater(() -> {
+                    reloading = false;
+                    if (closed) {
+                        fresh.close();
+                        return;
+                    }
+                    text = fresh;
+                    lines = new Lines();
+                    view.setItems(lines);
+                    startIndexing();
+                });
+            } catch (IOException e) {
+                Platform.runLater(() -> {
+                    reloading = false;
+                    status.setText("Failed to reload: " + e.getMessage());
+                });
+            }
+        });
+    }
+
+    /** Whether {@code file} is over the size threshold and should be opened here instead of the editor. */
+    public static boolean isLarge(Path file) {
+        long thresholdMb = Long.getLong(THRESHOLD_PROPERTY, 20);
+        try {
+            return thresholdMb > 0 && Files.size(file) > (thresholdMb << 20);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public void close() {
+        closed = true;
+        text.close();
+    }
+
+    // coalesce index progress into at most one pending UI update
+    private void postUpdate() {
+        if (!updatePosted.compareAndSet(false, true)) return;
+        Platform.runLater(() -> {
+            updatePosted.set(false);
+            lines.grow();
+            if (text.isIndexed()) status.setText(lines.size() + " lines");
+            else status.setText("Indexing lines... " + lines.size());
+        });
+    }
+
+    private void findNext() {
+        String q = query.getText();
+        if (q == null || q.isEmpty() || reloading) return;
+        MappedText current = text;
+        int selected = view.getSelectionModel().getSelectedIndex();
+        // from the line after the selection, or the top
+        long from;
+        try {
+            from = selected >= 0 && selected + 1 < lines.size() ? current.lineStart(selected + 1) : 0;
+        } catch (MappedText.ExternalChangeException e) {
+            reload();
+            return;
+        }
+        status.setText("Searching...");
+        executor.execute(() -> {
+            long hit, line;
+            try {
+                hit = current.find(q, from);
+                // the hit may lie beyond what has been indexed so far
+                line = hit >= 0 && hit < current.indexedBytes() ? current.lineOf(hit) : -1;
+            } catch (MappedText.ExternalChangeException | IllegalStateException e) {
+                Platform.runLater(this::reload);
+                return;
+            }
+            Platform.runLater(() -> {
+                if (current != text) return;
+                if (hit < 0) {
+                    status.setText("\"" + q + "\" not found" + (from > 0 ? " below the selection" : ""));
+                } else if (line < 0) {
+                    status.setText("Found at byte " + hit + "; still indexing lines");
+                } else {
+                    lines.grow();
+                    int row = (int) Math.min(Integer.MAX_VALUE, line);
+                    view.getSelectionModel().clearAndSelect(row);
+                    view.scrollTo(Math.max(0, row - 5));
+                    status.setText("Line " + (line + 1));
+                }
+            });
+        });
+    }
+
+    /** The lines of the mapped file as list items, decoded on access. */
+    private final class Lines extends ObservableListBase<String> {
+        private int size;
+
+        void grow() {
+            int n = (int) Math.min(Integer.MAX_VALUE, text.lineCount());
+            if (n <= size) return;
+            int old = size;
+            size = n;
+            beginChange();
+            nextAdd(old, n);
+            endChange();
+        }
+
+        @Override
+        public String get(int index) {
+            try {
+                return text.line(index);
+            } catch (MappedText.ExternalChangeException e) {
+                // cells are being laid out; swap the list afterwards
+                Platform.runLater(LargeFileViewer.this::reload);
+                return "";
+            } catch (IllegalStateException e) {
+                return ""; // closed
+            }
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
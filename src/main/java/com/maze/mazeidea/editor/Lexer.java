@@ -0,0 +1,21 @@
+package com.maze.mazeidea.editor;
+
+/**
+ * Lexes one paragraph at a time. The state carried from one paragraph to the next (e.g. "inside a block
+ * comment") is an int so the highlighter can store one per paragraph; {@link #INITIAL} is the state at the
+ * start of a document. Implementations report tokens to the sink and should not allocate per call.
+ */
+public interface Lexer {
+    int INITIAL = 0;
+
+    /** Report the tokens of {@code text}, which starts in {@code state}, and return the state at its end. */
+    int lex(CharSequence text, int state, TokenSink sink);
+
+    interface TokenSink {
+        /** Tokens arrive in order and don't overlap; text between them is plain. */
+        void token(int start, int end, TokenType type);
+    }
+
+    /** Lexer for text without syntax: reports nothing. */
+    Lexer PLAIN = (text, state, sink) -> INITIAL;
+}
@@ -0,0 +1,31 @@
+package com.maze.mazeidea.editor;
+
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Lexers by file extension; files without a registered lexer are shown as plain text. */
+public final class LexerRegistry {
+    private static final Map<String, Lexer> byExtension = new ConcurrentHashMap<>();
+
+    static {
+        register("java", new JavaLexer());
+    }
+
+    private LexerRegistry() {}
+
+    /** Register {@code lexer} for files ending in {@code .extension} (without the dot, case-insensitive). */
+    public static void register(String extension, Lexer lexer) {
+        byExtension.put(extension.toLowerCase(Locale.ROOT), lexer);
+    }
+
+    public static Lexer forFile(Path file) {
+        Path name = file != null ? file.getFileName() : null;
+        if (name == null) return Lexer.PLAIN;
+        String s = name.toString();
+        int dot = s.lastIndexOf('.');
+        if (dot < 0 || dot == s.length() - 1) return Lexer.PLAIN;
+        return byExtension.getOrDefault(s.substring(dot + 1).toLowerCase(Locale.ROOT), Lexer.PLAIN);
+    }
+}
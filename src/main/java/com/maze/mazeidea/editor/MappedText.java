@@ -0,0 +1,366 @@
+package com.maze.mazeidea.editor;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongConsumer;
+
+/**
+ * A read-only file mapped into memory in segments, with a sparse line index: only the start offset of every
+ * {@link #STRIDE}th line is kept, and a line is found by scanning forward from the closest one. Nothing is
+ * read until it is asked for, so opening a file of any size is cheap; the OS pages in what is looked at.
+ * <p>
+ * {@link #buildIndex} runs once on a background thread; {@link #lineCount()} grows while it does and lines
+ * below it can already be read from any thread.
+ * <p>
+ * {@link #close()} unmaps the file (so it is not kept locked, e.g. on Windows) once no read is using the
+ * mapping. A file that shrinks while mapped would fault on access; reads check the size first and report
+ * either case as an {@link ExternalChangeException}, after which the file has to be opened again.
+ */
+public final class MappedText implements Closeable {
+    static final int STRIDE = 64;
+    /** Longest prefix of a line that {@link #line} decodes. */
+    static final int MAX_LINE_BYTES = 10_000;
+    private static final int DEFAULT_SEGMENT = 1 << 30;
+    private static final long PROGRESS_BYTES = 16L << 20;
+    // Unsafe.invokeCleaner, the only way to unmap a buffer before Java 19's Arena; null if unavailable
+    private static final Object UNSAFE;
+    private static final Method INVOKE_CLEANER;
+
+    static {
+        Object unsafe = null;
+        Method cleaner = null;
+        try {
+            Class<?> c = Class.forName("sun.misc.Unsafe");
+            Field f = c.getDeclaredField("theUnsafe");
+            f.setAccessible(true);
+            unsafe = f.get(null);
+            cleaner = c.getMethod("invokeCleaner", ByteBuffer.class);
+        } catch (Exception ignored) {}
+        UNSAFE = unsafe;
+        INVOKE_CLEANER = cleaner;
+    }
+
+    /** The file was truncated or replaced under the mapping; its content has to be read again. */
+    public static final class ExternalChangeException extends RuntimeException {
+        ExternalChangeException(Path file, Throwable cause) {
+            super(file + " changed on disk", cause);
+        }
+    }
+
+    private final Path file;
+    private final long size;
+    private final int segmentShift;
+    private final int segmentMask;
+    private final int segmentSize;
+    private final MappedByteBuffer[] segments;
+    // kept open to check the size before reads
+    private final FileChannel channel;
+    // reads using the mapping; it is unmapped by close() or by the last read after it, never under one
+    private final AtomicInteger readers = new AtomicInteger();
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    // offsets of lines 0, STRIDE, 2*STRIDE, ...; written by the indexing thread, published through lineCount
+    private volatile long[] checkpoints = new long[64];
+    private volatile long lineCount;
+    private volatile long indexedBytes;
+    private volatile boolean indexed;
+    private volatile boolean cancelled;
+
+    private MappedText(Path file, int segmentSize) throws IOException {
+        this.file = file;
+        this.segmentSize = segmentSize;
+        this.segmentShift = Integer.numberOfTrailingZeros(segmentSize);
+        this.segmentMask = segmentSize - 1;
+        this.channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            this.size = channel.size();
+            int n = (int) ((size + segmentSize - 1) / segmentSize);
+            this.segments = new MappedByteBuffer[n];
+            for (int i = 0; i < n; i++) {
+                long start = (long) i * segmentSize;
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, start, Math.min(segmentSize, size - start));
+            }
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public static MappedText open(Path file) throws IOException {
+        return new MappedText(file, DEFAULT_SEGMENT);
+    }
+
+    /** With small segments (a power of two), so tests can cross segment boundaries. */
+    static MappedText open(Path file, int segmentSize) throws IOException {
+        return new MappedText(file, segmentSize);
+    }
+
+    public Path file() {
+        return file;
+    }
+
+    public long size() {
+        return size;
+    }
+
+    /** Lines indexed so far; all of them once {@link #isIndexed()}. */
+    public long lineCount() {
+        return lineCount;
+    }
+
+    /** Bytes covered by the index so far; {@link #lineOf} works below this offset. */
+    public long indexedBytes() {
+        return indexedBytes;
+    }
+
+    public boolean isIndexed() {
+        return indexed;
+    }
+
+    /**
+     * Scan the file for line breaks. Blocks; {@code progress} gets the line count every few MB. Stops early if
+     * the text is closed.
+     *
+     * @throws ExternalChangeException if the file shrank meanwhile
+     */
+    public void buildIndex(LongConsumer progress) {
+        if (!enter()) return;
+        try {
+            scanLines(progress);
+        } catch (InternalError e) {
+            throw new ExternalChangeException(file, e);
+        } finally {
+            exit();
+        }
+    }
+
+    private void scanLines(LongConsumer progress) {
+        long[] cps = checkpoints;
+        long lines = 0;
+        long lineStart = 0;
+        long nextReport = PROGRESS_BYTES;
+        cps[0] = 0;
+        for (int s = 0; s < segments.length && !cancelled; s++) {
+            checkSize();
+            MappedByteBuffer seg = segments[s];
+            long base = (long) s * segmentSize;
+            int limit = seg.limit();
+            for (int i = 0; i < limit; i++) {
+                if (seg.get(i) != '\n') continue;
+                lines++;
+                lineStart = base + i + 1;
+                if (lines % STRIDE == 0) {
+                    int cp = (int) (lines / STRIDE);
+                    if (cp == cps.length) {
+                        cps = Arrays.copyOf(cps, cps.length * 2);
+                        checkpoints = cps;
+                    }
+                    cps[cp] = lineStart;
+                }
+                if (lineStart >= nextReport) {
+                    checkSize();
+                    indexedBytes = lineStart;
+                    lineCount = lines;
+                    progress.accept(lines);
+                    nextReport = lineStart + PROGRESS_BYTES;
+                    if (cancelled) return;
+                }
+            }
+        }
+        if (cancelled) return;
+        // a last line without a trailing line break
+        if (lineStart < size || size == 0) lines++;
+        indexedBytes = size;
+        lineCount = lines;
+        indexed = true;
+        progress.accept(lines);
+    }
+
+    /**
+     * Line {@code line} (below {@link #lineCount()}) without its line break, cut at {@link #MAX_LINE_BYTES}.
+     *
+     * @throws ExternalChangeException if the file shrank since it was opened
+     */
+    public String line(long line) {
+        enterForRead();
+        try {
+            long start = lineStartAt(line);
+            long end = start;
+            long max = Math.min(size, start + MAX_LINE_BYTES);
+            while (end < max && byteAt(end) != '\n') end++;
+            boolean cut = end == max && end < size && byteAt(end) != '\n';
+            // don't split a multi-byte character: back up to the start of the one that straddles the cut
+            if (cut) while (end > start && (byteAt(end) & 0xC0) == 0x80) end--;
+            if (end > start && byteAt(end - 1) == '\r') end--;
+            String text = decode(start, end);
+            return cut ? text + " …" : text;
+        } catch (InternalError e) {
+            throw new ExternalChangeException(file, e);
+        } finally {
+            exit();
+        }
+    }
+
+    /** Offset where {@code line} starts. */
+    public long lineStart(long line) {
+        enterForRead();
+        try {
+            return lineStartAt(line);
+        } catch (InternalError e) {
+            throw new ExternalChangeException(file, e);
+        } finally {
+            exit();
+        }
+    }
+
+    private long lineStartAt(long line) {
+        int cp = (int) (line / STRIDE);
+        long pos = checkpoints[cp];
+        for (long skip = line % STRIDE; skip > 0 && pos < size; pos++) {
+            if (byteAt(pos) == '\n') skip--;
+        }
+        return pos;
+    }
+
+    /** Line containing byte {@code offset}; the offset must lie in the indexed part. */
+    public long lineOf(long offset) {
+        enterForRead();
+        try {
+            return lineAt(offset);
+        } catch (InternalError e) {
+            throw new ExternalChangeException(file, e);
+        } finally {
+            exit();
+        }
+    }
+
+    private long lineAt(long offset) {
+        long[] cps = checkpoints;
+        int lo = 0, hi = (int) Math.min(cps.length - 1, lineCount / STRIDE);
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (cps[mid] <= offset) lo = mid;
+            else hi = mid - 1;
+        }
+        long line = (long) lo * STRIDE;
+        for (long pos = cps[lo]; pos < offset; pos++) {
+            if (byteAt(pos) == '\n') line++;
+        }
+        return line;
+    }
+
+    /** Offset of the next occurrence of {@code needle} at or after {@code from}, or -1; -1 as well once closed. */
+    public long find(byte[] needle, long from) {
+        if (needle.length == 0 || !enter()) return -1;
+        try {
+            checkSize();
+            return search(needle, from);
+        } catch (InternalError e) {
+            throw new ExternalChangeException(file, e);
+        } finally {
+            exit();
+        }
+    }
+
+    private long search(byte[] needle, long from) {
+        byte first = needle[0];
+        long last = size - needle.length;
+        for (long pos = Math.max(0, from); pos <= last && !cancelled; ) {
+            // scan for the first byte within one segment, compare the rest across segments if need be
+            MappedByteBuffer seg = segments[(int) (pos >>> segmentShift)];
+            long base = pos & ~(long) segmentMask;
+            int end = (int) Math.min(seg.limit(), last - base + 1);
+            int i = (int) (pos - base);
+            while (i < end && seg.get(i) != first) i++;
+            if (i == end) {
+                pos = base + end;
+                continue;
+            }
+            pos = base + i;
+            int j = 1;
+            while (j < needle.length && byteAt(pos + j) == needle[j]) j++;
+            if (j == needle.length) return pos;
+            pos++;
+        }
+        return -1;
+    }
+
+    public long find(String text, long from) {
+        return find(text.getBytes(StandardCharsets.UTF_8), from);
+    }
+
+    private byte byteAt(long pos) {
+        return segments[(int) (pos >>> segmentShift)].get((int) (pos & segmentMask));
+    }
+
+    private String decode(long start, long end) {
+        byte[] bytes = new byte[(int) (end - start)];
+        for (int i = 0; i < bytes.length; i++) bytes[i] = byteAt(start + i);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // false once closed: the mapping may be gone, so it must not be touched
+    private boolean enter() {
+        readers.incrementAndGet();
+        if (!cancelled) return true;
+        exit();
+        return false;
+    }
+
+    private void enterForRead() {
+        if (!enter()) throw new IllegalStateException(file + " is closed");
+        try {
+            checkSize();
+        } catch (RuntimeException e) {
+            exit();
+            throw e;
+        }
+    }
+
+    private void exit() {
+        if (readers.decrementAndGet() == 0 && cancelled) release();
+    }
+
+    // reading a mapped page past the end of a truncated file faults; catch that before reading
+    private void checkSize() {
+        long now;
+        try {
+            now = channel.size();
+        } catch (IOException e) {
+            throw new ExternalChangeException(file, e);
+        }
+        if (now < size) throw new ExternalChangeException(file, null);
+    }
+
+    /** Stops indexing and searches, and unmaps the file once no read is using it. */
+    @Override
+    public void close() {
+        cancelled = true;
+        if (readers.get() == 0) release();
+    }
+
+    private void release() {
+        if (!released.compareAndSet(false, true)) return;
+        if (INVOKE_CLEANER != null) {
+            for (MappedByteBuffer segment : segments) {
+                try {
+                    INVOKE_CLEANER.invoke(UNSAFE, segment);
+                } catch (Exception ignored) {} // left to the garbage collector
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {}
+    }
+}
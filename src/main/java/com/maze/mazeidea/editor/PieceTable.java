@@ -0,0 +1,201 @@
+package com.maze.mazeidea.editor;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Editor buffer as a piece table: the text the file was opened with plus an append-only buffer of everything
+ * typed since, and a list of pieces of either that make up the current text. An edit appends its inserted text
+ * and rewrites the piece list; nothing is copied per keystroke. Consecutive typing extends the last piece, and
+ * the table is compacted into a new original once it has too many pieces.
+ * <p>
+ * {@link #snapshot()} is O(1) and immutable: the add buffer only grows and is never moved, so a snapshot stays
+ * valid after later edits and can be handed to another thread. The table itself is edited from one thread.
+ */
+public final class PieceTable {
+    private static final int CHUNK_SHIFT = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+    static final int MAX_PIECES = 2048;
+
+    private String original;
+    // add buffer in fixed chunks that are never reallocated
+    private char[][] chunks = new char[4][];
+    private int addLength;
+    private Piece[] pieces;
+    private int length;
+    private Snapshot snapshot;
+
+    public PieceTable(String text) {
+        reset(text);
+    }
+
+    private void reset(String text) {
+        original = text;
+        chunks = new char[4][];
+        addLength = 0;
+        pieces = text.isEmpty() ? new Piece[0] : new Piece[] {new Piece(false, 0, text.length())};
+        length = text.length();
+        snapshot = null;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    int pieceCount() {
+        return pieces.length;
+    }
+
+    /** Replace {@code removedLength} chars at {@code position} with {@code inserted}. */
+    public void replace(int position, int removedLength, String inserted) {
+        if (position < 0 || removedLength < 0 || position + removedLength > length) {
+            throw new IndexOutOfBoundsException("replace " + position + "+" + removedLength + " in " + length);
+        }
+        List<Piece> out = new ArrayList<>(pieces.length + 2);
+        slice(0, position, out);
+        if (!inserted.isEmpty()) {
+            int start = append(inserted);
+            Piece last = out.isEmpty() ? null : out.get(out.size() - 1);
+            if (last != null && last.add && last.start + last.length == start) {
+                out.set(out.size() - 1, new Piece(true, last.start, last.length + inserted.length()));
+            } else {
+                out.add(new Piece(true, start, inserted.length()));
+            }
+        }
+        slice(position + removedLength, length, out);
+        pieces = out.toArray(new Piece[0]);
+        length += inserted.length() - removedLength;
+        snapshot = null;
+        if (pieces.length > MAX_PIECES) reset(snapshot().toString());
+    }
+
+    /** The current text; later edits do not change it. */
+    public Snapshot snapshot() {
+        if (snapshot == null) {
+            int[] ends = new int[pieces.length];
+            int end = 0;
+            for (int i = 0; i < pieces.length; i++) ends[i] = end += pieces[i].length;
+            snapshot = new Snapshot(original, chunks, pieces, ends, length);
+        }
+        return snapshot;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    // the pieces covering [from, to), cut at both ends
+    private void slice(int from, int to, List<Piece> out) {
+        int offset = 0;
+        for (Piece p : pieces) {
+            if (offset >= to) break;
+            int s = Math.max(from, offset);
+            int e = Math.min(to, offset + p.length);
+            if (s < e) out.add(s == offset && e == offset + p.length ? p : new Piece(p.add, p.start + s - offset, e - s));
+            offset += p.length;
+        }
+    }
+
+    // append to the add buffer; returns where the text starts in it
+    private int append(String text) {
+        int start = addLength;
+        int copied = 0;
+        while (copied < text.length()) {
+            int chunk = addLength >>> CHUNK_SHIFT;
+            if (chunk == chunks.length) chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            if (chunks[chunk] == null) chunks[chunk] = new char[CHUNK_SIZE];
+            int at = addLength & CHUNK_MASK;
+            int n = Math.min(text.length() - copied, CHUNK_SIZE - at);
+            text.getChars(copied, copied + n, chunks[chunk], at);
+            copied += n;
+            addLength += n;
+        }
+        return start;
+    }
+
+    private static final class Piece {
+        final boolean add;
+        final int start;
+        final int length;
+
+        Piece(boolean add, int start, int length) {
+            this.add = add;
+            this.start = start;
+            this.length = length;
+        }
+    }
+
+    /** Immutable text of the table at one point in time. */
+    public static final class Snapshot implements CharSequence {
+        private final String original;
+        private final char[][] chunks;
+        private final Piece[] pieces;
+        // end offset of each piece
+        private final int[] ends;
+        private final int length;
+
+        private Snapshot(String original, char[][] chunks, Piece[] pieces, int[] ends, int length) {
+            this.original = original;
+            this.chunks = chunks;
+            this.pieces = pieces;
+            this.ends = ends;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            int lo = 0, hi = ends.length - 1;
+            while (lo < hi) {
+                int mid = (lo + hi) >>> 1;
+                if (ends[mid] <= index) lo = mid + 1;
+                else hi = mid;
+            }
+            Piece p = pieces[lo];
+            int offset = p.start + index - (ends[lo] - p.length);
+            return p.add ? chunks[offset >>> CHUNK_SHIFT][offset & CHUNK_MASK] : original.charAt(offset);
+        }
+
+        @Override
+        public String subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end) {
+                throw new IndexOutOfBoundsException("range " + start + ".." + end + ", length " + length);
+            }
+            StringBuilder sb = new StringBuilder(end - start);
+            int offset = 0;
+            for (Piece p : pieces) {
+                if (offset >= end) break;
+                int s = Math.max(start, offset);
+                int e = Math.min(end, offset + p.length);
+                if (s < e) appendPiece(sb, p, s - offset, e - offset);
+                offset += p.length;
+            }
+            return sb.toString();
+        }
+
+        private void appendPiece(StringBuilder sb, Piece p, int from, int to) {
+            if (!p.add) {
+                sb.append(original, p.start + from, p.start + to);
+                return;
+            }
+            for (int pos = p.start + from, end = p.start + to; pos < end; ) {
+                int n = Math.min(end - pos, CHUNK_SIZE - (pos & CHUNK_MASK));
+                sb.append(chunks[pos >>> CHUNK_SHIFT], pos & CHUNK_MASK, n);
+                pos += n;
+            }
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length);
+        }
+    }
+}
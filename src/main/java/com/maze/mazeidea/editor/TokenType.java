@@ -0,0 +1,22 @@
+package com.maze.mazeidea.editor;
+
+/** Token kinds, named after their style classes in syntax-highlighting.css. */
+public enum TokenType {
+    KEYWORD("keyword"),
+    PAREN("paren"),
+    BRACE("brace"),
+    BRACKET("bracket"),
+    SEMICOLON("semicolon"),
+    STRING("string"),
+    COMMENT("comment");
+
+    private final String styleClass;
+
+    TokenType(String styleClass) {
+        this.styleClass = styleClass;
+    }
+
+    public String styleClass() {
+        return styleClass;
+    }
+}
@@ -0,0 +1,97 @@
+package com.maze.mazeidea.fs;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Folds bursts of raw watch events into at most one event per path. A batch is flushed once no new
+ * event arrived for {@code quietMillis}, or {@code maxDelayMillis} after the first pending event so
+ * continuous churn (e.g. a long git checkout) still drains periodically.
+ */
+class EventCoalescer {
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<List<FileEvent>> sink;
+    private final long quietMillis;
+    private final long maxDelayMillis;
+    private final Map<Path, FileEvent> pending = new LinkedHashMap<>();
+    private long firstPendingAt;
+    private ScheduledFuture<?> flushTask;
+
+    EventCoalescer(ScheduledExecutorService scheduler, Consumer<List<FileEvent>> sink, long quietMillis, long maxDelayMillis) {
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.quietMillis = quietMillis;
+        this.maxDelayMillis = maxDelayMillis;
+    }
+
+    void add(FileEvent event) {
+        synchronized (this) {
+            FileEvent previous = pending.remove(event.path());
+            FileEvent merged = merge(previous, event);
+            if (merged != null) pending.put(event.path(), merged);
+            if (pending.isEmpty()) {
+                cancelFlush();
+                return;
+            }
+            long now = System.currentTimeMillis();
+            if (firstPendingAt == 0) firstPendingAt = now;
+            long delay = Math.min(quietMillis, Math.max(0, firstPendingAt + maxDelayMillis - now));
+            cancelFlush();
+            try {
+                flushTask = scheduler.schedule(this::flush, delay, TimeUnit.MILLISECONDS);
+            } catch (Exception ignored) {
+                // scheduler already shut down
+            }
+        }
+    }
+
+    void flush() {
+        List<FileEvent> batch;
+        synchronized (this) {
+            if (pending.isEmpty()) return;
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+            firstPendingAt = 0;
+            flushTask = null;
+        }
+        sink.accept(batch);
+    }
+
+    synchronized int pendingCount() {
+        return pending.size();
+    }
+
+    private void cancelFlush() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+    }
+
+    /**
+     * Combine the pending event for a path with a newer one. Returns null when the pair cancels out
+     * (a file created and deleted within the same window never existed as far as listeners care).
+     */
+    static FileEvent merge(FileEvent previous, FileEvent next) {
+        if (previous == null) return next;
+        FileEvent.EventType a = previous.type();
+        FileEvent.EventType b = next.type();
+        FileEvent.EventType result;
+        if (a == FileEvent.EventType.CREATE) {
+            if (b == FileEvent.EventType.DELETE) return null;
+            result = FileEvent.EventType.CREATE;
+        } else if (a == FileEvent.EventType.DELETE) {
+            result = b == FileEvent.EventType.DELETE ? FileEvent.EventType.DELETE : FileEvent.EventType.MODIFY;
+        } else {
+            result = b == FileEvent.EventType.DELETE ? FileEvent.EventType.DELETE : FileEvent.EventType.MODIFY;
+        }
+        return new FileEvent(next.path(), result, next.timestamp());
+    }
+}
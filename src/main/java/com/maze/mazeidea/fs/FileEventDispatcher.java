@@ -0,0 +1,160 @@
+package com.maze.mazeidea.fs;
+
+import com.maze.mazeidea.util.ExecutorRegistry;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Hands file events to listeners on a dedicated thread of the executor registry, which reports the ring's
+ * depth as the pool's queue. Events are buffered in a bounded ring
+ * ({@link ArrayBlockingQueue}) and drained in batches, so a slow listener delays delivery but never
+ * stalls the watch loop. When the ring stays full the producer waits briefly once, then drops the rest of
+ * the batch and reports it through {@code onDrop} so the caller can resynchronise (e.g. by rescanning).
+ */
+public class FileEventDispatcher {
+    public static final int DEFAULT_CAPACITY = 16_384;
+    private static final int MAX_BATCH = 2_048;
+    private static final long OFFER_TIMEOUT_MS = 200;
+
+    private final ArrayBlockingQueue<FileEvent> ring;
+    private final List<Consumer<List<FileEvent>>> batchListeners = new CopyOnWriteArrayList<>();
+    private final List<Consumer<FileEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final Runnable onDrop;
+    private final ExecutorService executor = ExecutorRegistry.shared().single("file-event-dispatch");
+    private volatile boolean running = true;
+
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong producerWaits = new AtomicLong();
+    private final AtomicLong listenerErrors = new AtomicLong();
+    private volatile int highWater;
+
+    public FileEventDispatcher(int capacity, Runnable onDrop) {
+        this.ring = new ArrayBlockingQueue<>(capacity);
+        this.onDrop = onDrop;
+        ExecutorRegistry.shared().backlog("file-event-dispatch", ring::size, () -> !running);
+        executor.execute(this::runLoop);
+    }
+
+    public void addBatchListener(Consumer<List<FileEvent>> listener) { batchListeners.add(listener); }
+    public void addListener(Consumer<FileEvent> listener) { listeners.add(listener); }
+
+    public void publish(List<FileEvent> events) {
+        int count = 0;
+        int lost = 0;
+        for (FileEvent fe : events) {
+            if (!running) return;
+            count++;
+            published.incrementAndGet();
+            if (!ring.offer(fe)) {
+                producerWaits.incrementAndGet();
+                boolean accepted;
+                try {
+                    accepted = ring.offer(fe, OFFER_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    accepted = false;
+                }
+                if (!accepted) {
+                    // wait once per batch at most: the rest is dropped too and the rescan recovers all of it
+                    lost = events.size() - count + 1;
+                    break;
+                }
+            }
+            int depth = ring.size();
+            if (depth > highWater) highWater = depth;
+        }
+        if (lost == 0) return;
+        published.addAndGet(lost - 1);
+        dropped.addAndGet(lost);
+        if (onDrop != null) {
+            try { onDrop.run(); } catch (Exception ignored) {}
+        }
+    }
+
+    public void shutdown() {
+        running = false;
+        executor.shutdownNow();
+    }
+
+    public Metrics metrics() {
+        return new Metrics(published.get(), delivered.get(), batches.get(), dropped.get(), producerWaits.get(),
+                listenerErrors.get(), ring.size(), highWater, ring.size() + ring.remainingCapacity());
+    }
+
+    private void runLoop() {
+        List<FileEvent> batch = new ArrayList<>(MAX_BATCH);
+        while (running) {
+            try {
+                batch.add(ring.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            ring.drainTo(batch, MAX_BATCH - 1);
+            List<FileEvent> view = Collections.unmodifiableList(batch);
+            for (Consumer<List<FileEvent>> l : batchListeners) {
+                try { l.accept(view); } catch (Exception e) { listenerErrors.incrementAndGet(); }
+            }
+            for (FileEvent fe : batch) {
+                for (Consumer<FileEvent> l : listeners) {
+                    try { l.accept(fe); } catch (Exception e) { listenerErrors.incrementAndGet(); }
+                }
+            }
+            delivered.addAndGet(batch.size());
+            batches.incrementAndGet();
+            batch = new ArrayList<>(MAX_BATCH);
+        }
+    }
+
+    public static final class Metrics {
+        private final long published;
+        private final long delivered;
+        private final long batches;
+        private final long dropped;
+        private final long producerWaits;
+        private final long listenerErrors;
+        private final int queueDepth;
+        private final int highWater;
+        private final int capacity;
+
+        Metrics(long published, long delivered, long batches, long dropped, long producerWaits,
+                long listenerErrors, int queueDepth, int highWater, int capacity) {
+            this.published = published;
+            this.delivered = delivered;
+            this.batches = batches;
+            this.dropped = dropped;
+            this.producerWaits = producerWaits;
+            this.listenerErrors = listenerErrors;
+            this.queueDepth = queueDepth;
+            this.highWater = highWater;
+            this.capacity = capacity;
+        }
+
+        public long published() { return published; }
+        public long delivered() { return delivered; }
+        public long batches() { return batches; }
+        public long dropped() { return dropped; }
+        /** Number of times the producer found the ring full and had to wait. */
+        public long producerWaits() { return producerWaits; }
+        public long listenerErrors() { return listenerErrors; }
+        public int queueDepth() { return queueDepth; }
+        public int highWater() { return highWater; }
+        public int capacity() { return capacity; }
+
+        @Override
+        public String toString() {
+            return "published=" + published + " delivered=" + delivered + " batches=" + batches
+                    + " dropped=" + dropped + " producerWaits=" + producerWaits + " depth=" + queueDepth
+                    + "/" + capacity + " highWater=" + highWater;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.maze.mazeidea.fs;
+
+/**
+ * Size and last-modified time of a file, used to tell whether it changed since it was last seen.
+ */
+public final class FileStamp {
+    private final long size;
+    private final long modified;
+
+    public FileStamp(long size, long modified) {
+        this.size = size;
+        this.modified = modified;
+    }
+
+    public long size() { return size; }
+    public long modified() { return modified; }
+
+    public boolean sameAs(long size, long modified) {
+        return this.size == size && this.modified == modified;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof FileStamp)) return false;
+        FileStamp other = (FileStamp) o;
+        return size == other.size && modified == other.modified;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(size) * 31 + Long.hashCode(modified);
+    }
+}
@@ -1,113 +1,426 @@
 package com.maze.mazeidea.fs;
 
+import com.maze.mazeidea.util.ExecutorRegistry;
+
 import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
-import java.util.concurrent.CopyOnWriteArrayList;
-import java.util.concurrent.CountDownLatch;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.function.Consumer;
+import java.util.stream.Stream;
 
+/**
+ * Watches a workspace root and delivers coalesced {@link FileEvent}s to listeners.
+ * Where the platform supports it (Windows) the whole tree is watched with a single native recursive key;
+ * otherwise the root is registered synchronously and subdirectories are registered in parallel in the
+ * background, so {@link #start()} returns without walking the tree. In {@link WatchMode#POLLING} mode,
+ * or when no native watch service is available, the tree is polled instead.
+ */
 public class FileWatcherService {
+    private static final long COALESCE_QUIET_MS = 50;
+    private static final long COALESCE_MAX_DELAY_MS = 500;
+    // more directories than this overflowing in one round are treated as a kernel queue overflow
+    static final int MAX_OVERFLOW_RESCANS = 8;
+    // how long the events of an own write are expected; past coalescing and the longest poll interval
+    private static final long OWN_WRITE_TTL_MS = 2 * PollingWatcher.MAX_INTERVAL_MS;
+
     private final Path root;
-    private WatchService watchService;
-    private final List<Consumer<FileEvent>> listeners = new CopyOnWriteArrayList<>();
-    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "file-watcher"));
+    private final WatchMode requestedMode;
+    private volatile WatchMode activeMode;
+    private volatile WatchService watchService;
+    private volatile PollingWatcher poller;
+    private final ExecutorService executor = ExecutorRegistry.shared().single("file-watcher");
+    private final ScheduledExecutorService coalesceScheduler = ExecutorRegistry.shared().scheduled("file-watcher-coalesce");
+    private final ForkJoinPool registrationPool = ExecutorRegistry.shared().forkJoin("file-watcher-scan",
+            Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private final FileEventDispatcher dispatcher = new FileEventDispatcher(FileEventDispatcher.DEFAULT_CAPACITY, this::onEventsDropped);
+    private final EventCoalescer coalescer = new EventCoalescer(coalesceScheduler, this::publish, COALESCE_QUIET_MS, COALESCE_MAX_DELAY_MS);
+    private final SubtreeRescanner rescanner = new SubtreeRescanner(registrationPool);
+    private final Object rescanLock = new Object();
+    // guarded by rescanLock: running rescans, and those to run again because a request was folded into them
+    private final Set<Path> rescansInFlight = new HashSet<>();
+    private final Set<Path> rescansAgain = new HashSet<>();
+    // files this process just wrote, with the stamp it left them at; their events are its own and are dropped
+    private final Map<Path, OwnWrite> ownWrites = new ConcurrentHashMap<>();
+    private final CompletableFuture<Void> registered = new CompletableFuture<>();
+    private volatile StampSource stampSource;
+    private volatile IgnoreRules ignoreRules = IgnoreRules.none();
     private volatile boolean running = false;
-    private final CountDownLatch readyLatch = new CountDownLatch(1);
+    private volatile boolean nativeRecursive = false;
 
     public FileWatcherService(Path root) {
+        this(root, WatchMode.forWorkspace(root));
+    }
+
+    public FileWatcherService(Path root, WatchMode mode) {
         this.root = root;
+        this.requestedMode = mode != null ? mode : WatchMode.AUTO;
     }
 
     public Path getRoot() { return root; }
 
+    /** The mode actually in use once started: NATIVE or POLLING. */
+    public WatchMode getActiveMode() { return activeMode; }
+
+    /** Receive events one at a time on the dispatcher thread. Prefer {@link #registerBatchListener}. */
     public void registerListener(Consumer<FileEvent> listener) {
-        listeners.add(listener);
+        dispatcher.addListener(listener);
+    }
+
+    /** Receive coalesced events in batches (up to a few thousand per call) on the dispatcher thread. */
+    public void registerBatchListener(Consumer<List<FileEvent>> listener) {
+        dispatcher.addBatchListener(listener);
+    }
+
+    public FileEventDispatcher.Metrics dispatchMetrics() {
+        return dispatcher.metrics();
+    }
+
+    /**
+     * Rules for paths that should not be watched. Ignored directories are never registered and events
+     * for ignored paths are dropped. Set before {@link #start()}.
+     */
+    public void setIgnoreRules(IgnoreRules rules) {
+        this.ignoreRules = rules != null ? rules : IgnoreRules.none();
     }
 
+    public IgnoreRules getIgnoreRules() { return ignoreRules; }
+
+    /** Whether changes in directory {@code dir} are reported, i.e. it is under the root and not ignored. */
+    public boolean covers(Path dir) {
+        Path p = dir.toAbsolutePath().normalize();
+        return running && root != null && p.startsWith(root.toAbsolutePath().normalize()) && !ignoreRules.isIgnored(p, true);
+    }
+
+    /**
+     * {@code file} is being written by this process and will have {@code stamp}: drop the events the write
+     * causes. Events for it are delivered again once its stamp differs, or after a few seconds.
+     */
+    public void expectOwnWrite(Path file, FileStamp stamp) {
+        ownWrites.put(file.toAbsolutePath().normalize(), new OwnWrite(stamp, System.currentTimeMillis() + OWN_WRITE_TTL_MS));
+    }
+
+    /** Source of last known file stamps, used to reconstruct lost events after an overflow. */
+    public void setStampSource(StampSource source) {
+        this.stampSource = source;
+    }
+
+    /**
+     * Open the watch service and register the root, then return. Subdirectories are registered in the
+     * background; use {@link #registration()} to find out when the whole tree is being watched
+     * (in polling mode: when the baseline snapshot has been taken).
+     */
     public void start() {
         running = true;
-        executor.submit(this::runLoop);
+        if (requestedMode.resolve(root) == WatchMode.POLLING || !startNative()) startPolling();
+    }
+
+    private void startPolling() {
+        activeMode = WatchMode.POLLING;
+        if (root == null || !Files.isDirectory(root)) {
+            registered.complete(null);
+            return;
+        }
+        PollingWatcher p = new PollingWatcher(root, registrationPool, coalesceScheduler, coalescer::add, ignoreRules);
+        poller = p;
+        p.start().whenComplete((r, ex) -> {
+            if (ex != null) registered.completeExceptionally(ex);
+            else registered.complete(null);
+        });
+    }
+
+    private boolean startNative() {
+        activeMode = WatchMode.NATIVE;
         try {
-            // wait up to 5 seconds for watcher to be ready and registered
-            readyLatch.await();
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
+            WatchService ws = FileSystems.getDefault().newWatchService();
+            this.watchService = ws;
+            if (root != null && Files.isDirectory(root)) {
+                nativeRecursive = registerRecursiveNative(root, ws);
+                if (!nativeRecursive) registerDir(root, ws);
+            }
+            executor.submit(() -> runLoop(ws));
+            if (nativeRecursive || root == null || !Files.isDirectory(root)) {
+                registered.complete(null);
+            } else {
+                CompletableFuture.runAsync(() -> registrationPool.invoke(new RegisterTree(root, ws, false)), registrationPool)
+                        .whenComplete((r, ex) -> {
+                            if (ex != null) registered.completeExceptionally(ex);
+                            else registered.complete(null);
+                        });
+            }
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            return false;
         }
     }
 
     public void stop() throws IOException {
         running = false;
-        if (watchService != null) watchService.close();
+        PollingWatcher p = poller;
+        if (p != null) p.stop();
+        WatchService ws = watchService;
+        if (ws != null) ws.close();
         executor.shutdownNow();
+        registrationPool.shutdownNow();
+        coalescer.flush();
+        coalesceScheduler.shutdownNow();
+        dispatcher.shutdown();
     }
 
-    private void runLoop() {
-        try (WatchService ws = FileSystems.getDefault().newWatchService()) {
-            this.watchService = ws;
+    /** Completes once every directory under the root has been registered. */
+    public CompletableFuture<Void> registration() {
+        return registered;
+    }
+
+    public boolean awaitRegistration(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            registered.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (Exception e) {
+            return registered.isDone();
+        }
+    }
+
+    public boolean isNativeRecursive() { return nativeRecursive; }
+
+    private void runLoop(WatchService ws) {
+        List<WatchKey> ready = new ArrayList<>();
+        Set<Path> overflowed = new HashSet<>();
+        while (running) {
             try {
-                registerAll(root, ws);
-            } catch (Exception ignored) {
-            } finally {
-                readyLatch.countDown();
+                ready.add(ws.take());
+                // drain whatever else is ready, so overflows signalled together are seen together
+                for (WatchKey more = ws.poll(); more != null; more = ws.poll()) ready.add(more);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (ClosedWatchServiceException e) {
+                break;
+            }
+            for (WatchKey key : ready) {
+                if (!processKey(key, ws)) overflowed.add((Path) key.watchable());
+                key.reset();
+            }
+            ready.clear();
+            if (!overflowed.isEmpty()) {
+                overflowed(overflowed, ws);
+                overflowed.clear();
+            }
+        }
+    }
+
+    /**
+     * Rescan directories whose events were dropped. A key overflows on its own when more than the JDK's
+     * per-key limit of events piles up, and then only that directory lost events; a kernel queue overflow
+     * (Linux {@code IN_Q_OVERFLOW}) is reported on every key at once, so overflow on many keys in one round
+     * rescans the root instead of each of them.
+     */
+    void overflowed(Collection<Path> dirs, WatchService ws) {
+        if (dirs.size() > MAX_OVERFLOW_RESCANS || dirs.contains(root)) {
+            scheduleRescan(root, ws);
+            return;
+        }
+        for (Path dir : dirs) scheduleRescan(dir, ws);
+    }
+
+    // false if the key overflowed and its directory has to be rescanned
+    private boolean processKey(WatchKey key, WatchService ws) {
+        boolean complete = true;
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> ev : key.pollEvents()) {
+            WatchEvent.Kind<?> kind = ev.kind();
+            if (kind == StandardWatchEventKinds.OVERFLOW) {
+                complete = false;
+                continue;
             }
 
-            while (running) {
-                WatchKey key;
+            Path relative = (Path) ev.context();
+            Path full = dir.resolve(relative);
+
+            FileEvent.EventType type;
+            if (kind == StandardWatchEventKinds.ENTRY_CREATE) type = FileEvent.EventType.CREATE;
+            else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) type = FileEvent.EventType.MODIFY;
+            else type = FileEvent.EventType.DELETE;
+
+            boolean isDir = type == FileEvent.EventType.CREATE && Files.isDirectory(full, LinkOption.NOFOLLOW_LINKS);
+            if (ignoreRules.isIgnored(full, isDir)) continue;
+            if (isDir && !nativeRecursive) {
                 try {
-                    key = ws.take();
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    break;
-                }
+                    // entries created before the new directory was registered would be lost otherwise
+                    registrationPool.execute(new RegisterTree(full, ws, true));
+                } catch (Exception ignored) {}
+            }
 
-                for (WatchEvent<?> ev : key.pollEvents()) {
-                    WatchEvent.Kind<?> kind = ev.kind();
-                    if (kind == StandardWatchEventKinds.OVERFLOW) continue;
-
-                    Path dir = (Path) key.watchable();
-                    Path relative = (Path) ev.context();
-                    Path full = dir.resolve(relative);
-
-                    FileEvent.EventType type;
-                    if (kind == StandardWatchEventKinds.ENTRY_CREATE) type = FileEvent.EventType.CREATE;
-                    else if (kind == StandardWatchEventKinds.ENTRY_MODIFY) type = FileEvent.EventType.MODIFY;
-                    else type = FileEvent.EventType.DELETE;
-
-                    if (kind == StandardWatchEventKinds.ENTRY_CREATE) {
-                        try {
-                            if (Files.isDirectory(full)) registerAll(full, ws);
-                        } catch (Exception ignored) {}
-                    }
-
-                    FileEvent fe = new FileEvent(full, type, System.currentTimeMillis());
-                    for (Consumer<FileEvent> l : listeners) {
-                        try { l.accept(fe); } catch (Exception ignore) {}
-                    }
-                }
+            coalescer.add(new FileEvent(full, type, System.currentTimeMillis()));
+        }
+        return complete;
+    }
+
+    private void publish(List<FileEvent> events) {
+        if (!ownWrites.isEmpty()) {
+            long now = System.currentTimeMillis();
+            ownWrites.values().removeIf(w -> w.until < now);
+        }
+        List<FileEvent> out = new ArrayList<>(events.size());
+        for (FileEvent e : events) {
+            if (!isOwnWrite(e)) out.add(e);
+        }
+        if (!out.isEmpty()) dispatcher.publish(out);
+    }
 
-                boolean valid = key.reset();
-                if (!valid) break;
+    private boolean isOwnWrite(FileEvent e) {
+        Path name = e.path().getFileName();
+        if (name != null && name.toString().startsWith(SaveService.TEMP_PREFIX)) return true;
+        if (ownWrites.isEmpty() || e.type() == FileEvent.EventType.DELETE) return false;
+        Path file = e.path().toAbsolutePath().normalize();
+        OwnWrite expected = ownWrites.get(file);
+        if (expected == null) return false;
+        try {
+            if (expected.stamp.sameAs(Files.size(file), Files.getLastModifiedTime(file).toMillis())) return true;
+        } catch (IOException ignored) {}
+        ownWrites.remove(file, expected);
+        return false;
+    }
+
+    private static final class OwnWrite {
+        final FileStamp stamp;
+        final long until;
+
+        OwnWrite(FileStamp stamp, long until) {
+            this.stamp = stamp;
+            this.until = until;
+        }
+    }
+
+    /**
+     * Events for {@code dir} were dropped by the kernel or the key's queue; rescan that subtree and emit
+     * the difference against the known stamps. Nested requests are folded into an in-flight ancestor, which
+     * runs once more when it ends, since it may already have passed the place that changed.
+     */
+    private void scheduleRescan(Path dir, WatchService ws) {
+        synchronized (rescanLock) {
+            for (Path p : rescansInFlight) {
+                if (dir.startsWith(p)) {
+                    rescansAgain.add(p);
+                    return;
+                }
             }
-        } catch (IOException e) {
-            // log and exit
-            readyLatch.countDown();
+            rescansInFlight.add(dir);
+        }
+        try {
+            registrationPool.execute(() -> {
+                try {
+                    StampSource source = stampSource;
+                    Map<Path, FileStamp> known = source != null ? source.stampsUnder(dir) : Map.of();
+                    List<FileEvent> events = rescanner.rescan(dir, known, d -> {
+                        if (ws != null && !nativeRecursive) registerDir(d, ws);
+                    }, ignoreRules);
+                    for (FileEvent fe : events) coalescer.add(fe);
+                } catch (Exception e) {
+                    System.err.println("Rescan after overflow failed for " + dir + ": " + e.getMessage());
+                } finally {
+                    if (rescanDone(dir) && running) scheduleRescan(dir, ws);
+                }
+            });
+        } catch (Exception e) {
+            rescanDone(dir);
+        }
+    }
+
+    // whether the rescan of dir has to run again
+    private boolean rescanDone(Path dir) {
+        synchronized (rescanLock) {
+            rescansInFlight.remove(dir);
+            return rescansAgain.remove(dir);
         }
     }
 
-    private void registerAll(Path start, WatchService ws) throws IOException {
-        if (start == null || !Files.exists(start)) return;
-        Files.walk(start)
-                .filter(Files::isDirectory)
-                .forEach(dir -> registerDir(dir, ws));
+    // listeners fell too far behind and events were dropped; resynchronise the whole tree from stamps
+    private void onEventsDropped() {
+        if (running && root != null) scheduleRescan(root, watchService);
+    }
+
+    private boolean registerRecursiveNative(Path dir, WatchService ws) {
+        WatchEvent.Modifier fileTree = fileTreeModifier();
+        if (fileTree == null) return false;
+        try {
+            dir.register(ws, new WatchEvent.Kind<?>[] {
+                    StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE
+            }, fileTree);
+            return true;
+        } catch (UnsupportedOperationException | IOException e) {
+            return false;
+        }
+    }
+
+    // com.sun.nio.file lives in jdk.unsupported; look it up reflectively so we don't depend on it at compile time
+    private static WatchEvent.Modifier fileTreeModifier() {
+        try {
+            Class<?> c = Class.forName("com.sun.nio.file.ExtendedWatchEventModifier");
+            return (WatchEvent.Modifier) c.getField("FILE_TREE").get(null);
+        } catch (Throwable t) {
+            return null;
+        }
     }
 
     private void registerDir(Path dir, WatchService ws) {
         try {
             dir.register(ws, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
-        } catch (IOException ignored) {
+        } catch (IOException | ClosedWatchServiceException ignored) {
+        }
+    }
+
+    /**
+     * Registers a directory and forks one task per subdirectory. When {@code emitExisting} is set the
+     * directory appeared at runtime, so its current entries are reported as CREATE events.
+     */
+    private final class RegisterTree extends RecursiveAction {
+        private final Path dir;
+        private final WatchService ws;
+        private final boolean emitExisting;
+        private final boolean registerSelf;
+
+        RegisterTree(Path dir, WatchService ws, boolean emitExisting) {
+            this(dir, ws, emitExisting, emitExisting);
+        }
+
+        private RegisterTree(Path dir, WatchService ws, boolean emitExisting, boolean registerSelf) {
+            this.dir = dir;
+            this.ws = ws;
+            this.emitExisting = emitExisting;
+            this.registerSelf = registerSelf;
+        }
+
+        @Override
+        protected void compute() {
+            if (!running) return;
+            if (registerSelf) registerDir(dir, ws);
+            List<RegisterTree> children = new ArrayList<>();
+            try (Stream<Path> s = Files.list(dir)) {
+                s.forEach(child -> {
+                    boolean isDir = Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS);
+                    if (ignoreRules.isIgnored(child, isDir)) return;
+                    if (emitExisting) coalescer.add(new FileEvent(child, FileEvent.EventType.CREATE, System.currentTimeMillis()));
+                    if (isDir) children.add(new RegisterTree(child, ws, emitExisting, true));
+                });
+            } catch (IOException | UncheckedIOException ignored) {
+            }
+            invokeAll(children);
         }
     }
 }
@@ -0,0 +1,283 @@
+package com.maze.mazeidea.fs;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Compiled gitignore-style rules for a workspace, shared by the file watcher, the indexer and the
+ * project tree. Patterns are compiled into a trie keyed by path segment (literal segments are map
+ * lookups, wildcard segments are pre-compiled matchers and {@code **} is a self-looping node), so a path
+ * is checked in one pass over its segments regardless of how many rules there are.
+ * <p>
+ * Supported: {@code *}, {@code ?}, {@code [...]}, {@code **} (a trailing one only matching below its
+ * directory, as in git), leading {@code /} anchoring, trailing
+ * {@code /} for directories only, {@code !} negation with last-match-wins, and gitignore's rule that
+ * nothing inside an ignored directory can be re-included. Only the root {@code .gitignore} and
+ * {@code .git/info/exclude} are read, on top of {@link #DEFAULT_PATTERNS}.
+ */
+public final class IgnoreRules {
+    public static final List<String> DEFAULT_PATTERNS = List.of(
+            ".git/", ".hg/", ".svn/", "node_modules/", "target/", ".gradle/"
+    );
+
+    private static final IgnoreRules NONE = new IgnoreRules(null, new Node());
+
+    private final Path root;
+    private final Node trie;
+
+    private IgnoreRules(Path root, Node trie) {
+        this.root = root;
+        this.trie = trie;
+    }
+
+    public static IgnoreRules none() {
+        return NONE;
+    }
+
+    /** Defaults, then {@code .git/info/exclude}, then the root {@code .gitignore}; later rules win. */
+    public static IgnoreRules load(Path root) {
+        List<String> lines = new ArrayList<>(DEFAULT_PATTERNS);
+        if (root != null) {
+            lines.addAll(readLines(root.resolve(".git").resolve("info").resolve("exclude")));
+            lines.addAll(readLines(root.resolve(".gitignore")));
+        }
+        return compile(root, lines);
+    }
+
+    public static IgnoreRules compile(Path root, List<String> patterns) {
+        Node trie = new Node();
+        int index = 0;
+        for (String line : patterns) {
+            if (add(trie, line, index)) index++;
+        }
+        return new IgnoreRules(root, trie);
+    }
+
+    public Path getRoot() { return root; }
+
+    /** Check a path whose type is unknown; it is treated as a file, which is exact for all but dir-only rules. */
+    public boolean isIgnored(Path path) {
+        return isIgnored(path, false);
+    }
+
+    public boolean isIgnored(Path path, boolean isDirectory) {
+        if (root == null || path == null || !path.startsWith(root)) return false;
+        Path rel = root.relativize(path);
+        int n = rel.getNameCount();
+        if (n == 0 || rel.toString().isEmpty()) return false;
+
+        List<Node> states = new ArrayList<>();
+        addWithClosure(states, trie);
+        List<Node> next = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            String segment = rel.getName(i).toString();
+            next.clear();
+            for (Node node : states) node.step(segment, next);
+            List<Node> swap = states;
+            states = next;
+            next = swap;
+            if (states.isEmpty()) return false;
+
+            boolean last = i == n - 1;
+            boolean dir = !last || isDirectory;
+            int best = -1;
+            boolean negated = false;
+            for (Node node : states) {
+                if (node.anyRule > best) { best = node.anyRule; negated = node.anyNegated; }
+                if (dir && node.dirRule > best) { best = node.dirRule; negated = node.dirNegated; }
+            }
+            // an excluded parent directory cannot have its contents re-included
+            if (best >= 0 && !negated) return true;
+            if (last) return false;
+        }
+        return false;
+    }
+
+    private static boolean add(Node trie, String raw, int index) {
+        String line = stripTrailingSpaces(raw);
+        if (line.isEmpty() || line.startsWith("#")) return false;
+        boolean negate = false;
+        if (line.startsWith("!")) {
+            negate = true;
+            line = line.substring(1);
+        } else if (line.startsWith("\\!") || line.startsWith("\\#")) {
+            line = line.substring(1);
+        }
+        boolean dirOnly = line.endsWith("/");
+        if (dirOnly) line = line.substring(0, line.length() - 1);
+        // a slash anywhere but at the end anchors the pattern to the root; otherwise it matches at any depth
+        boolean anchored = line.contains("/");
+        if (line.startsWith("/")) line = line.substring(1);
+        if (line.isEmpty()) return false;
+
+        Node node = trie;
+        if (!anchored) node = node.doubleStar();
+        String[] segments = line.split("/");
+        int lastSegment = segments.length - 1;
+        while (lastSegment > 0 && segments[lastSegment].isEmpty()) lastSegment--;
+        for (int i = 0; i <= lastSegment; i++) {
+            String segment = segments[i];
+            if (segment.isEmpty()) continue;
+            if (!segment.equals("**")) {
+                node = node.child(segment);
+            } else if (i < lastSegment) {
+                node = node.doubleStar();
+            } else {
+                // a trailing "**" matches everything inside, but not the directory itself: one segment or more
+                node = node.child("*").doubleStar();
+            }
+        }
+        if (dirOnly) {
+            node.dirRule = index;
+            node.dirNegated = negate;
+        } else {
+            node.anyRule = index;
+            node.anyNegated = negate;
+        }
+        return true;
+    }
+
+    private static void addWithClosure(List<Node> states, Node node) {
+        if (states.contains(node)) return;
+        states.add(node);
+        if (node.doubleStar != null) addWithClosure(states, node.doubleStar);
+    }
+
+    private static String stripTrailingSpaces(String s) {
+        int end = s.length();
+        while (end > 0 && s.charAt(end - 1) == ' ' && !(end > 1 && s.charAt(end - 2) == '\\')) end--;
+        return s.substring(0, end).replace("\\ ", " ");
+    }
+
+    private static List<String> readLines(Path file) {
+        try {
+            if (Files.isRegularFile(file)) return Files.readAllLines(file, StandardCharsets.UTF_8);
+        } catch (IOException ignored) {}
+        return List.of();
+    }
+
+    private static final class Node {
+        private Map<String, Node> literals;
+        private List<Glob> globs;
+        private Node doubleStar;
+        private boolean selfLoop;
+        private int anyRule = -1;
+        private boolean anyNegated;
+        private int dirRule = -1;
+        private boolean dirNegated;
+
+        Node child(String segment) {
+            if (isLiteral(segment)) {
+                String key = unescape(segment);
+                if (literals == null) literals = new HashMap<>();
+                return literals.computeIfAbsent(key, k -> new Node());
+            }
+            if (globs == null) globs = new ArrayList<>();
+            for (Glob g : globs) {
+                if (g.source.equals(segment)) return g.target;
+            }
+            Glob g = new Glob(segment, new Node());
+            globs.add(g);
+            return g.target;
+        }
+
+        Node doubleStar() {
+            if (doubleStar == null) {
+                doubleStar = new Node();
+                doubleStar.selfLoop = true;
+            }
+            return doubleStar;
+        }
+
+        void step(String segment, List<Node> out) {
+            if (selfLoop) addWithClosure(out, this);
+            if (literals != null) {
+                Node n = literals.get(segment);
+                if (n != null) addWithClosure(out, n);
+            }
+            if (globs != null) {
+                for (Glob g : globs) {
+                    if (g.matches(segment)) addWithClosure(out, g.target);
+                }
+            }
+        }
+    }
+
+    private static final class Glob {
+        private final String source;
+        private final Node target;
+        private final String suffix;
+        private final Pattern pattern;
+
+        Glob(String source, Node target) {
+            this.source = source;
+            this.target = target;
+            // "*.ext" is by far the most common shape; match it without a regex
+            String rest = source.length() > 1 && source.charAt(0) == '*' ? source.substring(1) : null;
+            if (rest != null && isLiteral(rest)) {
+                this.suffix = unescape(rest);
+                this.pattern = null;
+            } else {
+                this.suffix = null;
+                this.pattern = Pattern.compile(toRegex(source));
+            }
+        }
+
+        boolean matches(String segment) {
+            if (suffix != null) return segment.endsWith(suffix);
+            return pattern.matcher(segment).matches();
+        }
+    }
+
+    private static boolean isLiteral(String segment) {
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '\\') { i++; continue; }
+            if (c == '*' || c == '?' || c == '[') return false;
+        }
+        return true;
+    }
+
+    private static String unescape(String segment) {
+        if (segment.indexOf('\\') < 0) return segment;
+        StringBuilder sb = new StringBuilder(segment.length());
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '\\' && i + 1 < segment.length()) c = segment.charAt(++i);
+            sb.append(c);
+        }
+        return sb.toString();
+    }
+
+    private static String toRegex(String glob) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < glob.length(); i++) {
+            char c = glob.charAt(i);
+            switch (c) {
+                case '*': sb.append("[^/]*"); break;
+                case '?': sb.append("[^/]"); break;
+                case '\\':
+                    if (i + 1 < glob.length()) sb.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                    break;
+                case '[': {
+                    int close = glob.indexOf(']', i + 2);
+                    if (close < 0) { sb.append("\\["); break; }
+                    String body = glob.substring(i + 1, close);
+                    if (body.startsWith("!")) body = "^" + body.substring(1);
+                    sb.append('[').append(body.replace("\\", "\\\\").replace("[", "\\[")).append(']');
+                    i = close;
+                    break;
+                }
+                default: sb.append(Pattern.quote(String.valueOf(c)));
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,84 @@
+package com.maze.mazeidea.fs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+/**
+ * Walks a tree with one fork/join task per directory and streams every regular file to a visitor as it is
+ * found, so nothing is materialized and there is no cap on the number of files. Ignored directories are
+ * not descended into. The visitor is called from several threads at once; a visitor that blocks (e.g. on a
+ * full indexing backlog) throttles the walk.
+ */
+public final class ParallelWalker {
+    private final ForkJoinPool pool;
+
+    public interface Visitor {
+        void visitFile(Path file, BasicFileAttributes attrs) throws InterruptedException;
+    }
+
+    public ParallelWalker(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Walk {@code root} and return once every file was visited. Returns false if the walk was interrupted,
+     * in which case not every file has been seen.
+     */
+    public boolean walk(Path root, IgnoreRules ignore, Visitor visitor) {
+        AtomicBoolean stopped = new AtomicBoolean();
+        pool.invoke(new DirTask(root, ignore != null ? ignore : IgnoreRules.none(), visitor, stopped));
+        return !stopped.get();
+    }
+
+    private static final class DirTask extends RecursiveAction {
+        private final Path dir;
+        private final IgnoreRules ignore;
+        private final Visitor visitor;
+        private final AtomicBoolean stopped;
+
+        DirTask(Path dir, IgnoreRules ignore, Visitor visitor, AtomicBoolean stopped) {
+            this.dir = dir;
+            this.ignore = ignore;
+            this.visitor = visitor;
+            this.stopped = stopped;
+        }
+
+        @Override
+        protected void compute() {
+            List<DirTask> subdirs = new ArrayList<>();
+            try (Stream<Path> s = Files.list(dir)) {
+                for (Path child : (Iterable<Path>) s::iterator) {
+                    if (stopped.get()) break;
+                    BasicFileAttributes attrs;
+                    try {
+                        attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                    } catch (IOException e) {
+                        continue; // vanished between listing and stat
+                    }
+                    if (ignore.isIgnored(child, attrs.isDirectory())) continue;
+                    if (attrs.isDirectory()) {
+                        DirTask t = new DirTask(child, ignore, visitor, stopped);
+                        t.fork();
+                        subdirs.add(t);
+                    } else if (attrs.isRegularFile()) {
+                        visitor.visitFile(child, attrs);
+                    }
+                }
+            } catch (IOException | UncheckedIOException ignored) {
+            } catch (InterruptedException e) {
+                stopped.set(true);
+            }
+            for (DirTask t : subdirs) t.join();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.maze.mazeidea.fs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.stream.Stream;
+
+/**
+ * Immutable stat snapshot of every regular file under a root, kept as sorted parallel arrays
+ * (relative path, size, mtime) so a 100k-file tree costs a few MB and two snapshots diff in one
+ * linear merge pass.
+ */
+final class PollingSnapshot {
+    private static final PollingSnapshot EMPTY = new PollingSnapshot(new String[0], new long[0], new long[0]);
+
+    private final String[] paths;
+    private final long[] sizes;
+    private final long[] modified;
+
+    private PollingSnapshot(String[] paths, long[] sizes, long[] modified) {
+        this.paths = paths;
+        this.sizes = sizes;
+        this.modified = modified;
+    }
+
+    static PollingSnapshot empty() {
+        return EMPTY;
+    }
+
+    /** Stat the tree under {@code root} in parallel, skipping ignored files and directories. */
+    static PollingSnapshot scan(Path root, ForkJoinPool pool, IgnoreRules ignore) {
+        List<Entry> entries = pool.invoke(new ScanTask(root, root, ignore != null ? ignore : IgnoreRules.none()));
+        entries.sort(Comparator.comparing(e -> e.path));
+        int n = entries.size();
+        String[] paths = new String[n];
+        long[] sizes = new long[n];
+        long[] modified = new long[n];
+        for (int i = 0; i < n; i++) {
+            Entry e = entries.get(i);
+            paths[i] = e.path;
+            sizes[i] = e.size;
+            modified[i] = e.modified;
+        }
+        return new PollingSnapshot(paths, sizes, modified);
+    }
+
+    int size() {
+        return paths.length;
+    }
+
+    /** Events that turn this snapshot into {@code next}. */
+    List<FileEvent> diff(PollingSnapshot next, Path root, long timestamp) {
+        List<FileEvent> events = new ArrayList<>();
+        int i = 0;
+        int j = 0;
+        while (i < paths.length || j < next.paths.length) {
+            int cmp;
+            if (i >= paths.length) cmp = 1;
+            else if (j >= next.paths.length) cmp = -1;
+            else cmp = paths[i].compareTo(next.paths[j]);
+
+            if (cmp < 0) {
+                events.add(new FileEvent(root.resolve(paths[i]), FileEvent.EventType.DELETE, timestamp));
+                i++;
+            } else if (cmp > 0) {
+                events.add(new FileEvent(root.resolve(next.paths[j]), FileEvent.EventType.CREATE, timestamp));
+                j++;
+            } else {
+                if (sizes[i] != next.sizes[j] || modified[i] != next.modified[j]) {
+                    events.add(new FileEvent(root.resolve(next.paths[j]), FileEvent.EventType.MODIFY, timestamp));
+                }
+                i++;
+                j++;
+            }
+        }
+        return events;
+    }
+
+    private static final class Entry {
+        private final String path;
+        private final long size;
+        private final long modified;
+
+        private Entry(String path, long size, long modified) {
+            this.path = path;
+            this.size = size;
+            this.modified = modified;
+        }
+    }
+
+    private static final class ScanTask extends RecursiveTask<List<Entry>> {
+        private final Path root;
+        private final Path dir;
+        private final IgnoreRules ignore;
+
+        ScanTask(Path root, Path dir, IgnoreRules ignore) {
+            this.root = root;
+            this.dir = dir;
+            this.ignore = ignore;
+        }
+
+        @Override
+        protected List<Entry> compute() {
+            List<Entry> out = new ArrayList<>();
+            List<ScanTask> subdirs = new ArrayList<>();
+            try (Stream<Path> s = Files.list(dir)) {
+                s.forEach(child -> {
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        if (ignore.isIgnored(child, attrs.isDirectory())) return;
+                        if (attrs.isDirectory()) {
+                            subdirs.add(new ScanTask(root, child, ignore));
+                        } else if (attrs.isRegularFile()) {
+                            out.add(new Entry(root.relativize(child).toString(), attrs.size(), attrs.lastModifiedTime().toMillis()));
+                        }
+                    } catch (IOException ignored) {
+                    }
+                });
+            } catch (IOException | UncheckedIOException ignored) {
+            }
+            for (ScanTask t : invokeAll(subdirs)) out.addAll(t.join());
+            return out;
+        }
+    }
+}
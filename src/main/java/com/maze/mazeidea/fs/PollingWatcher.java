@@ -0,0 +1,87 @@
+package com.maze.mazeidea.fs;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Fallback watcher for filesystems that never deliver native events. Rescans the tree on an adaptive
+ * interval: it drops back to {@link #MIN_INTERVAL_MS} as soon as something changed and backs off
+ * towards {@link #MAX_INTERVAL_MS} while the tree stays idle.
+ */
+class PollingWatcher {
+    static final long MIN_INTERVAL_MS = 1_000;
+    static final long MAX_INTERVAL_MS = 15_000;
+
+    private final Path root;
+    private final ForkJoinPool pool;
+    private final ScheduledExecutorService scheduler;
+    private final Consumer<FileEvent> sink;
+    private final IgnoreRules ignore;
+    private final CompletableFuture<Void> initialScan = new CompletableFuture<>();
+    private volatile PollingSnapshot snapshot = PollingSnapshot.empty();
+    private volatile long interval = MIN_INTERVAL_MS;
+    private volatile boolean running;
+
+    PollingWatcher(Path root, ForkJoinPool pool, ScheduledExecutorService scheduler, Consumer<FileEvent> sink, IgnoreRules ignore) {
+        this.root = root;
+        this.pool = pool;
+        this.scheduler = scheduler;
+        this.sink = sink;
+        this.ignore = ignore;
+    }
+
+    /** Takes the baseline snapshot in the background; the returned future completes when it is done. */
+    CompletableFuture<Void> start() {
+        running = true;
+        pool.execute(() -> {
+            try {
+                snapshot = PollingSnapshot.scan(root, pool, ignore);
+                initialScan.complete(null);
+            } catch (Throwable t) {
+                initialScan.completeExceptionally(t);
+            }
+            scheduleNext();
+        });
+        return initialScan;
+    }
+
+    void stop() {
+        running = false;
+    }
+
+    int trackedFiles() {
+        return snapshot.size();
+    }
+
+    long currentInterval() {
+        return interval;
+    }
+
+    private void scheduleNext() {
+        if (!running) return;
+        try {
+            scheduler.schedule(() -> pool.execute(this::poll), interval, TimeUnit.MILLISECONDS);
+        } catch (Exception ignored) {
+            // scheduler shut down
+        }
+    }
+
+    private void poll() {
+        if (!running) return;
+        try {
+            PollingSnapshot next = PollingSnapshot.scan(root, pool, ignore);
+            List<FileEvent> events = snapshot.diff(next, root, System.currentTimeMillis());
+            snapshot = next;
+            for (FileEvent fe : events) sink.accept(fe);
+            interval = events.isEmpty() ? Math.min(MAX_INTERVAL_MS, interval * 3 / 2) : MIN_INTERVAL_MS;
+        } catch (Exception e) {
+            System.err.println("Polling scan failed for " + root + ": " + e.getMessage());
+        }
+        scheduleNext();
+    }
+}
@@ -0,0 +1,168 @@
+package com.maze.mazeidea.fs;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Writes editor content off the FX thread. Each save goes to a temp file next to the target, is forced to disk
+ * and then moved over the target atomically, so a crash leaves either the old or the new file, never half of
+ * one. Saves of one file run one at a time; a save requested while another is queued replaces its content, so
+ * a burst of saves writes the file at most twice. A symbolic link is saved through: the temp file is made next
+ * to the file it points to, which is what gets replaced.
+ * <p>
+ * The {@link Listener} learns the stamp the file will have before it is moved in place (so the watcher can
+ * recognise the event the move causes) and gets the saved content afterwards (so the indexer need not read the
+ * file back).
+ */
+public final class SaveService {
+    /** File name prefix of the temp files saves write; watchers drop their events. */
+    public static final String TEMP_PREFIX = ".mazeidea-save-";
+
+    public interface Listener {
+        /**
+         * {@code file} is about to be replaced by content with {@code stamp}; called on the save thread. For a
+         * symbolic link this is the file it points to.
+         */
+        void replacing(Path file, FileStamp stamp);
+
+        /** {@code file}, as it was passed to {@link #save}, now holds {@code content}; called on the save thread. */
+        void saved(Path file, String content, FileStamp stamp);
+    }
+
+    private final ExecutorService executor;
+    private final Listener listener;
+    // files with a save running or queued; an entry goes once its queue is drained
+    private final Map<Path, FileSaves> files = new ConcurrentHashMap<>();
+
+    public SaveService(ExecutorService executor, Listener listener) {
+        this.executor = executor;
+        this.listener = listener;
+    }
+
+    /**
+     * Save {@code content} to {@code file}. Completes with the stamp the file was left at, once this content or
+     * content saved after it is on disk.
+     */
+    public CompletableFuture<FileStamp> save(Path file, CharSequence content) {
+        Path target = file.toAbsolutePath().normalize();
+        while (true) {
+            FileSaves saves = files.computeIfAbsent(target, p -> new FileSaves());
+            synchronized (saves) {
+                // removed by a drain that finished meanwhile; queue on the file's new entry instead
+                if (files.get(target) != saves) continue;
+                return enqueue(target, saves, content);
+            }
+        }
+    }
+
+    // with the lock of saves held
+    private CompletableFuture<FileStamp> enqueue(Path target, FileSaves saves, CharSequence content) {
+        if (saves.next == null) saves.nextDone = new CompletableFuture<>();
+        saves.next = content;
+        CompletableFuture<FileStamp> done = saves.nextDone;
+        if (!saves.running) {
+            saves.running = true;
+            try {
+                executor.execute(() -> drain(target, saves));
+            } catch (Exception e) {
+                saves.running = false;
+                saves.next = null;
+                files.remove(target, saves);
+                done.completeExceptionally(e);
+            }
+        }
+        return done;
+    }
+
+    /** Number of files with a save running or queued. */
+    int pendingFiles() {
+        return files.size();
+    }
+
+    /** Let queued saves finish, waiting up to {@code timeoutMillis}; no saves are accepted afterwards. */
+    public void close(long timeoutMillis) {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain(Path file, FileSaves saves) {
+        while (true) {
+            CharSequence content;
+            CompletableFuture<FileStamp> done;
+            synchronized (saves) {
+                if (saves.next == null) {
+                    saves.running = false;
+                    files.remove(file, saves);
+                    return;
+                }
+                content = saves.next;
+                done = saves.nextDone;
+                saves.next = null;
+                saves.nextDone = null;
+            }
+            try {
+                done.complete(write(file, content.toString()));
+            } catch (Exception e) {
+                done.completeExceptionally(e);
+            }
+        }
+    }
+
+    private FileStamp write(Path path, String content) throws IOException {
+        // replace what a link points to, not the link
+        Path file = Files.exists(path) ? path.toRealPath() : path;
+        Path dir = file.getParent();
+        Path temp = Files.createTempFile(dir, TEMP_PREFIX + file.getFileName(), ".tmp");
+        try {
+            try (FileChannel ch = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer bytes = StandardCharsets.UTF_8.encode(CharBuffer.wrap(content));
+                while (bytes.hasRemaining()) ch.write(bytes);
+                ch.force(true);
+            }
+            // temp files are created owner-only; keep the permissions the file had
+            try {
+                if (Files.exists(file)) Files.setPosixFilePermissions(temp, Files.getPosixFilePermissions(file));
+            } catch (Exception ignored) {}
+            // a rename keeps size and mtime, so this is the stamp the target will have
+            FileStamp stamp = new FileStamp(Files.size(temp), Files.getLastModifiedTime(temp).toMillis());
+            listener.replacing(file, stamp);
+            try {
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING);
+            }
+            // make the rename itself durable; not possible on every platform
+            try (FileChannel d = FileChannel.open(dir, StandardOpenOption.READ)) {
+                d.force(true);
+            } catch (Exception ignored) {}
+            listener.saved(path, content, stamp);
+            return stamp;
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    // the save of one file in progress, and the content queued behind it
+    private static final class FileSaves {
+        CharSequence next;
+        CompletableFuture<FileStamp> nextDone;
+        boolean running;
+    }
+}
@@ -0,0 +1,11 @@
+package com.maze.mazeidea.fs;
+
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Supplies the last known stamps for files under a directory, so a rescan can tell what changed.
+ */
+public interface StampSource {
+    Map<Path, FileStamp> stampsUnder(Path dir);
+}
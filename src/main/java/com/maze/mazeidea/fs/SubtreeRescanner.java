@@ -0,0 +1,89 @@
+package com.maze.mazeidea.fs;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Rebuilds the events lost to a watch key overflow: stats every file under a directory in parallel and
+ * diffs the result against the last known stamps, producing synthetic CREATE/MODIFY/DELETE events.
+ */
+class SubtreeRescanner {
+    private final ForkJoinPool pool;
+
+    SubtreeRescanner(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * @param dir         subtree to rescan
+     * @param known       stamps of files under {@code dir} as last seen by listeners
+     * @param onDirectory called for every directory found, e.g. to (re-)register it with the watch service
+     */
+    List<FileEvent> rescan(Path dir, Map<Path, FileStamp> known, Consumer<Path> onDirectory) {
+        return rescan(dir, known, onDirectory, IgnoreRules.none());
+    }
+
+    List<FileEvent> rescan(Path dir, Map<Path, FileStamp> known, Consumer<Path> onDirectory, IgnoreRules ignore) {
+        Map<Path, FileStamp> current = pool.invoke(new ScanTask(dir, onDirectory, ignore));
+        return diff(known, current, System.currentTimeMillis());
+    }
+
+    static List<FileEvent> diff(Map<Path, FileStamp> known, Map<Path, FileStamp> current, long timestamp) {
+        List<FileEvent> events = new ArrayList<>();
+        for (Map.Entry<Path, FileStamp> e : current.entrySet()) {
+            FileStamp before = known.get(e.getKey());
+            if (before == null) events.add(new FileEvent(e.getKey(), FileEvent.EventType.CREATE, timestamp));
+            else if (!before.equals(e.getValue())) events.add(new FileEvent(e.getKey(), FileEvent.EventType.MODIFY, timestamp));
+        }
+        for (Path p : known.keySet()) {
+            if (!current.containsKey(p)) events.add(new FileEvent(p, FileEvent.EventType.DELETE, timestamp));
+        }
+        return events;
+    }
+
+    private static final class ScanTask extends RecursiveTask<Map<Path, FileStamp>> {
+        private final Path dir;
+        private final Consumer<Path> onDirectory;
+        private final IgnoreRules ignore;
+
+        ScanTask(Path dir, Consumer<Path> onDirectory, IgnoreRules ignore) {
+            this.dir = dir;
+            this.onDirectory = onDirectory;
+            this.ignore = ignore;
+        }
+
+        @Override
+        protected Map<Path, FileStamp> compute() {
+            Map<Path, FileStamp> out = new HashMap<>();
+            List<ScanTask> subdirs = new ArrayList<>();
+            if (onDirectory != null) onDirectory.accept(dir);
+            try (Stream<Path> s = Files.list(dir)) {
+                s.forEach(child -> {
+                    try {
+                        BasicFileAttributes attrs = Files.readAttributes(child, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+                        if (ignore.isIgnored(child, attrs.isDirectory())) return;
+                        if (attrs.isDirectory()) subdirs.add(new ScanTask(child, onDirectory, ignore));
+                        else if (attrs.isRegularFile()) out.put(child, new FileStamp(attrs.size(), attrs.lastModifiedTime().toMillis()));
+                    } catch (IOException ignored) {
+                        // vanished between listing and stat; treated as deleted
+                    }
+                });
+            } catch (IOException | UncheckedIOException ignored) {
+            }
+            for (ScanTask t : invokeAll(subdirs)) out.putAll(t.join());
+            return out;
+        }
+    }
+}
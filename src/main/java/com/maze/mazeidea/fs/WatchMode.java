@@ -0,0 +1,73 @@
+package com.maze.mazeidea.fs;
+
+import java.nio.file.FileStore;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.prefs.Preferences;
+
+/**
+ * How a workspace is watched. NATIVE uses the platform {@link java.nio.file.WatchService}; POLLING
+ * periodically diffs a stat snapshot, for network mounts and container filesystems where native events
+ * never arrive. AUTO picks POLLING for known remote/FUSE filesystem types and NATIVE otherwise.
+ * The mode can be chosen per workspace (stored in user preferences) or forced with
+ * {@code -Dmazeidea.watch.mode=polling|native|auto}.
+ */
+public enum WatchMode {
+    AUTO, NATIVE, POLLING;
+
+    private static final String PREF_PREFIX = "watch.mode.";
+    private static final Set<String> REMOTE_STORE_TYPES = Set.of(
+            "nfs", "nfs4", "cifs", "smbfs", "smb2", "smb3", "9p", "v9fs", "afpfs", "webdav", "davfs",
+            "sshfs", "fuse.sshfs", "fuse.rclone", "fuse.s3fs", "fuse.gcsfuse", "vboxsf", "prl_fs", "virtiofs", "fakeowner"
+    );
+
+    public static WatchMode forWorkspace(Path root) {
+        WatchMode forced = parse(System.getProperty("mazeidea.watch.mode"));
+        if (forced != null) return forced;
+        if (root == null) return AUTO;
+        WatchMode stored = parse(prefs().get(prefKey(root), null));
+        return stored != null ? stored : AUTO;
+    }
+
+    public static void setForWorkspace(Path root, WatchMode mode) {
+        if (root == null) return;
+        if (mode == null || mode == AUTO) prefs().remove(prefKey(root));
+        else prefs().put(prefKey(root), mode.name());
+    }
+
+    /** Resolve AUTO to a concrete mode for the given root. */
+    public WatchMode resolve(Path root) {
+        if (this != AUTO) return this;
+        return isRemoteFileSystem(root) ? POLLING : NATIVE;
+    }
+
+    static boolean isRemoteFileSystem(Path root) {
+        if (root == null) return false;
+        try {
+            FileStore store = Files.getFileStore(root);
+            return REMOTE_STORE_TYPES.contains(store.type().toLowerCase(Locale.ROOT));
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static WatchMode parse(String value) {
+        if (value == null || value.isBlank()) return null;
+        try {
+            return WatchMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    // preference keys are limited to 80 characters, so key on a hash of the normalized root path
+    private static String prefKey(Path root) {
+        return PREF_PREFIX + Integer.toHexString(root.toAbsolutePath().normalize().toString().hashCode());
+    }
+
+    private static Preferences prefs() {
+        return Preferences.userNodeForPackage(WatchMode.class);
+    }
+}
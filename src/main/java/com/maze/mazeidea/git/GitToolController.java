@@ -1,6 +1,7 @@
 package com.maze.mazeidea.git;
 
 import com.maze.mazeidea.WorkspaceManager;
+import com.maze.mazeidea.util.ExecutorRegistry;
 import javafx.application.Platform;
 import javafx.fxml.FXML;
 import javafx.scene.control.*;
@@ -12,7 +13,6 @@ import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 public class GitToolController {
     @FXML private Button refreshButton;
@@ -22,7 +22,8 @@ public class GitToolController {
     @FXML private Button commitButton;
     @FXML private Label commitStatus;
 
-    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> new Thread(r, "git-tool"));
+    // one git command at a time, in order
+    private final ExecutorService executor = ExecutorRegistry.shared().io("git", 1, "git-tool", 1);
 
     @FXML
     public void initialize() {
@@ -1,22 +1,39 @@
 package com.maze.mazeidea.index;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
 public class InMemoryIndexStore implements IndexStore {
     private final Map<Path, String> store = new ConcurrentHashMap<>();
+    private final AtomicLong bytes = new AtomicLong();
 
     @Override
     public void indexFile(Path path, String content) {
-        store.put(path, content);
+        bytes.addAndGet(sizeOf(content) - sizeOf(store.put(path, content)));
     }
 
     @Override
     public void remove(Path path) {
-        store.remove(path);
+        bytes.addAndGet(-sizeOf(store.remove(path)));
+    }
+
+    @Override
+    public long bytes() {
+        return bytes.get();
+    }
+
+    // two bytes a char at worst, plus the entry and string headers
+    private static long sizeOf(String content) {
+        return content == null ? 0 : 2L * content.length() + 64;
     }
 
     @Override
@@ -35,8 +52,38 @@ public class InMemoryIndexStore implements IndexStore {
         return store.containsKey(path);
     }
 
+    @Override
+    public boolean writeTo(DataOutput out, Path root) throws IOException {
+        List<Map.Entry<Path, String>> entries = new ArrayList<>();
+        for (Map.Entry<Path, String> e : store.entrySet()) {
+            if (e.getKey().startsWith(root) && e.getValue() != null) entries.add(e);
+        }
+        out.writeInt(entries.size());
+        for (Map.Entry<Path, String> e : entries) {
+            out.writeUTF(root.relativize(e.getKey()).toString());
+            // contents can exceed writeUTF's 64k limit
+            byte[] bytes = e.getValue().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean readFrom(DataInput in, Path root) throws IOException {
+        int n = in.readInt();
+        for (int i = 0; i < n; i++) {
+            Path p = root.resolve(in.readUTF());
+            byte[] bytes = new byte[in.readInt()];
+            in.readFully(bytes);
+            indexFile(p, new String(bytes, StandardCharsets.UTF_8));
+        }
+        return true;
+    }
+
     @Override
     public void close() {
         store.clear();
+        bytes.set(0);
     }
 }
@@ -1,5 +1,8 @@
 package com.maze.mazeidea.index;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.nio.file.Path;
 import java.util.List;
 
@@ -9,4 +12,13 @@ public interface IndexStore {
     List<Path> query(String q, int maxResults);
     boolean contains(Path path);
     void close();
+
+    /** Approximate heap taken by the indexed content, for workspace budgets. */
+    default long bytes() { return 0; }
+
+    /** Write the entries under {@code root}; returns false if this store cannot be persisted. */
+    default boolean writeTo(DataOutput out, Path root) throws IOException { return false; }
+
+    /** Load entries written by {@link #writeTo}, resolving them against {@code root}. */
+    default boolean readFrom(DataInput in, Path root) throws IOException { return false; }
 }
@@ -1,42 +1,82 @@
 package com.maze.mazeidea.index;
 
 import com.maze.mazeidea.cache.CacheService;
+import com.maze.mazeidea.fs.FileEvent;
+import com.maze.mazeidea.fs.FileStamp;
+import com.maze.mazeidea.fs.IgnoreRules;
+import com.maze.mazeidea.fs.StampSource;
+import com.maze.mazeidea.trace.Tracer;
+import com.maze.mazeidea.util.ExecutorRegistry;
+import com.maze.mazeidea.util.IoExecutors;
 
+import java.io.DataInput;
+import java.io.DataOutput;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Minimal indexer: delegates storage/search to an IndexStore implementation.
  */
-public class Indexer {
+public class Indexer implements StampSource {
     private final CacheService cache;
     private final IndexStore store;
-    private final ExecutorService executor = Executors.newFixedThreadPool(2, r -> new Thread(r, "indexer-worker"));
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "indexer-batcher"));
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler = ExecutorRegistry.shared().scheduled("indexer-batcher");
     private final AtomicBoolean running = new AtomicBoolean(false);
     private final ConcurrentLinkedQueue<Path> pending = new ConcurrentLinkedQueue<>();
+    // files from bulk producers; batches take watcher changes first
+    private final ConcurrentLinkedQueue<Path> bulkPending = new ConcurrentLinkedQueue<>();
+    // queued but not yet indexed
+    private final AtomicInteger backlog = new AtomicInteger();
+    // one permit per bulk file that may still be queued; producers block for them, batches give them back
+    private final Semaphore bulkPermits = new Semaphore(MAX_BACKLOG);
+    private final int threads;
+    // how many parts a batch is split into: the worker count, or the concurrency limit on virtual threads
+    private final int parallelism;
     private final Object batchLock = new Object();
     private CompletableFuture<Void> scheduledBatch;
     private final ConcurrentHashMap<Path, FileStamp> stamps = new ConcurrentHashMap<>();
+    private volatile IgnoreRules ignoreRules = IgnoreRules.none();
+    // bumped on every change to the store, so persisted snapshots can tell whether they are current
+    private final AtomicLong generation = new AtomicLong();
+    // guard the index update of a path against a concurrent one, e.g. a save racing a watcher re-read
+    private final Object[] locks = new Object[64];
 
     private static final int BATCH_MAX = 200;
     private static final long BATCH_DELAY_MS = 150;
+    static final int MAX_BACKLOG = 8192;
 
     public Indexer(CacheService cache) {
         this(cache, new InMemoryIndexStore());
     }
 
     public Indexer(CacheService cache, IndexStore store) {
+        this(cache, store, 2);
+    }
+
+    /** @param threads worker threads reading and indexing files, e.g. from a workspace budget */
+    public Indexer(CacheService cache, IndexStore store, int threads) {
         this.cache = cache;
         this.store = store;
+        this.threads = Math.max(1, threads);
+        this.parallelism = IoExecutors.virtualThreadsEnabled()
+                ? Math.max(this.threads, IoExecutors.limit("indexer", 16)) : this.threads;
+        this.executor = ExecutorRegistry.shared().io("indexer", 16, "indexer-worker", this.threads);
+        for (int i = 0; i < locks.length; i++) locks[i] = new Object();
     }
 
     public void start() {
@@ -45,20 +85,171 @@ public class Indexer {
 
     public void stop() {
         running.set(false);
+        // wake blocked producers; they see the indexer stopped and queue nothing
+        bulkPermits.release(Integer.MAX_VALUE / 2);
         executor.shutdownNow();
         scheduler.shutdownNow();
         try { store.close(); } catch (Exception ignored) {}
     }
 
+    /** Paths matching these rules are never indexed. */
+    public void setIgnoreRules(IgnoreRules rules) {
+        this.ignoreRules = rules != null ? rules : IgnoreRules.none();
+    }
+
     public CompletableFuture<Void> indexFileAsync(Path path) {
-        if (!running.get()) return CompletableFuture.completedFuture(null);
-        pending.add(path);
+        if (!running.get() || ignoreRules.isIgnored(path)) return CompletableFuture.completedFuture(null);
+        enqueue(path);
+        return scheduleBatch();
+    }
+
+    public CompletableFuture<Void> indexFilesAsync(Collection<Path> paths) {
+        if (!running.get() || paths.isEmpty()) return CompletableFuture.completedFuture(null);
+        IgnoreRules rules = ignoreRules;
+        for (Path p : paths) {
+            if (!rules.isIgnored(p)) enqueue(p);
+        }
         return scheduleBatch();
     }
 
+    /**
+     * Queue files from a bulk producer such as a workspace walk, waiting while {@link #MAX_BACKLOG} bulk files
+     * are queued so the producer cannot run arbitrarily far ahead of indexing. The wait is a managed block, so
+     * a producer on a fork/join pool (the walker) lets the pool compensate, and it parks rather than pinning a
+     * virtual thread's carrier.
+     */
+    public void submitBulk(Collection<Path> paths) throws InterruptedException {
+        IgnoreRules rules = ignoreRules;
+        List<Path> chunk = new ArrayList<>(BATCH_MAX);
+        for (Path p : paths) {
+            if (rules.isIgnored(p)) continue;
+            chunk.add(p);
+            if (chunk.size() == BATCH_MAX) {
+                queueBulk(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) queueBulk(chunk);
+    }
+
+    private void queueBulk(List<Path> chunk) throws InterruptedException {
+        if (!running.get()) return;
+        ForkJoinPool.managedBlock(new BulkPermits(chunk.size()));
+        if (!running.get()) return;
+        for (Path p : chunk) {
+            backlog.incrementAndGet();
+            bulkPending.add(p);
+        }
+        scheduleBatch();
+    }
+
+    private final class BulkPermits implements ForkJoinPool.ManagedBlocker {
+        private final int permits;
+        private boolean acquired;
+
+        BulkPermits(int permits) {
+            this.permits = permits;
+        }
+
+        @Override
+        public boolean block() throws InterruptedException {
+            if (!acquired) bulkPermits.acquire(permits);
+            acquired = true;
+            return true;
+        }
+
+        @Override
+        public boolean isReleasable() {
+            return acquired || (acquired = bulkPermits.tryAcquire(permits));
+        }
+    }
+
+    /** Files queued but not yet indexed. */
+    public int backlog() {
+        return backlog.get();
+    }
+
+    private void enqueue(Path path) {
+        backlog.incrementAndGet();
+        pending.add(path);
+    }
+
+    /**
+     * Apply a batch of watcher events: deletions are dropped from the index immediately, creations and
+     * modifications are queued for the next indexing batch.
+     */
+    public void applyEvents(List<FileEvent> events) {
+        List<Path> changed = new ArrayList<>(events.size());
+        for (FileEvent event : events) {
+            switch (event.type()) {
+                case CREATE:
+                case MODIFY:
+                    changed.add(event.path());
+                    break;
+                case DELETE:
+                    remove(event.path());
+                    break;
+                default:
+                    break;
+            }
+        }
+        indexFilesAsync(changed);
+    }
+
+    /**
+     * Index content this process just wrote to {@code path}, recording the stamp it was written at, so the file
+     * is not read back and a watcher event for the write finds nothing new.
+     */
+    public void indexSaved(Path path, String content, FileStamp stamp) {
+        if (!running.get() || ignoreRules.isIgnored(path)) return;
+        synchronized (lockFor(path)) {
+            store.indexFile(path, content);
+            cache.put(path, content);
+            stamps.put(path, stamp);
+            generation.incrementAndGet();
+        }
+    }
+
+    private Object lockFor(Path path) {
+        return locks[(path.hashCode() & 0x7fffffff) % locks.length];
+    }
+
     public void remove(Path path) {
         store.remove(path);
         cache.remove(path);
+        if (stamps.remove(path) != null) generation.incrementAndGet();
+    }
+
+    /** Approximate heap taken by the index store. */
+    public long indexBytes() {
+        return store.bytes();
+    }
+
+    public long generation() {
+        return generation.get();
+    }
+
+    /** Write the index entries under {@code root}; false if the store cannot be persisted. */
+    public boolean writeIndex(DataOutput out, Path root) throws IOException {
+        return store.writeTo(out, root);
+    }
+
+    /**
+     * Seed the index from a workspace snapshot: the stored entries plus the stamps they were indexed at, so
+     * that validation only needs to queue files that changed since.
+     */
+    public boolean restore(Path root, Map<Path, FileStamp> files, DataInput index) throws IOException {
+        if (!store.readFrom(index, root)) return false;
+        for (Map.Entry<Path, FileStamp> e : files.entrySet()) {
+            if (store.contains(e.getKey())) stamps.putIfAbsent(e.getKey(), e.getValue());
+        }
+        generation.incrementAndGet();
+        return true;
+    }
+
+    /** Stamp the file was last indexed at, or null. */
+    public FileStamp stampOf(Path path) {
+        return stamps.get(path);
     }
 
     public List<Path> queryBySubstring(String q) {
@@ -80,11 +271,29 @@ public class Indexer {
         return cache.get(path);
     }
 
+    @Override
+    public Map<Path, FileStamp> stampsUnder(Path dir) {
+        Map<Path, FileStamp> out = new HashMap<>();
+        for (Map.Entry<Path, FileStamp> e : stamps.entrySet()) {
+            if (e.getKey().startsWith(dir)) out.put(e.getKey(), e.getValue());
+        }
+        return out;
+    }
+
     private CompletableFuture<Void> scheduleBatch() {
+        return scheduleBatch(BATCH_DELAY_MS);
+    }
+
+    private CompletableFuture<Void> scheduleBatch(long delayMillis) {
         synchronized (batchLock) {
             if (scheduledBatch == null || scheduledBatch.isDone()) {
-                scheduledBatch = new CompletableFuture<>();
-                scheduler.schedule(() -> flushBatch(scheduledBatch), BATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+                CompletableFuture<Void> batch = new CompletableFuture<>();
+                scheduledBatch = batch;
+                try {
+                    scheduler.schedule(() -> flushBatch(batch), delayMillis, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException e) {
+                    batch.complete(null); // stopped
+                }
             }
             return scheduledBatch;
         }
@@ -92,58 +301,74 @@ public class Indexer {
 
     private void flushBatch(CompletableFuture<Void> batchFuture) {
         Set<Path> dedup = new LinkedHashSet<>();
+        int polled = 0, bulkPolled = 0;
         while (dedup.size() < BATCH_MAX) {
             Path p = pending.poll();
-            if (p == null) break;
+            if (p == null) {
+                p = bulkPending.poll();
+                if (p == null) break;
+                bulkPolled++;
+            }
+            polled++;
             dedup.add(p);
         }
         if (dedup.isEmpty()) {
             batchFuture.complete(null);
             return;
         }
-        CompletableFuture.runAsync(() -> {
-            for (Path p : dedup) {
-                indexFileNow(p);
+        // split the batch across the workers
+        List<Path> files = new ArrayList<>(dedup);
+        int chunk = (files.size() + parallelism - 1) / parallelism;
+        List<CompletableFuture<Void>> parts = new ArrayList<>();
+        try {
+            for (int from = 0; from < files.size(); from += chunk) {
+                List<Path> part = files.subList(from, Math.min(files.size(), from + chunk));
+                parts.add(CompletableFuture.runAsync(() -> {
+                    try (Tracer.Span ignored = Tracer.begin("index.batch", part.size() + " files")) {
+                        for (Path p : part) {
+                            indexFileNow(p);
+                        }
+                    }
+                }, executor));
             }
-        }, executor).whenComplete((r, ex) -> {
+        } catch (RejectedExecutionException e) {
+            batchFuture.complete(null); // stopped
+            return;
+        }
+        int done = polled, bulkDone = bulkPolled;
+        CompletableFuture.allOf(parts.toArray(new CompletableFuture[0])).whenComplete((r, ex) -> {
+            backlog.addAndGet(-done);
+            bulkPermits.release(bulkDone);
             if (ex != null) batchFuture.completeExceptionally(ex);
             else batchFuture.complete(null);
-            if (!pending.isEmpty()) scheduleBatch();
+            // a bulk backlog is drained back to back; trickles from the watcher still wait for more events
+            if (!pending.isEmpty() || !bulkPending.isEmpty()) scheduleBatch(backlog.get() >= BATCH_MAX ? 0 : BATCH_DELAY_MS);
         });
     }
 
     private void indexFileNow(Path path) {
         try {
             if (!Files.isRegularFile(path)) {
-                store.remove(path);
-                cache.remove(path);
-                stamps.remove(path);
+                remove(path);
                 return;
             }
             long size = Files.size(path);
             long modified = Files.getLastModifiedTime(path).toMillis();
             FileStamp previous = stamps.get(path);
-            if (previous != null && previous.size == size && previous.modified == modified && cache.get(path).isPresent()) {
+            if (previous != null && previous.sameAs(size, modified) && store.contains(path)) {
                 return;
             }
             String content = Files.readString(path, StandardCharsets.UTF_8);
-            store.indexFile(path, content);
-            cache.put(path, content);
-            stamps.put(path, new FileStamp(size, modified));
+            synchronized (lockFor(path)) {
+                // a save recorded while the file was being read is newer than what was read
+                if (stamps.get(path) != previous) return;
+                store.indexFile(path, content);
+                cache.put(path, content);
+                stamps.put(path, new FileStamp(size, modified));
+                generation.incrementAndGet();
+            }
         } catch (IOException e) {
-            store.remove(path);
-            cache.remove(path);
-            stamps.remove(path);
-        }
-    }
-
-    private static final class FileStamp {
-        private final long size;
-        private final long modified;
-
-        private FileStamp(long size, long modified) {
-            this.size = size;
-            this.modified = modified;
+            remove(path);
         }
     }
 }
@@ -1,5 +1,7 @@
 package com.maze.mazeidea.lsp;
 
+import com.maze.mazeidea.util.Debouncer;
+import com.maze.mazeidea.util.ExecutorRegistry;
 import org.eclipse.lsp4j.*;
 import org.eclipse.lsp4j.services.LanguageClient;
 import org.eclipse.lsp4j.services.LanguageServer;
@@ -13,11 +15,10 @@ import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.URI;
 import java.nio.charset.StandardCharsets;
-import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -36,10 +37,15 @@ public class LspService {
     private final Map<Path, Process> workspaceProcesses = new ConcurrentHashMap<>();
     private final Map<Path, LanguageServer> workspaceServers = new ConcurrentHashMap<>();
     private final Map<String, Integer> docVersions = new ConcurrentHashMap<>();
-    private final ExecutorService executor = Executors.newCachedThreadPool();
+    // how each server wants didChange, from its InitializeResult; Full until it has answered
+    private final Map<Path, TextDocumentSyncKind> syncKinds = new ConcurrentHashMap<>();
+    private final ExecutorService executor = ExecutorRegistry.shared().io("lsp", 64, "lsp", 0);
+    // symbols of an edited file are re-read once its edits pause (at least every SYMBOL_MAX_WAIT_MS), not per flush
+    private final Debouncer symbolUpdates = new Debouncer(executor);
     private final Map<String, Set<String>> fileSymbols = new ConcurrentHashMap<>();
     private final Map<Path, ConcurrentHashMap<String, Integer>> workspaceSymbolCounts = new ConcurrentHashMap<>();
 
+    private static final long SYMBOL_DELAY_MS = 2000, SYMBOL_MAX_WAIT_MS = 10000;
     private static final Pattern SYMBOL_PATTERN = Pattern.compile("\\b[A-Za-z_][A-Za-z0-9_]*\\b");
     private static final String[] FALLBACK_KEYWORDS = new String[]{"public","private","protected","class","void","int","String","new","return","if","else","for","while","switch","case"};
 
@@ -75,6 +81,7 @@ public class LspService {
             res.orTimeout(5, TimeUnit.SECONDS).whenComplete((r, ex) -> {
                 if (ex != null) System.err.println("LSP init failed: " + ex.getMessage());
                 else {
+                    syncKinds.put(workspace, syncKind(r));
                     try {
                         server.initialized(new InitializedParams());
                     } catch (Exception ignored) {}
@@ -96,6 +103,7 @@ public class LspService {
         Process p = workspaceProcesses.remove(workspace);
         if (p != null) p.destroy();
         workspaceSymbolCounts.remove(workspace);
+        syncKinds.remove(workspace);
     }
 
     public void shutdown() {
@@ -103,6 +111,7 @@ public class LspService {
         for (Process p : workspaceProcesses.values()) { try { p.destroy(); } catch (Exception ignored) {} }
         workspaceProcesses.clear();
         workspaceServers.clear();
+        symbolUpdates.shutdown();
         executor.shutdownNow();
     }
 
@@ -131,36 +140,154 @@ public class LspService {
         server.getTextDocumentService().didChange(params);
     }
 
-    public String[] complete(Path file, int offset, String prefix) {
-        String text = null;
-        try { text = Files.readString(file); } catch (Exception ignored) {}
-        return complete(file, offset, prefix, text);
+    /**
+     * Send the edits collected in {@code pending} since the last call as one didChange: as ranged changes if
+     * the server syncs incrementally, otherwise as the full text. The text is only copied out of the snapshot
+     * when it is sent whole; the file's symbols are re-read later, once edits pause.
+     */
+    public void didChange(Path file, PendingChanges pending) {
+        // drain and send as one step, so a flush racing another can't reach the server ahead of it
+        synchronized (pending) {
+            sendChanges(file, pending.drain());
+        }
     }
 
-    public String[] complete(Path file, int offset, String prefix, String text) {
+    private void sendChanges(Path file, PendingChanges.Batch batch) {
+        if (batch == null) return;
         Path workspace = workspaceForFile(file);
         LanguageServer server = workspace != null ? workspaceServers.get(workspace) : null;
-        if (server == null) {
-            return fallbackCompletions(workspace, prefix);
+        CharSequence text = batch.text;
+        symbolUpdates.debounce(file, () -> updateSymbols(workspace, file, text.toString()), SYMBOL_DELAY_MS, SYMBOL_MAX_WAIT_MS);
+        if (server == null) return;
+        TextDocumentSyncKind kind = syncKinds.getOrDefault(workspace, TextDocumentSyncKind.Full);
+        if (kind == TextDocumentSyncKind.None) return;
+        List<TextDocumentContentChangeEvent> changes = kind == TextDocumentSyncKind.Incremental && batch.changes != null
+                ? batch.changes : List.of(new TextDocumentContentChangeEvent(text.toString()));
+        String uri = file.toUri().toString();
+        int ver = docVersions.getOrDefault(uri, 1) + 1;
+        docVersions.put(uri, ver);
+        server.getTextDocumentService().didChange(new DidChangeTextDocumentParams(new VersionedTextDocumentIdentifier(uri, ver), changes));
+    }
+
+    static TextDocumentSyncKind syncKind(InitializeResult result) {
+        ServerCapabilities caps = result != null ? result.getCapabilities() : null;
+        Either<TextDocumentSyncKind, TextDocumentSyncOptions> sync = caps != null ? caps.getTextDocumentSync() : null;
+        if (sync == null) return TextDocumentSyncKind.Full;
+        TextDocumentSyncKind kind = sync.isLeft() ? sync.getLeft() : sync.getRight().getChange();
+        return kind != null ? kind : TextDocumentSyncKind.None;
+    }
+
+    /**
+     * Edits to one open document that have not been sent yet, recorded as they happen (on the UI thread) and
+     * drained by {@link #didChange(Path, PendingChanges)}. Each edit is kept as a ranged change against the text
+     * as it was just before; consecutive typing on a line is merged into one change. Past
+     * {@link #MAX_CHANGES} the ranges are dropped and the batch goes out as full text.
+     */
+    public static final class PendingChanges {
+        static final int MAX_CHANGES = 500;
+
+        private List<TextDocumentContentChangeEvent> changes = new ArrayList<>();
+        private boolean overflowed;
+        private CharSequence text;
+
+        /**
+         * {@code removed} was replaced by {@code inserted} at {@code line}:{@code character}, leaving
+         * {@code textAfter} (an immutable snapshot).
+         */
+        public synchronized void add(int line, int character, String removed, String inserted, CharSequence textAfter) {
+            text = textAfter;
+            if (overflowed) return;
+            int endLine = line;
+            int endCharacter = character + removed.length();
+            int lastBreak = removed.lastIndexOf('\n');
+            if (lastBreak >= 0) {
+                for (int i = 0; i <= lastBreak; i++) if (removed.charAt(i) == '\n') endLine++;
+                endCharacter = removed.length() - lastBreak - 1;
+            }
+            TextDocumentContentChangeEvent last = changes.isEmpty() ? null : changes.get(changes.size() - 1);
+            if (removed.isEmpty() && last != null && continues(last, line, character)) {
+                last.setText(last.getText() + inserted);
+                return;
+            }
+            changes.add(new TextDocumentContentChangeEvent(
+                    new Range(new Position(line, character), new Position(endLine, endCharacter)), inserted));
+            if (changes.size() > MAX_CHANGES) {
+                overflowed = true;
+                changes = new ArrayList<>();
+            }
+        }
+
+        // an insertion at line:character directly continues `last`, a single-line insertion
+        private static boolean continues(TextDocumentContentChangeEvent last, int line, int character) {
+            Range r = last.getRange();
+            return r.getStart().equals(r.getEnd()) && last.getText().indexOf('\n') < 0
+                    && r.getStart().getLine() == line && r.getStart().getCharacter() + last.getText().length() == character;
         }
+
+        synchronized Batch drain() {
+            if (text == null) return null;
+            Batch batch = new Batch(overflowed ? null : changes, text);
+            changes = new ArrayList<>();
+            overflowed = false;
+            text = null;
+            return batch;
+        }
+
+        static final class Batch {
+            // null if only the full text can be sent
+            final List<TextDocumentContentChangeEvent> changes;
+            final CharSequence text;
+
+            Batch(List<TextDocumentContentChangeEvent> changes, CharSequence text) {
+                this.changes = changes;
+                this.text = text;
+            }
+        }
+    }
+
+    /**
+     * Completion labels from the language server for {@code offset} in {@code text}, without blocking: an empty
+     * list if there is no server or it fails or times out. Edits still batched in {@code pending} are sent
+     * first, so the server completes against the same text. Cancelling the returned future cancels the request
+     * at the server, e.g. when the user has typed on.
+     */
+    public CompletableFuture<List<String>> completeAsync(Path file, PendingChanges pending, int offset, CharSequence text) {
+        Path workspace = workspaceForFile(file);
+        LanguageServer server = workspace != null ? workspaceServers.get(workspace) : null;
+        if (server == null) return CompletableFuture.completedFuture(List.of());
+        CompletableFuture<List<String>> result = new CompletableFuture<>();
         try {
-            String uri = file.toUri().toString();
-            String content = text != null ? text : Files.readString(file);
-            Position pos = positionFromOffset(content, offset);
-            TextDocumentIdentifier tid = new TextDocumentIdentifier(uri);
-            CompletionParams cp = new CompletionParams(tid, pos);
-            CompletableFuture<Either<List<CompletionItem>, CompletionList>> fut = server.getTextDocumentService().completion(cp);
-            Either<List<CompletionItem>, CompletionList> res = fut.get(2, TimeUnit.SECONDS);
-            List<CompletionItem> items = res.isLeft() ? res.getLeft() : res.getRight().getItems();
-            String[] lspItems = items.stream().map(CompletionItem::getLabel).filter(s -> prefix == null || s.startsWith(prefix)).toArray(String[]::new);
-            return mergeCompletions(lspItems, fallbackCompletions(workspace, prefix));
-        } catch (Exception e) {
-            System.err.println("Completion error: " + e.getMessage());
-            return fallbackCompletions(workspace, prefix);
+            executor.execute(() -> {
+                if (result.isDone()) return;
+                if (pending != null) didChange(file, pending);
+                CompletionParams cp = new CompletionParams(new TextDocumentIdentifier(file.toUri().toString()),
+                        positionFromOffset(text, offset));
+                CompletableFuture<Either<List<CompletionItem>, CompletionList>> request =
+                        server.getTextDocumentService().completion(cp);
+                result.whenComplete((r, ex) -> { if (result.isCancelled()) request.cancel(true); });
+                request.orTimeout(5, TimeUnit.SECONDS).whenComplete((res, ex) -> {
+                    if (ex != null || res == null) {
+                        result.complete(List.of());
+                        return;
+                    }
+                    List<CompletionItem> items = res.isLeft() ? res.getLeft() : res.getRight().getItems();
+                    List<String> labels = new ArrayList<>(items.size());
+                    for (CompletionItem item : items) labels.add(item.getLabel());
+                    result.complete(labels);
+                });
+            });
+        } catch (RejectedExecutionException e) {
+            result.complete(List.of());
         }
+        return result;
+    }
+
+    /** Completions known without asking the server: keywords and the workspace's symbols starting with {@code prefix}. */
+    public String[] localCompletions(Path file, String prefix) {
+        return fallbackCompletions(workspaceForFile(file), prefix);
     }
 
-    private Position positionFromOffset(String text, int offset) {
+    private Position positionFromOffset(CharSequence text, int offset) {
         int line = 0, col = 0, i = 0;
         while (i < offset && i < text.length()) {
             char c = text.charAt(i);
@@ -235,13 +362,6 @@ public class LspService {
         return out.toArray(new String[0]);
     }
 
-    private String[] mergeCompletions(String[] primary, String[] fallback) {
-        LinkedHashSet<String> out = new LinkedHashSet<>();
-        if (primary != null) out.addAll(Arrays.asList(primary));
-        if (fallback != null) out.addAll(Arrays.asList(fallback));
-        return out.toArray(new String[0]);
-    }
-
     private static class LanguageClientImpl implements LanguageClient {
         private final Path workspace;
         public LanguageClientImpl(Path workspace) { this.workspace = workspace; }
@@ -0,0 +1,104 @@
+package com.maze.mazeidea.project;
+
+import javafx.application.Platform;
+import javafx.scene.control.TreeItem;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Project tree node backed by a {@link ProjectTreeModel}. A directory's children are listed in the background
+ * on first expansion, their items built off the FX thread and set in one batch; later changes from the watcher
+ * reuse the existing items, so expanded subfolders stay expanded.
+ */
+public final class ProjectTreeItem extends TreeItem<Path> {
+    private final ProjectTreeModel model;
+    private final boolean directory;
+    // shown first, ahead of (and instead of) the same paths in the listing
+    private final List<ProjectTreeItem> pinned = new ArrayList<>();
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private boolean requested;
+
+    public ProjectTreeItem(ProjectTreeModel model, Path path, boolean directory) {
+        super(path);
+        this.model = model;
+        this.directory = directory;
+        if (directory) expandedProperty().addListener((obs, was, now) -> {
+            if (now) {
+                load();
+            } else if (requested && !model.isWatched(getValue())) {
+                // nothing keeps this listing current; read it again on the next expansion
+                model.forget(getValue());
+                requested = false;
+            }
+        });
+    }
+
+    public boolean isDirectory() {
+        return directory;
+    }
+
+    @Override
+    public boolean isLeaf() {
+        return !directory;
+    }
+
+    /** Show {@code item} first among the children, e.g. a module or source root of the project. */
+    public void pin(ProjectTreeItem item) {
+        pinned.add(item);
+        List<ProjectTreeModel.Entry> listed = model.cached(getValue());
+        if (loaded.isDone() && listed != null) update(listed, childrenByPath());
+        else getChildren().add(pinned.size() - 1, item);
+    }
+
+    /** Completes on the FX thread once the children have been listed. */
+    public CompletableFuture<Void> loaded() {
+        return loaded;
+    }
+
+    private void load() {
+        if (requested) return;
+        requested = true;
+        model.watch(getValue(), entries -> Platform.runLater(() -> update(entries, childrenByPath())));
+        model.list(getValue()).thenAccept(entries -> {
+            // building thousands of items is left off the FX thread; only the batch swap happens there
+            Map<Path, TreeItem<Path>> built = new HashMap<>();
+            for (ProjectTreeModel.Entry e : entries) built.put(e.path, new ProjectTreeItem(model, e.path, e.directory));
+            Platform.runLater(() -> {
+                // the watcher may have changed the listing since
+                List<ProjectTreeModel.Entry> latest = model.cached(getValue());
+                built.putAll(childrenByPath());
+                update(latest != null ? latest : entries, built);
+                loaded.complete(null);
+            });
+        });
+    }
+
+    private Map<Path, TreeItem<Path>> childrenByPath() {
+        Map<Path, TreeItem<Path>> out = new HashMap<>();
+        for (TreeItem<Path> child : getChildren()) out.put(child.getValue(), child);
+        return out;
+    }
+
+    private void update(List<ProjectTreeModel.Entry> entries, Map<Path, TreeItem<Path>> reuse) {
+        List<TreeItem<Path>> children = new ArrayList<>(pinned.size() + entries.size());
+        Set<Path> pinnedPaths = new HashSet<>();
+        for (ProjectTreeItem p : pinned) {
+            children.add(p);
+            pinnedPaths.add(p.getValue());
+        }
+        for (ProjectTreeModel.Entry e : entries) {
+            if (pinnedPaths.contains(e.path)) continue;
+            TreeItem<Path> old = reuse.get(e.path);
+            boolean reusable = old instanceof ProjectTreeItem && ((ProjectTreeItem) old).directory == e.directory;
+            children.add(reusable ? old : new ProjectTreeItem(model, e.path, e.directory));
+        }
+        getChildren().setAll(children);
+    }
+}
@@ -0,0 +1,188 @@
+package com.maze.mazeidea.project;
+
+import com.maze.mazeidea.fs.FileEvent;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * Directory listings behind the project tree. A directory is listed and sorted on the executor the first time
+ * it is asked for, then kept; file watcher events add and remove entries of kept listings instead of listing
+ * the directory again. Directories the watcher does not cover (ignored ones such as {@code node_modules}) get
+ * no events, so their listings are {@link #forget forgotten} when they collapse and read again on expand.
+ * Each entry says whether it is a directory, so the tree never has to ask the file system while rendering.
+ */
+public final class ProjectTreeModel {
+    /** Directories first, then by name ignoring case. */
+    static final Comparator<Entry> ORDER = Comparator.comparing((Entry e) -> !e.directory)
+            .thenComparing(e -> e.name, String.CASE_INSENSITIVE_ORDER)
+            .thenComparing(e -> e.name);
+
+    /** A listed file or directory. */
+    public static final class Entry {
+        public final Path path;
+        public final boolean directory;
+        final String name;
+
+        Entry(Path path, boolean directory) {
+            this.path = path;
+            this.directory = directory;
+            Path fn = path.getFileName();
+            this.name = fn != null ? fn.toString() : path.toString();
+        }
+    }
+
+    private final ExecutorService executor;
+    private final Predicate<Path> watched;
+    private final Object lock = new Object();
+    // sorted, unmodifiable listings, by normalized directory
+    private final Map<Path, List<Entry>> listings = new HashMap<>();
+    private final Map<Path, CompletableFuture<List<Entry>>> inFlight = new HashMap<>();
+    // directories that changed while they were being listed; listed again before the result is kept
+    private final Set<Path> stale = new HashSet<>();
+    private final Map<Path, Consumer<List<Entry>>> watchers = new HashMap<>();
+
+    /** @param watched whether watcher events arrive for a directory */
+    public ProjectTreeModel(ExecutorService executor, Predicate<Path> watched) {
+        this.executor = executor;
+        this.watched = watched;
+    }
+
+    public boolean isWatched(Path dir) {
+        return watched.test(dir.toAbsolutePath().normalize());
+    }
+
+    /** Drop the kept listing of {@code dir}, so the next {@link #list} reads it again. */
+    public void forget(Path dir) {
+        synchronized (lock) {
+            listings.remove(dir.toAbsolutePath().normalize());
+        }
+    }
+
+    /** The entries of {@code dir}, from the cache or listed in the background; empty if it can't be read. */
+    public CompletableFuture<List<Entry>> list(Path dir) {
+        Path key = dir.toAbsolutePath().normalize();
+        synchronized (lock) {
+            List<Entry> cached = listings.get(key);
+            if (cached != null) return CompletableFuture.completedFuture(cached);
+            CompletableFuture<List<Entry>> pending = inFlight.get(key);
+            if (pending != null) return pending;
+            CompletableFuture<List<Entry>> result = new CompletableFuture<>();
+            inFlight.put(key, result);
+            submit(key, result);
+            return result;
+        }
+    }
+
+    /** The kept listing of {@code dir}, or null if it has not been listed yet. */
+    public List<Entry> cached(Path dir) {
+        synchronized (lock) {
+            return listings.get(dir.toAbsolutePath().normalize());
+        }
+    }
+
+    /** Call {@code listener} with the new listing whenever events change {@code dir}; on the caller of {@link #applyEvents}. */
+    public void watch(Path dir, Consumer<List<Entry>> listener) {
+        synchronized (lock) {
+            watchers.put(dir.toAbsolutePath().normalize(), listener);
+        }
+    }
+
+    /** Update kept listings from a batch of watcher events. */
+    public void applyEvents(List<FileEvent> events) {
+        Map<Path, List<Entry>> changed = new LinkedHashMap<>();
+        for (FileEvent event : events) {
+            Path path = event.path().toAbsolutePath().normalize();
+            Path dir = path.getParent();
+            if (dir == null || event.type() == FileEvent.EventType.MODIFY) continue;
+            // stat outside the lock; only creations need it
+            boolean directory = event.type() == FileEvent.EventType.CREATE && Files.isDirectory(path);
+            synchronized (lock) {
+                if (inFlight.containsKey(dir)) stale.add(dir);
+                if (event.type() == FileEvent.EventType.DELETE) forgetUnder(path);
+                List<Entry> entries = changed.get(dir);
+                if (entries == null) {
+                    List<Entry> kept = listings.get(dir);
+                    if (kept == null) continue;
+                    entries = new ArrayList<>(kept);
+                    changed.put(dir, entries);
+                }
+                entries.removeIf(e -> e.path.equals(path));
+                if (event.type() == FileEvent.EventType.CREATE && Files.exists(path)) entries.add(new Entry(path, directory));
+            }
+        }
+        List<Runnable> notify = new ArrayList<>();
+        synchronized (lock) {
+            for (Map.Entry<Path, List<Entry>> e : changed.entrySet()) {
+                if (!listings.containsKey(e.getKey())) continue;
+                e.getValue().sort(ORDER);
+                List<Entry> entries = Collections.unmodifiableList(e.getValue());
+                listings.put(e.getKey(), entries);
+                Consumer<List<Entry>> watcher = watchers.get(e.getKey());
+                if (watcher != null) notify.add(() -> watcher.accept(entries));
+            }
+        }
+        for (Runnable r : notify) {
+            try { r.run(); } catch (Exception ignored) {}
+        }
+    }
+
+    // a deleted path takes the kept listings of everything under it along
+    private void forgetUnder(Path path) {
+        listings.keySet().removeIf(p -> p.startsWith(path));
+        watchers.keySet().removeIf(p -> p.startsWith(path));
+    }
+
+    private void submit(Path dir, CompletableFuture<List<Entry>> result) {
+        try {
+            executor.execute(() -> {
+                List<Entry> entries = read(dir);
+                synchronized (lock) {
+                    if (stale.remove(dir)) {
+                        submit(dir, result);
+                        return;
+                    }
+                    inFlight.remove(dir);
+                    listings.put(dir, entries);
+                }
+                result.complete(entries);
+            });
+        } catch (Exception e) {
+            synchronized (lock) {
+                inFlight.remove(dir);
+            }
+            result.complete(List.of());
+        }
+    }
+
+    static List<Entry> read(Path dir) {
+        List<Entry> entries = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir)) {
+            for (Path p : stream) {
+                boolean directory = false;
+                try {
+                    directory = Files.readAttributes(p, BasicFileAttributes.class).isDirectory();
+                } catch (IOException ignored) {}
+                entries.add(new Entry(p, directory));
+            }
+        } catch (IOException | RuntimeException ignored) {}
+        entries.sort(ORDER);
+        return Collections.unmodifiableList(entries);
+    }
+}
@@ -0,0 +1,25 @@
+package com.maze.mazeidea.trace;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR view of a {@link Tracer} span; recorded whenever a flight recording with this event enabled is running.
+ */
+@Name("com.maze.mazeidea.Phase")
+@Label("IDE Phase")
+@Category({"Maze IDE", "Tracing"})
+@Description("A traced startup or background phase")
+class PhaseEvent extends Event {
+    @Label("Name")
+    String name;
+
+    @Label("Detail")
+    String detail;
+
+    @Label("Depth")
+    int depth;
+}
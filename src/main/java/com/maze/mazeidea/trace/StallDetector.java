@@ -0,0 +1,220 @@
+package com.maze.mazeidea.trace;
+
+import com.maze.mazeidea.util.ExecutorRegistry;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+/**
+ * Watchdog for the UI thread. A heartbeat task is posted to the UI thread every {@link #HEARTBEAT_MS};
+ * while one stays unanswered for longer than the threshold, the UI thread's stack is sampled. When the
+ * thread catches up, the stall (start, duration and the distinct stacks seen) goes into a ring buffer that
+ * can be viewed in the IDE or written to disk.
+ * <p>
+ * The threshold is {@code -Dmazeidea.stall.thresholdMs} (default 200, 0 disables the detector);
+ * {@code -Dmazeidea.stall.dump=<file>} writes the buffer there when the JVM exits.
+ */
+public final class StallDetector {
+    public static final String THRESHOLD_PROPERTY = "mazeidea.stall.thresholdMs";
+    public static final String DUMP_PROPERTY = "mazeidea.stall.dump";
+    static final long HEARTBEAT_MS = 50;
+    private static final int MAX_SAMPLES = 40;
+    private static final int MAX_FRAMES = 40;
+
+    private static volatile StallDetector installed;
+
+    private final Thread uiThread;
+    private final Consumer<Runnable> post;
+    private final long thresholdNanos;
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> heartbeat;
+    // ring buffer of finished stalls, guarded by this
+    private final Stall[] stalls;
+    private int next;
+    private int size;
+    private long total;
+
+    // nanoTime the outstanding heartbeat was posted at, 0 if none is outstanding
+    private final AtomicLong pingSent = new AtomicLong();
+    private volatile long pingLatency;
+    // only touched from the watchdog thread
+    private long stallSent;
+    private List<StackTraceElement[]> samples;
+
+    public StallDetector(Thread uiThread, Consumer<Runnable> post, long thresholdMillis, int capacity) {
+        this.uiThread = uiThread;
+        this.post = post;
+        this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+        this.stalls = new Stall[Math.max(1, capacity)];
+        this.scheduler = ExecutorRegistry.shared().scheduled("ui-watchdog");
+    }
+
+    /**
+     * Watch the calling thread (the FX application thread), posting heartbeats with {@code post}
+     * (Platform::runLater). Returns null if the detector is disabled.
+     */
+    public static synchronized StallDetector installOnCurrentThread(Consumer<Runnable> post) {
+        long threshold = Long.getLong(THRESHOLD_PROPERTY, 200);
+        if (installed != null || threshold <= 0) return installed;
+        StallDetector detector = new StallDetector(Thread.currentThread(), post, threshold, 64);
+        detector.start();
+        String dump = System.getProperty(DUMP_PROPERTY);
+        if (dump != null && !dump.isBlank()) {
+            Path out = Paths.get(dump);
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    detector.dump(out);
+                } catch (IOException e) {
+                    System.err.println("Failed to write UI stalls to " + out + ": " + e.getMessage());
+                }
+            }, "stall-export"));
+        }
+        installed = detector;
+        return detector;
+    }
+
+    /** The detector watching the FX thread, or null if none was installed. */
+    public static StallDetector get() {
+        return installed;
+    }
+
+    public synchronized void start() {
+        if (heartbeat != null) return;
+        heartbeat = scheduler.scheduleAtFixedRate(this::tick, HEARTBEAT_MS, HEARTBEAT_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized void stop() {
+        if (heartbeat != null) heartbeat.cancel(false);
+        scheduler.shutdownNow();
+    }
+
+    private void tick() {
+        long now = System.nanoTime();
+        long sent = pingSent.get();
+        if (sent != 0) {
+            if (now - sent >= thresholdNanos) sample(sent);
+            return;
+        }
+        if (samples != null) finish();
+        pingSent.set(now);
+        post.accept(() -> {
+            pingLatency = System.nanoTime() - now;
+            pingSent.compareAndSet(now, 0);
+        });
+    }
+
+    private void sample(long sent) {
+        if (samples == null) {
+            samples = new ArrayList<>();
+            stallSent = sent;
+        }
+        if (samples.size() < MAX_SAMPLES) samples.add(uiThread.getStackTrace());
+    }
+
+    private void finish() {
+        long durationMillis = TimeUnit.NANOSECONDS.toMillis(pingLatency);
+        long startMillis = System.currentTimeMillis() - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - stallSent);
+        record(new Stall(startMillis, durationMillis, samples));
+        samples = null;
+        Tracer.instant("ui.stall");
+    }
+
+    private synchronized void record(Stall stall) {
+        stalls[next] = stall;
+        next = (next + 1) % stalls.length;
+        size = Math.min(size + 1, stalls.length);
+        total++;
+    }
+
+    /** Recorded stalls, newest first. */
+    public synchronized List<Stall> stalls() {
+        List<Stall> out = new ArrayList<>(size);
+        for (int i = 1; i <= size; i++) out.add(stalls[(next - i + stalls.length) % stalls.length]);
+        return out;
+    }
+
+    /** Stalls seen since start, including those that fell out of the buffer. */
+    public synchronized long totalStalls() {
+        return total;
+    }
+
+    public synchronized void clear() {
+        Arrays.fill(stalls, null);
+        next = 0;
+        size = 0;
+    }
+
+    public long thresholdMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+    }
+
+    public String report() {
+        List<Stall> recorded = stalls();
+        StringBuilder sb = new StringBuilder();
+        sb.append(totalStalls()).append(" UI stalls over ").append(thresholdMillis()).append(" ms");
+        if (recorded.size() < totalStalls()) sb.append(", latest ").append(recorded.size()).append(" kept");
+        sb.append(System.lineSeparator()).append(System.lineSeparator());
+        for (Stall s : recorded) sb.append(s.format()).append(System.lineSeparator());
+        return sb.toString();
+    }
+
+    public void dump(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Files.writeString(file, report(), StandardCharsets.UTF_8);
+    }
+
+    /** One stall: when it started, how long the UI thread was blocked and the stacks sampled meanwhile. */
+    public static final class Stall {
+        private final long startMillis;
+        private final long durationMillis;
+        private final List<StackTraceElement[]> samples;
+
+        Stall(long startMillis, long durationMillis, List<StackTraceElement[]> samples) {
+            this.startMillis = startMillis;
+            this.durationMillis = durationMillis;
+            this.samples = samples;
+        }
+
+        public long startMillis() { return startMillis; }
+        public long durationMillis() { return durationMillis; }
+        public List<StackTraceElement[]> samples() { return samples; }
+
+        /** Distinct sampled stacks, most frequent first; the top frames show where the thread was stuck. */
+        public String format() {
+            Map<String, Integer> counts = new LinkedHashMap<>();
+            for (StackTraceElement[] stack : samples) counts.merge(formatStack(stack), 1, Integer::sum);
+            StringBuilder sb = new StringBuilder();
+            sb.append(Instant.ofEpochMilli(startMillis)).append("  blocked for ").append(durationMillis)
+                    .append(" ms, ").append(samples.size()).append(" samples").append(System.lineSeparator());
+            counts.entrySet().stream()
+                    .sorted((a, b) -> Integer.compare(b.getValue(), a.getValue()))
+                    .forEach(e -> sb.append("  ").append(e.getValue()).append("x").append(System.lineSeparator())
+                            .append(e.getKey()));
+            return sb.toString();
+        }
+
+        private static String formatStack(StackTraceElement[] stack) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < Math.min(stack.length, MAX_FRAMES); i++) {
+                sb.append("    at ").append(stack[i]).append(System.lineSeparator());
+            }
+            if (stack.length > MAX_FRAMES) sb.append("    ...").append(System.lineSeparator());
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.maze.mazeidea.trace;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Lightweight phase tracer for startup and other hot paths. Spans nest per thread and are timed with
+ * {@link System#nanoTime()}; each span is also emitted as a {@link PhaseEvent} for JFR recordings.
+ * <p>
+ * Disabled unless {@code -Dmazeidea.trace} is set, in which case {@link #begin} costs a couple of field
+ * writes. When the property names a file, completed spans are written there as Chrome trace-event JSON
+ * (load it in chrome://tracing or Perfetto) when the JVM exits; {@code -Dmazeidea.trace=jfr} only emits
+ * JFR events.
+ */
+public final class Tracer {
+    public static final String PROPERTY = "mazeidea.trace";
+    static final int MAX_SPANS = 200_000;
+
+    private static final long ORIGIN = System.nanoTime();
+    private static final Span NOOP = new Span(null, null, 0);
+    private static final ThreadLocal<Deque<Span>> STACK = ThreadLocal.withInitial(ArrayDeque::new);
+    private static final ConcurrentLinkedQueue<Span> finished = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger count = new AtomicInteger();
+    private static final AtomicInteger dropped = new AtomicInteger();
+    private static volatile boolean enabled;
+
+    static {
+        String target = System.getProperty(PROPERTY);
+        if (target != null && !target.isBlank()) {
+            enabled = true;
+            if (!"jfr".equalsIgnoreCase(target)) {
+                Path out = Paths.get(target);
+                Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                    try {
+                        writeChromeTrace(out);
+                    } catch (IOException e) {
+                        System.err.println("Failed to write trace to " + out + ": " + e.getMessage());
+                    }
+                }, "trace-export"));
+            }
+        }
+    }
+
+    private Tracer() {}
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /** Open a span on the current thread; close it (try-with-resources) on the same thread. */
+    public static Span begin(String name) {
+        return begin(name, null);
+    }
+
+    public static Span begin(String name, String detail) {
+        if (!enabled) return NOOP;
+        Deque<Span> stack = STACK.get();
+        Span span = new Span(name, detail, stack.size());
+        stack.push(span);
+        return span;
+    }
+
+    /** A zero-length marker, e.g. "window shown". */
+    public static void instant(String name) {
+        if (!enabled) return;
+        Span span = new Span(name, null, STACK.get().size());
+        span.instant = true;
+        span.end = span.start;
+        record(span);
+    }
+
+    /** Completed spans in completion order. */
+    public static List<Span> spans() {
+        return new ArrayList<>(finished);
+    }
+
+    public static int droppedSpans() {
+        return dropped.get();
+    }
+
+    public static void reset() {
+        finished.clear();
+        count.set(0);
+        dropped.set(0);
+        STACK.get().clear();
+    }
+
+    public static void writeChromeTrace(Path file) throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        try (Writer w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writeChromeTrace(w);
+        }
+    }
+
+    /** Chrome trace-event format: complete ("X") events in microseconds plus thread-name metadata. */
+    public static void writeChromeTrace(Writer w) throws IOException {
+        List<Span> spans = spans();
+        Map<Long, String> threads = new HashMap<>();
+        w.write("{\"displayTimeUnit\":\"ms\",\"traceEvents\":[");
+        boolean first = true;
+        for (Span s : spans) {
+            threads.putIfAbsent(s.threadId, s.threadName);
+            if (!first) w.write(',');
+            first = false;
+            w.write("\n{\"name\":");
+            writeString(w, s.name);
+            w.write(",\"cat\":\"maze\"");
+            if (s.instant) {
+                w.write(",\"ph\":\"i\",\"s\":\"t\",\"ts\":" + micros(s.start - ORIGIN));
+            } else {
+                w.write(",\"ph\":\"X\",\"ts\":" + micros(s.start - ORIGIN) + ",\"dur\":" + micros(s.end - s.start));
+            }
+            w.write(",\"pid\":1,\"tid\":" + s.threadId);
+            w.write(",\"args\":{\"depth\":" + s.depth);
+            if (s.detail != null) {
+                w.write(",\"detail\":");
+                writeString(w, s.detail);
+            }
+            w.write("}}");
+        }
+        for (Map.Entry<Long, String> t : threads.entrySet()) {
+            if (!first) w.write(',');
+            first = false;
+            w.write("\n{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":1,\"tid\":" + t.getKey() + ",\"args\":{\"name\":");
+            writeString(w, t.getValue());
+            w.write("}}");
+        }
+        w.write("\n]}\n");
+    }
+
+    private static String micros(long nanos) {
+        return String.format(java.util.Locale.ROOT, "%.3f", nanos / 1000.0);
+    }
+
+    private static void writeString(Writer w, String s) throws IOException {
+        w.write('"');
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                w.write('\\');
+                w.write(c);
+            } else if (c < 0x20) {
+                w.write(String.format("\\u%04x", (int) c));
+            } else {
+                w.write(c);
+            }
+        }
+        w.write('"');
+    }
+
+    private static void record(Span span) {
+        if (count.incrementAndGet() > MAX_SPANS) {
+            dropped.incrementAndGet();
+            return;
+        }
+        finished.add(span);
+    }
+
+    public static final class Span implements AutoCloseable {
+        private final String name;
+        private final String detail;
+        private final int depth;
+        private final long threadId;
+        private final String threadName;
+        private final long start;
+        private final PhaseEvent event;
+        private long end;
+        private boolean instant;
+
+        private Span(String name, String detail, int depth) {
+            this.name = name;
+            this.detail = detail;
+            this.depth = depth;
+            Thread t = Thread.currentThread();
+            this.threadId = t.getId();
+            this.threadName = t.getName();
+            if (name != null) {
+                this.event = new PhaseEvent();
+                this.event.begin();
+            } else {
+                this.event = null;
+            }
+            this.start = System.nanoTime();
+        }
+
+        public String name() { return name; }
+        public String detail() { return detail; }
+        public int depth() { return depth; }
+        public String threadName() { return threadName; }
+        public long startNanos() { return start - ORIGIN; }
+        public long durationNanos() { return end - start; }
+
+        @Override
+        public void close() {
+            if (name == null || instant || end != 0) return;
+            end = System.nanoTime();
+            Deque<Span> stack = STACK.get();
+            // tolerate spans closed out of order: unwind down to this one
+            if (stack.contains(this)) {
+                while (!stack.isEmpty() && stack.pop() != this) { }
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.name = name;
+                event.detail = detail;
+                event.depth = depth;
+                event.commit();
+            }
+            record(this);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.maze.mazeidea.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A subsystem's view onto a shared executor: tasks start in submission order and at most {@code limit} run
+ * at once, the rest wait in a queue. With a limit of 1 this behaves like a single-thread executor.
+ * Shutting down only affects this view, never the shared executor. If the shared executor refuses a task while
+ * others still run, it is retried when one of them finishes; if none runs, the queued tasks are rejected (and
+ * futures from {@code submit} cancelled) rather than left waiting for good.
+ */
+final class BoundedExecutor extends AbstractExecutorService {
+    private final Executor backing;
+    private final int limit;
+    private final ExecutorRegistry.Pool metrics;
+    // all guarded by this
+    private final ArrayDeque<Queued> queue = new ArrayDeque<>();
+    private final Set<Thread> running = new HashSet<>();
+    private int active;
+    private boolean shutdown;
+
+    BoundedExecutor(Executor backing, int limit) {
+        this(backing, limit, null);
+    }
+
+    BoundedExecutor(Executor backing, int limit, ExecutorRegistry.Pool metrics) {
+        this.backing = backing;
+        this.limit = Math.max(1, limit);
+        this.metrics = metrics;
+    }
+
+    private static final class Queued {
+        final Runnable task;
+        final long submitted = System.nanoTime();
+
+        Queued(Runnable task) {
+            this.task = task;
+        }
+    }
+
+    int limit() { return limit; }
+
+    synchronized int queued() { return queue.size(); }
+
+    synchronized int active() { return active; }
+
+    @Override
+    public void execute(Runnable command) {
+        synchronized (this) {
+            if (shutdown) {
+                if (metrics != null) metrics.rejected.increment();
+                throw new RejectedExecutionException("executor is shut down");
+            }
+            queue.add(new Queued(command));
+        }
+        dispatch();
+    }
+
+    private void dispatch() {
+        while (true) {
+            Queued next;
+            synchronized (this) {
+                if (active >= limit || queue.isEmpty()) return;
+                next = queue.poll();
+                active++;
+            }
+            try {
+                backing.execute(() -> run(next));
+            } catch (RejectedExecutionException e) {
+                List<Queued> failed;
+                synchronized (this) {
+                    active--;
+                    notifyAll();
+                    // a running task retries when it finishes; keep the task at the head until then
+                    if (active > 0) {
+                        queue.addFirst(next);
+                        return;
+                    }
+                    // nothing is running to retry: the backing executor is gone, fail everything waiting on it
+                    failed = new ArrayList<>(queue.size() + 1);
+                    failed.add(next);
+                    failed.addAll(queue);
+                    queue.clear();
+                }
+                for (Queued q : failed) {
+                    if (metrics != null) metrics.rejected.increment();
+                    if (q.task instanceof Future) ((Future<?>) q.task).cancel(false);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void run(Queued queued) {
+        Thread self = Thread.currentThread();
+        synchronized (this) {
+            running.add(self);
+        }
+        long started = System.nanoTime();
+        try {
+            queued.task.run();
+        } finally {
+            if (metrics != null) metrics.ran(started - queued.submitted, System.nanoTime() - started);
+            synchronized (this) {
+                running.remove(self);
+                active--;
+                notifyAll();
+            }
+            try { dispatch(); } catch (RejectedExecutionException ignored) {}
+        }
+    }
+
+    @Override
+    public synchronized void shutdown() {
+        shutdown = true;
+        notifyAll();
+    }
+
+    @Override
+    public synchronized List<Runnable> shutdownNow() {
+        shutdown = true;
+        List<Runnable> dropped = new ArrayList<>(queue.size());
+        for (Queued q : queue) dropped.add(q.task);
+        queue.clear();
+        for (Thread t : running) t.interrupt();
+        notifyAll();
+        return dropped;
+    }
+
+    @Override
+    public synchronized boolean isShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public synchronized boolean isTerminated() {
+        return shutdown && active == 0 && queue.isEmpty();
+    }
+
+    @Override
+    public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (!isTerminated()) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) return false;
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return true;
+    }
+}
@@ -1,30 +1,130 @@
 package com.maze.mazeidea.util;
 
+import java.util.Map;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
 
+/**
+ * Keyed debouncer: requests with the same key (a tab, a document, a query) coalesce so only the latest task
+ * runs once the key has been quiet for the delay, while requests for different keys never cancel each other.
+ * An optional max wait flushes a key that keeps being re-requested, so continuous typing still gets periodic
+ * updates. All debouncers share one timer thread; tasks run on the executor given at construction.
+ */
 public class Debouncer {
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> new Thread(r, "debouncer"));
-    private final AtomicReference<ScheduledFuture<?>> last = new AtomicReference<>();
+    // cancelled timers are the common case; registry schedulers drop them from the queue right away
+    private static final ScheduledExecutorService TIMER = ExecutorRegistry.shared().scheduled("debouncer");
+
+    private static final Object DEFAULT_KEY = new Object();
+
+    private final Executor executor;
+    private final ScheduledExecutorService timer;
+    // nanoTime, or a test's clock
+    private final LongSupplier clock;
+    private final Map<Object, Pending> pending = new ConcurrentHashMap<>();
+    private volatile boolean shutdown;
 
     public interface Handle {
         void cancel();
     }
 
+    private static final class Pending {
+        final Object key;
+        final long firstNanos;
+        volatile Runnable task;
+        ScheduledFuture<?> timer;
+
+        Pending(Object key, long firstNanos) {
+            this.key = key;
+            this.firstNanos = firstNanos;
+        }
+    }
+
+    /** Run tasks on the shared timer thread; only for tasks that are cheap or hand off themselves. */
+    public Debouncer() {
+        this(Runnable::run);
+    }
+
+    public Debouncer(Executor executor) {
+        this(executor, TIMER, System::nanoTime);
+    }
+
+    /** With its own timer and clock, so tests can drive time instead of sleeping. */
+    Debouncer(Executor executor, ScheduledExecutorService timer, LongSupplier clock) {
+        this.executor = executor;
+        this.timer = timer;
+        this.clock = clock;
+    }
+
     /**
-     * Schedule a debounced task. Cancels the previous scheduled task on this Debouncer instance.
-     * Returns a Handle that can cancel this specific scheduled task.
+     * Schedule a debounced task. Cancels the previous scheduled task on this Debouncer instance that was
+     * also scheduled without a key.
      */
     public Handle debounce(Runnable task, long delayMillis) {
-        ScheduledFuture<?> future = scheduler.schedule(() -> {
-            try { task.run(); } catch (Throwable t) { t.printStackTrace(); }
-        }, delayMillis, TimeUnit.MILLISECONDS);
-        ScheduledFuture<?> previous = last.getAndSet(future);
-        if (previous != null) previous.cancel(false);
-        return () -> future.cancel(false);
+        return debounce(DEFAULT_KEY, task, delayMillis, 0);
+    }
+
+    public Handle debounce(Object key, Runnable task, long delayMillis) {
+        return debounce(key, task, delayMillis, 0);
+    }
+
+    /**
+     * Schedule {@code task} for {@code key}, replacing any task still pending for that key. It runs after
+     * {@code delayMillis} without further requests, or at the latest {@code maxWaitMillis} after the first
+     * request of the burst (0 for no limit). The returned handle cancels the task if it is still the pending one.
+     */
+    public Handle debounce(Object key, Runnable task, long delayMillis, long maxWaitMillis) {
+        if (shutdown) return () -> {};
+        long now = clock.getAsLong();
+        pending.compute(key, (k, p) -> {
+            if (p == null) p = new Pending(k, now);
+            else if (p.timer != null) p.timer.cancel(false);
+            p.task = task;
+            long fireAt = now + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+            if (maxWaitMillis > 0) fireAt = Math.min(fireAt, p.firstNanos + TimeUnit.MILLISECONDS.toNanos(maxWaitMillis));
+            Pending entry = p;
+            try {
+                p.timer = timer.schedule(() -> fire(entry), Math.max(0, fireAt - now), TimeUnit.NANOSECONDS);
+            } catch (RejectedExecutionException e) {
+                return null;
+            }
+            return p;
+        });
+        return () -> pending.computeIfPresent(key, (k, p) -> {
+            if (p.task != task) return p;
+            if (p.timer != null) p.timer.cancel(false);
+            return null;
+        });
+    }
+
+    /** Drop whatever is pending for {@code key}, e.g. when its tab is closed. */
+    public void cancel(Object key) {
+        Pending p = pending.remove(key);
+        if (p != null && p.timer != null) p.timer.cancel(false);
+    }
+
+    /** Number of keys with a task waiting to run. */
+    public int pendingCount() {
+        return pending.size();
+    }
+
+    private void fire(Pending p) {
+        // a timer that lost the race with a newer request still runs that request's (latest) task
+        if (!pending.remove(p.key, p)) return;
+        Runnable task = p.task;
+        try {
+            executor.execute(() -> {
+                try {
+                    task.run();
+                } catch (Throwable t) {
+                    System.err.println("Debounced task failed: " + t);
+                }
+            });
+        } catch (RejectedExecutionException ignored) {}
     }
 
+    /** Cancel everything pending on this instance; the shared timer thread keeps running for others. */
     public void shutdown() {
-        scheduler.shutdownNow();
+        shutdown = true;
+        for (Object key : pending.keySet()) cancel(key);
     }
 }
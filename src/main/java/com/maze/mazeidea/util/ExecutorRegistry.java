@@ -0,0 +1,399 @@
+package com.maze.mazeidea.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BooleanSupplier;
+import java.util.function.IntSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Creates and keeps track of the thread pools of all subsystems, so a stutter can be traced to the pool that
+ * is saturated. Every pool reports its queue depth, active and total threads, completed and rejected tasks,
+ * and histograms of how long tasks waited in the queue and how long they ran (for fork/join pools, the tasks
+ * submitted from outside, each timed until it returns; subtasks they fork are not counted separately). Pools
+ * created under the same
+ * name (e.g. one indexer per open workspace) are reported together. Threads are daemon threads named after
+ * their pool.
+ */
+public final class ExecutorRegistry {
+    private static final ExecutorRegistry SHARED = new ExecutorRegistry();
+
+    private final Map<String, Pool> pools = new ConcurrentHashMap<>();
+
+    /** The process-wide registry; also reachable as {@code ServiceManager.getExecutors()}. */
+    public static ExecutorRegistry shared() {
+        return SHARED;
+    }
+
+    public ExecutorService single(String name) {
+        return fixed(name, 1);
+    }
+
+    public ExecutorService fixed(String name, int threads) {
+        Pool pool = pool(name, threads == 1 ? "single" : "fixed");
+        MeteredPool executor = new MeteredPool(pool, threads, threads, 0L, new LinkedBlockingQueue<>(),
+                factory(name, threads == 1));
+        pool.add(executor::getActiveCount, () -> executor.getQueue().size(), executor::getPoolSize, executor::isTerminated);
+        return executor;
+    }
+
+    public ExecutorService cached(String name) {
+        Pool pool = pool(name, "cached");
+        MeteredPool executor = new MeteredPool(pool, 0, Integer.MAX_VALUE, 60L, new SynchronousQueue<>(),
+                factory(name, false));
+        pool.add(executor::getActiveCount, () -> executor.getQueue().size(), executor::getPoolSize, executor::isTerminated);
+        return executor;
+    }
+
+    /** A single-thread scheduler; cancelled tasks are removed from its queue right away. */
+    public ScheduledExecutorService scheduled(String name) {
+        Pool pool = pool(name, "scheduled");
+        MeteredScheduledPool executor = new MeteredScheduledPool(pool, factory(name, true));
+        executor.setRemoveOnCancelPolicy(true);
+        pool.add(executor::getActiveCount, () -> executor.getQueue().size(), executor::getPoolSize, executor::isTerminated);
+        return executor;
+    }
+
+    public ForkJoinPool forkJoin(String name, int parallelism) {
+        Pool pool = pool(name, "fork-join");
+        AtomicInteger n = new AtomicInteger();
+        ForkJoinPool executor = new MeteredForkJoinPool(pool, Math.max(1, parallelism), p -> {
+            ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+            t.setName(name + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        pool.add(executor::getActiveThreadCount,
+                () -> (int) Math.min(Integer.MAX_VALUE, executor.getQueuedSubmissionCount() + executor.getQueuedTaskCount()),
+                executor::getPoolSize, executor::isTerminated);
+        return executor;
+    }
+
+    /**
+     * Executor for blocking I/O of {@code subsystem}. On platform threads this is a pool of
+     * {@code platformThreads} threads named {@code threadName} (0 for a cached pool); in virtual-thread mode
+     * (see {@link IoExecutors}) it is a view onto the shared virtual-thread executor, bounded to
+     * {@code virtualLimit} concurrent tasks.
+     */
+    public ExecutorService io(String subsystem, int virtualLimit, String threadName, int platformThreads) {
+        if (!IoExecutors.virtualThreadsEnabled()) {
+            ExecutorService executor = platformThreads > 0 ? fixed(threadName, platformThreads) : cached(threadName);
+            pools.get(threadName).subsystem = subsystem;
+            return executor;
+        }
+        Pool pool = pool(subsystem, "virtual");
+        BoundedExecutor executor = new BoundedExecutor(IoExecutors.sharedVirtual(), IoExecutors.limit(subsystem, virtualLimit), pool);
+        pool.add(executor::active, executor::queued, executor::active, executor::isTerminated);
+        return executor;
+    }
+
+    /**
+     * Report {@code backlog} as queued work of pool {@code name}, for a pool whose task drains a queue of its
+     * own (e.g. an event ring) that the executor's queue doesn't show; counted until {@code done} holds.
+     */
+    public void backlog(String name, IntSupplier backlog, BooleanSupplier done) {
+        pool(name, "single").add(() -> 0, backlog, () -> 0, done);
+    }
+
+    /** Current numbers of every pool, in name order. */
+    public List<PoolStats> snapshot() {
+        List<PoolStats> out = new ArrayList<>();
+        for (Pool pool : new TreeMap<>(pools).values()) out.add(pool.stats());
+        return out;
+    }
+
+    /** The snapshot as a fixed-width table, busiest queues first. */
+    public String report() {
+        List<PoolStats> stats = snapshot();
+        stats.sort((a, b) -> Integer.compare(b.queued(), a.queued()));
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format("%-24s %-10s %6s %6s %7s %10s %8s %10s %10s %10s%n",
+                "pool", "kind", "active", "thrds", "queued", "completed", "rejected", "wait p50", "wait p99", "run p99"));
+        for (PoolStats s : stats) {
+            sb.append(String.format("%-24s %-10s %6d %6d %7d %10d %8d %10s %10s %10s%n",
+                    s.name(), s.kind(), s.active(), s.threads(), s.queued(), s.completed(), s.rejected(),
+                    micros(s.waitTimes().percentileMicros(50)), micros(s.waitTimes().percentileMicros(99)),
+                    micros(s.runTimes().percentileMicros(99))));
+        }
+        return sb.toString();
+    }
+
+    private static String micros(long micros) {
+        if (micros == 0) return "-";
+        if (micros < 1000) return "<" + micros + "µs";
+        return "<" + (micros / 1000) + "ms";
+    }
+
+    private Pool pool(String name, String kind) {
+        return pools.computeIfAbsent(name, n -> new Pool(n, kind));
+    }
+
+    private static ThreadFactory factory(String name, boolean single) {
+        AtomicInteger n = new AtomicInteger();
+        return r -> {
+            Thread t = new Thread(r, single ? name : name + "-" + n.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+    /** Numbers of one named pool at the time of {@link #snapshot()}. */
+    public static final class PoolStats {
+        private final String name;
+        private final String kind;
+        private final int active;
+        private final int threads;
+        private final int queued;
+        private final long completed;
+        private final long rejected;
+        private final LatencyHistogram waitTimes;
+        private final LatencyHistogram runTimes;
+
+        PoolStats(String name, String kind, int active, int threads, int queued, long completed, long rejected,
+                  LatencyHistogram waitTimes, LatencyHistogram runTimes) {
+            this.name = name;
+            this.kind = kind;
+            this.active = active;
+            this.threads = threads;
+            this.queued = queued;
+            this.completed = completed;
+            this.rejected = rejected;
+            this.waitTimes = waitTimes;
+            this.runTimes = runTimes;
+        }
+
+        public String name() { return name; }
+        public String kind() { return kind; }
+        public int active() { return active; }
+        public int threads() { return threads; }
+        public int queued() { return queued; }
+        public long completed() { return completed; }
+        public long rejected() { return rejected; }
+        /** Time from submission (or the scheduled time) until a thread picked the task up. */
+        public LatencyHistogram waitTimes() { return waitTimes; }
+        public LatencyHistogram runTimes() { return runTimes; }
+    }
+
+    /** Counters shared by all executors created under one name. */
+    static final class Pool {
+        private final String name;
+        private final String kind;
+        volatile String subsystem;
+        private final List<Gauges> members = new CopyOnWriteArrayList<>();
+        final LongAdder completed = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LatencyHistogram waitTimes = new LatencyHistogram();
+        final LatencyHistogram runTimes = new LatencyHistogram();
+
+        Pool(String name, String kind) {
+            this.name = name;
+            this.kind = kind;
+        }
+
+        void add(IntSupplier active, IntSupplier queued, IntSupplier threads, BooleanSupplier terminated) {
+            members.add(new Gauges(active, queued, threads, terminated));
+        }
+
+        void ran(long waitNanos, long runNanos) {
+            waitTimes.record(waitNanos);
+            runTimes.record(runNanos);
+            completed.increment();
+        }
+
+        PoolStats stats() {
+            // executors that were shut down and drained no longer count
+            members.removeIf(g -> g.terminated.getAsBoolean());
+            int active = 0, queued = 0, threads = 0;
+            for (Gauges g : members) {
+                active += g.active.getAsInt();
+                queued += g.queued.getAsInt();
+                threads += g.threads.getAsInt();
+            }
+            String label = subsystem != null ? name + " (" + subsystem + ")" : name;
+            return new PoolStats(label, kind, active, threads, queued, completed.sum(), rejected.sum(), waitTimes, runTimes);
+        }
+    }
+
+    private static final class Gauges {
+        final IntSupplier active;
+        final IntSupplier queued;
+        final IntSupplier threads;
+        final BooleanSupplier terminated;
+
+        Gauges(IntSupplier active, IntSupplier queued, IntSupplier threads, BooleanSupplier terminated) {
+            this.active = active;
+            this.queued = queued;
+            this.threads = threads;
+            this.terminated = terminated;
+        }
+    }
+
+    /** Remembers when a task was submitted so the worker can tell how long it queued. */
+    private static final class Timed implements Runnable {
+        final Runnable task;
+        final long submitted = System.nanoTime();
+        long started;
+
+        Timed(Runnable task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    private static final class MeteredPool extends ThreadPoolExecutor {
+        private final Pool pool;
+
+        MeteredPool(Pool pool, int core, int max, long keepAliveSeconds, BlockingQueue<Runnable> queue, ThreadFactory factory) {
+            super(core, max, keepAliveSeconds, TimeUnit.SECONDS, queue, factory, (r, e) -> {
+                pool.rejected.increment();
+                throw new RejectedExecutionException("Task rejected by " + pool.name);
+            });
+            this.pool = pool;
+        }
+
+        @Override
+        public void execute(Runnable command) {
+            super.execute(command instanceof Timed ? command : new Timed(command));
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            if (r instanceof Timed) ((Timed) r).started = System.nanoTime();
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            if (r instanceof Timed) {
+                Timed timed = (Timed) r;
+                pool.ran(timed.started - timed.submitted, System.nanoTime() - timed.started);
+            }
+        }
+    }
+
+    private static final class MeteredScheduledPool extends ScheduledThreadPoolExecutor {
+        private final Pool pool;
+        private final ThreadLocal<long[]> started = ThreadLocal.withInitial(() -> new long[2]);
+
+        MeteredScheduledPool(Pool pool, ThreadFactory factory) {
+            super(1, factory, (r, e) -> {
+                pool.rejected.increment();
+                throw new RejectedExecutionException("Task rejected by " + pool.name);
+            });
+            this.pool = pool;
+        }
+
+        @Override
+        protected void beforeExecute(Thread t, Runnable r) {
+            long[] s = started.get();
+            s[0] = System.nanoTime();
+            // how far past its scheduled time the task starts
+            s[1] = r instanceof Delayed ? Math.max(0, -((Delayed) r).getDelay(TimeUnit.NANOSECONDS)) : 0;
+        }
+
+        @Override
+        protected void afterExecute(Runnable r, Throwable t) {
+            long[] s = started.get();
+            pool.ran(s[1], System.nanoTime() - s[0]);
+        }
+    }
+
+    /**
+     * Times the tasks submitted to it from outside: the wait until a worker picks one up, and the run until it
+     * returns, forked subtasks it joins included. Tasks its own workers submit run as usual, so a worker that
+     * invokes one can still help run it. Submissions rejected after shutdown are counted.
+     */
+    private static final class MeteredForkJoinPool extends ForkJoinPool {
+        private final Pool pool;
+
+        MeteredForkJoinPool(Pool pool, int parallelism, ForkJoinWorkerThreadFactory factory) {
+            super(parallelism, factory, null, false);
+            this.pool = pool;
+        }
+
+        @Override
+        public <T> T invoke(ForkJoinTask<T> task) {
+            if (inside()) return super.invoke(task);
+            submit(task);
+            return task.join();
+        }
+
+        @Override
+        public void execute(ForkJoinTask<?> task) {
+            submit(task);
+        }
+
+        @Override
+        public <T> ForkJoinTask<T> submit(ForkJoinTask<T> task) {
+            if (inside()) return super.submit(task);
+            return counted(() -> {
+                super.execute(ForkJoinTask.adapt(metered(task::invoke)));
+                return task;
+            });
+        }
+
+        @Override
+        public void execute(Runnable task) {
+            if (inside()) super.execute(task);
+            else counted(() -> { super.execute(metered(task)); return null; });
+        }
+
+        @Override
+        public ForkJoinTask<?> submit(Runnable task) {
+            return inside() ? super.submit(task) : counted(() -> super.submit(metered(task)));
+        }
+
+        @Override
+        public <T> ForkJoinTask<T> submit(Runnable task, T result) {
+            return inside() ? super.submit(task, result) : counted(() -> super.submit(metered(task), result));
+        }
+
+        @Override
+        public <T> ForkJoinTask<T> submit(Callable<T> task) {
+            if (inside()) return super.submit(task);
+            long submitted = System.nanoTime();
+            return counted(() -> super.submit(() -> {
+                long started = System.nanoTime();
+                try {
+                    return task.call();
+                } finally {
+                    pool.ran(started - submitted, System.nanoTime() - started);
+                }
+            }));
+        }
+
+        private boolean inside() {
+            Thread t = Thread.currentThread();
+            return t instanceof ForkJoinWorkerThread && ((ForkJoinWorkerThread) t).getPool() == this;
+        }
+
+        private <T> T counted(Supplier<T> submission) {
+            try {
+                return submission.get();
+            } catch (RejectedExecutionException e) {
+                pool.rejected.increment();
+                throw e;
+            }
+        }
+
+        private Runnable metered(Runnable task) {
+            long submitted = System.nanoTime();
+            return () -> {
+                long started = System.nanoTime();
+                try {
+                    task.run();
+                } finally {
+                    pool.ran(started - submitted, System.nanoTime() - started);
+                }
+            };
+        }
+    }
+}
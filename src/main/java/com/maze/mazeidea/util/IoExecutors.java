@@ -0,0 +1,53 @@
+package com.maze.mazeidea.util;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual-thread mode for blocking I/O (file reads, git, builds, language servers, run consoles), used by
+ * {@link ExecutorRegistry#io}. By default every subsystem keeps its own platform threads. With
+ * {@code -Dmazeidea.virtualThreads=true} on JDK 21+ they all share one virtual-thread-per-task executor
+ * instead, each bounded to its own concurrency limit (overridable with
+ * {@code -Dmazeidea.virtualThreads.<subsystem>=N}).
+ */
+public final class IoExecutors {
+    public static final String PROPERTY = "mazeidea.virtualThreads";
+
+    private static final Object lock = new Object();
+    private static ExecutorService virtual;
+    private static boolean probed;
+
+    private IoExecutors() {}
+
+    /** True if virtual threads were requested and the running JDK supports them. */
+    public static boolean virtualThreadsEnabled() {
+        return Boolean.getBoolean(PROPERTY) && sharedVirtual() != null;
+    }
+
+    /** Concurrency limit of {@code subsystem} in virtual-thread mode. */
+    public static int limit(String subsystem, int defaultLimit) {
+        return Math.max(1, Integer.getInteger(PROPERTY + "." + subsystem, defaultLimit));
+    }
+
+    // built reflectively: we still compile for release 11
+    static ExecutorService sharedVirtual() {
+        synchronized (lock) {
+            if (!probed) {
+                probed = true;
+                try {
+                    Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+                    Class<?> ofVirtual = Class.forName("java.lang.Thread$Builder$OfVirtual");
+                    builder = ofVirtual.getMethod("name", String.class, long.class).invoke(builder, "io-virtual-", 0L);
+                    ThreadFactory factory = (ThreadFactory) ofVirtual.getMethod("factory").invoke(builder);
+                    virtual = (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                            .invoke(null, factory);
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    System.err.println("Virtual threads are not available on Java " + Runtime.version().feature()
+                            + "; using platform threads");
+                }
+            }
+            return virtual;
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package com.maze.mazeidea.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with power-of-two microsecond buckets (bucket i holds values below 2^i µs),
+ * good enough to tell a 1 ms task from a 100 ms one at a glance.
+ */
+public final class LatencyHistogram {
+    private static final int BUCKETS = 32;
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    public void record(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        counts.incrementAndGet(bucket);
+    }
+
+    public long count() {
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) total += counts.get(i);
+        return total;
+    }
+
+    /** Upper bound in microseconds of the bucket holding the given percentile (0-100), 0 if empty. */
+    public long percentileMicros(double percentile) {
+        long total = count();
+        if (total == 0) return 0;
+        long rank = (long) Math.ceil(total * percentile / 100.0);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts.get(i);
+            if (seen >= Math.max(1, rank)) return 1L << i;
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    /** Per-bucket counts; bucket i covers [2^(i-1), 2^i) µs. */
+    public long[] buckets() {
+        long[] out = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) out[i] = counts.get(i);
+        return out;
+    }
+}
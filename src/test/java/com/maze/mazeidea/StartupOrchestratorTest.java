@@ -0,0 +1,87 @@
+package com.maze.mazeidea;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StartupOrchestratorTest {
+    @Test
+    public void testStagesRunAfterTheirDependencies() throws Exception {
+        List<String> ran = new CopyOnWriteArrayList<>();
+        CountDownLatch slowMayFinish = new CountDownLatch(1);
+        CountDownLatch independentRan = new CountDownLatch(1);
+        StartupOrchestrator o = new StartupOrchestrator()
+                .stage("rules", () -> ran.add("rules"))
+                .stage("slow", () -> {
+                    try {
+                        assertTrue(slowMayFinish.await(10, TimeUnit.SECONDS));
+                    } catch (InterruptedException e) {
+                        throw new IllegalStateException(e);
+                    }
+                    ran.add("slow");
+                }, "rules")
+                .stage("index", () -> ran.add("index"), "rules", "slow")
+                .stage("independent", () -> {
+                    ran.add("independent");
+                    independentRan.countDown();
+                });
+        // nothing runs before start
+        Thread.sleep(50);
+        assertTrue(ran.isEmpty());
+        CompletableFuture<Void> done = o.start();
+
+        // a stage without dependencies doesn't wait for the slow chain
+        assertTrue(independentRan.await(10, TimeUnit.SECONDS));
+        assertFalse(o.readiness("index").isDone());
+        slowMayFinish.countDown();
+        done.get(10, TimeUnit.SECONDS);
+
+        assertTrue(ran.indexOf("rules") < ran.indexOf("slow"));
+        assertTrue(ran.indexOf("slow") < ran.indexOf("index"));
+        assertEquals(4, ran.size());
+        assertTrue(o.readiness("no-such-stage").isDone());
+    }
+
+    @Test
+    public void testFailedStageFailsDependentsOnly() throws Exception {
+        List<String> ran = new CopyOnWriteArrayList<>();
+        StartupOrchestrator o = new StartupOrchestrator()
+                .stage("rules", () -> { throw new IllegalStateException("broken .gitignore"); })
+                .stage("index", () -> ran.add("index"), "rules")
+                .stage("watcher", () -> ran.add("watcher"), "index")
+                .stage("lsp", () -> ran.add("lsp"));
+        ServiceManager.setStartup(o);
+        try {
+            o.start().get(10, TimeUnit.SECONDS);
+
+            ExecutionException failed = assertThrows(ExecutionException.class,
+                    () -> ServiceManager.whenReady("watcher").get(10, TimeUnit.SECONDS));
+            assertTrue(failed.getCause() instanceof IllegalStateException, () -> "cause " + failed.getCause());
+            assertEquals("broken .gitignore", failed.getCause().getMessage());
+            assertTrue(ServiceManager.whenReady("index").isCompletedExceptionally());
+            ServiceManager.whenReady("lsp").get(10, TimeUnit.SECONDS);
+            assertEquals(List.of("lsp"), ran);
+            // completion still comes, so nothing waiting for startup hangs
+            assertTrue(ServiceManager.whenStarted().isDone());
+        } finally {
+            ServiceManager.setStartup(null);
+        }
+    }
+
+    @Test
+    public void testUndeclaredOrDuplicateStagesAreRejected() {
+        StartupOrchestrator o = new StartupOrchestrator().stage("a", () -> {});
+        assertThrows(IllegalArgumentException.class, () -> o.stage("b", () -> {}, "missing"));
+        assertThrows(IllegalArgumentException.class, () -> o.stage("a", () -> {}));
+    }
+}
@@ -0,0 +1,97 @@
+package com.maze.mazeidea;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class WorkspaceRegistryTest {
+    private Path snapshotDir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        snapshotDir = Files.createTempDirectory("snapshots");
+        System.setProperty(WorkspaceSnapshot.DIR_PROPERTY, snapshotDir.toString());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        System.clearProperty(WorkspaceSnapshot.DIR_PROPERTY);
+    }
+
+    @Test
+    public void testLeastRecentlyActivatedWorkspaceIsPagedOut() {
+        WorkspaceRegistry registry = new WorkspaceRegistry(new WorkspaceBudget(1 << 20, 10, 1, 2));
+        Path backend = Path.of("backend").toAbsolutePath();
+        Path frontend = Path.of("frontend").toAbsolutePath();
+        Path docs = Path.of("docs").toAbsolutePath();
+
+        WorkspaceContext first = registry.activate(backend);
+        registry.activate(frontend);
+        assertSame(first, registry.activate(backend)); // still hot, reused
+        registry.activate(docs);
+        registry.enforceBudget();
+
+        List<Path> hot = registry.contexts().stream().map(WorkspaceContext::getRoot).collect(Collectors.toList());
+        assertEquals(List.of(backend, docs), hot);
+        assertEquals(docs, registry.active().getRoot());
+    }
+
+    @Test
+    public void testIndexesBeyondBudgetPageOutColdWorkspaces() throws Exception {
+        WorkspaceRegistry registry = new WorkspaceRegistry(new WorkspaceBudget(1 << 20, 10, 1, 5, 30_000));
+        Path backend = Files.createTempDirectory("backend");
+        Path frontend = Files.createTempDirectory("frontend");
+        Path docs = Files.createTempDirectory("docs");
+        String content = "x".repeat(10_000);
+
+        for (Path root : List.of(backend, frontend, docs)) {
+            WorkspaceContext ctx = registry.activate(root);
+            ctx.startIndex();
+            ctx.getIndexer().seed(root.resolve("A.java"), content);
+            assertTrue(ctx.indexBytes() >= 20_000);
+        }
+        registry.enforceBudget();
+
+        // three hot workspaces fit the count but not the index budget; the oldest goes, the active one stays
+        List<Path> hot = registry.contexts().stream().map(WorkspaceContext::getRoot).collect(Collectors.toList());
+        assertEquals(List.of(docs.toAbsolutePath().normalize()), hot);
+    }
+
+    @Test
+    public void testReactivatingBeforePageOutRunsKeepsTheContext() throws Exception {
+        WorkspaceRegistry registry = new WorkspaceRegistry(new WorkspaceBudget(1 << 20, 10, 1, 1));
+        Path backend = Files.createTempDirectory("backend");
+        Path frontend = Files.createTempDirectory("frontend");
+
+        WorkspaceContext first = registry.activate(backend);
+        first.startIndex();
+        registry.activate(frontend);
+
+        // hold the snapshot executor so the page-out is still queued when backend comes back
+        CountDownLatch release = new CountDownLatch(1);
+        registry.executor().execute(() -> {
+            try { release.await(); } catch (InterruptedException ignored) {}
+        });
+        registry.enforceBudget();
+        assertFalse(registry.contexts().contains(first));
+
+        assertSame(first, registry.activate(backend));
+        release.countDown();
+        registry.executor().submit(() -> {}).get(5, TimeUnit.SECONDS);
+
+        assertTrue(first.isStarted());
+        assertSame(first, registry.active());
+    }
+}
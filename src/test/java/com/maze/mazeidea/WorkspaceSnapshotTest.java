@@ -0,0 +1,66 @@
+package com.maze.mazeidea;
+
+import com.maze.mazeidea.cache.CacheService;
+import com.maze.mazeidea.index.Indexer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.DataInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WorkspaceSnapshotTest {
+    private Path snapshotDir;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        snapshotDir = Files.createTempDirectory("snapshots");
+        System.setProperty(WorkspaceSnapshot.DIR_PROPERTY, snapshotDir.toString());
+    }
+
+    @AfterEach
+    public void tearDown() {
+        System.clearProperty(WorkspaceSnapshot.DIR_PROPERTY);
+    }
+
+    @Test
+    public void testRoundTripRestoresIndexAndUiState() throws Exception {
+        Path root = Files.createTempDirectory("ws").toAbsolutePath().normalize();
+        Path src = Files.createDirectories(root.resolve("src"));
+        Path file = Files.writeString(src.resolve("A.java"), "class A { int snapshotToken; }");
+
+        Indexer indexer = new Indexer(new CacheService(10));
+        indexer.start();
+        indexer.indexFileAsync(file).get();
+        WorkspaceSnapshot.UiState ui = new WorkspaceSnapshot.UiState(root, List.of(src), List.of(file), 0);
+        new WorkspaceSnapshot(root, indexer.generation(), indexer.stampsUnder(root), ui)
+                .save(out -> indexer.writeIndex(out, root));
+        indexer.stop();
+
+        WorkspaceSnapshot loaded = WorkspaceSnapshot.load(root);
+        assertNotNull(loaded);
+        assertEquals(List.of(src), loaded.getUi().getExpanded());
+        assertEquals(List.of(file), loaded.getUi().getOpenTabs());
+        assertEquals(0, loaded.getUi().getSelectedTab());
+        assertTrue(loaded.getFiles().containsKey(file));
+
+        Indexer restored = new Indexer(new CacheService(10));
+        restored.start();
+        try (DataInputStream in = loaded.openIndex()) {
+            assertNotNull(in);
+            assertTrue(restored.restore(root, loaded.getFiles(), in));
+        }
+        assertTrue(restored.queryBySubstring("snapshotToken").contains(file));
+        assertEquals(loaded.getFiles().get(file), restored.stampOf(file));
+        restored.stop();
+    }
+
+    @Test
+    public void testMissingSnapshotLoadsAsNull() throws Exception {
+        assertNull(WorkspaceSnapshot.load(Files.createTempDirectory("empty")));
+    }
+}
@@ -0,0 +1,39 @@
+package com.maze.mazeidea.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CacheServiceTest {
+    @Test
+    public void testByteBudgetEvictsLeastRecentlyUsed() {
+        CacheService cache = new CacheService(100, 40); // 20 chars
+        Path a = Path.of("a");
+        Path b = Path.of("b");
+        Path c = Path.of("c");
+        cache.put(a, "0123456789");
+        cache.put(b, "0123456789");
+        cache.get(a); // b is now the eldest
+        cache.put(c, "0123456789");
+
+        assertTrue(cache.get(a).isPresent());
+        assertFalse(cache.get(b).isPresent());
+        assertTrue(cache.get(c).isPresent());
+        assertEquals(40, cache.sizeInBytes());
+    }
+
+    @Test
+    public void testOversizedEntryIsStillCached() {
+        CacheService cache = new CacheService(100, 4);
+        cache.put(Path.of("a"), "ab");
+        cache.put(Path.of("big"), "0123456789");
+        assertEquals(1, cache.size());
+        assertTrue(cache.get(Path.of("big")).isPresent());
+        cache.remove(Path.of("big"));
+        assertEquals(0, cache.sizeInBytes());
+    }
+}
@@ -0,0 +1,163 @@
+package com.maze.mazeidea.editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class BracketIndexTest {
+    // brackets of each line as the highlighter would report them
+    private static BracketIndex index(String[] lines) {
+        BracketIndex index = new BracketIndex();
+        index.reset(lines.length);
+        int state = Lexer.INITIAL;
+        JavaLexer lexer = new JavaLexer();
+        for (int p = 0; p < lines.length; p++) {
+            String line = lines[p];
+            List<Integer> found = new ArrayList<>();
+            state = lexer.lex(line, state, (start, end, type) -> {
+                int kind = BracketIndex.kindOf(line.charAt(start));
+                if (end == start + 1 && kind >= 0) found.add(BracketIndex.encode(start, kind, "([{".indexOf(line.charAt(start)) >= 0));
+            });
+            index.set(p, found.stream().mapToInt(Integer::intValue).toArray());
+        }
+        return index;
+    }
+
+    private static String at(BracketIndex.Location l) {
+        return l == null ? null : l.toString();
+    }
+
+    @Test
+    public void testMatchesAcrossLinesSkippingStringsAndComments() {
+        String[] lines = {
+                "class A {",
+                "    void f(int x) { // }",
+                "        g(\")\", '(');",
+                "    }",
+                "}"};
+        BracketIndex index = index(lines);
+        assertEquals("4:0", at(index.match(0, 8)));
+        assertEquals("0:8", at(index.match(4, 0)));
+        assertEquals("3:4", at(index.match(1, 18)));
+        assertEquals("1:16", at(index.match(1, 10)));
+        assertEquals("2:18", at(index.match(2, 9)));
+        assertFalse(index.isBracket(2, 11));
+        assertEquals("1:18", at(index.enclosing(BracketIndex.BRACE, 2, 12)));
+        assertEquals("2:9", at(index.enclosing(BracketIndex.PAREN, 2, 12)));
+        assertNull(index.enclosing(BracketIndex.PAREN, 3, 0));
+
+        // re-lexing a line updates the trees in place
+        index.set(3, new int[0]);
+        assertEquals("4:0", at(index.match(1, 18)));
+        assertNull(index.match(0, 8));
+    }
+
+    @Test
+    public void testRandomBracketsMatchAStackAfterLineEdits() {
+        Random random = new Random(3);
+        List<String> lines = new ArrayList<>();
+        for (int p = 0; p < 300; p++) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = random.nextInt(6); i > 0; i--) sb.append("()[]{}x ".charAt(random.nextInt(8)));
+            lines.add(sb.toString());
+        }
+        BracketIndex index = index(lines.toArray(new String[0]));
+        // insert and remove lines the way the highlighter does, then refill the touched ones
+        index.insertParagraphs(100, 2);
+        lines.add(100, "{(");
+        lines.add(101, "");
+        index.set(100, new int[] {BracketIndex.encode(0, BracketIndex.BRACE, true), BracketIndex.encode(1, BracketIndex.PAREN, true)});
+        index.removeParagraphs(200, 3);
+        for (int i = 0; i < 3; i++) lines.remove(200);
+
+        int[][] expected = new int[lines.size()][];
+        Deque<int[]> open = new ArrayDeque<>();
+        List<int[]> all = new ArrayList<>();
+        for (int p = 0; p < lines.size(); p++) {
+            for (int c = 0; c < lines.get(p).length(); c++) {
+                char ch = lines.get(p).charAt(c);
+                if (BracketIndex.kindOf(ch) >= 0) all.add(new int[] {p, c, BracketIndex.kindOf(ch), "([{".indexOf(ch) >= 0 ? 1 : 0});
+            }
+        }
+        for (int[] b : all) {
+            String got = at(index.match(b[0], b[1]));
+            String want = naiveMatch(all, b);
+            assertEquals(want, got, "bracket at " + b[0] + ":" + b[1]);
+        }
+    }
+
+    @Test
+    public void testManyLineInsertsAndRemovalsStayConsistent() {
+        Random random = new Random(7);
+        List<String> lines = new ArrayList<>();
+        BracketIndex index = new BracketIndex();
+        index.reset(0);
+        for (int round = 0; round < 2000; round++) {
+            if (lines.isEmpty() || random.nextBoolean()) {
+                int at = random.nextInt(lines.size() + 1);
+                int n = 1 + random.nextInt(4);
+                index.insertParagraphs(at, n);
+                for (int i = 0; i < n; i++) {
+                    String line = randomLine(random);
+                    lines.add(at + i, line);
+                    index.set(at + i, brackets(line));
+                }
+            } else {
+                int at = random.nextInt(lines.size());
+                int n = Math.min(1 + random.nextInt(4), lines.size() - at);
+                index.removeParagraphs(at, n);
+                for (int i = 0; i < n; i++) lines.remove(at);
+            }
+        }
+        assertEquals(lines.size(), index.paragraphCount());
+        List<int[]> all = new ArrayList<>();
+        for (int p = 0; p < lines.size(); p++) {
+            for (int c = 0; c < lines.get(p).length(); c++) {
+                char ch = lines.get(p).charAt(c);
+                if (BracketIndex.kindOf(ch) >= 0) all.add(new int[] {p, c, BracketIndex.kindOf(ch), "([{".indexOf(ch) >= 0 ? 1 : 0});
+            }
+        }
+        for (int[] b : all) assertEquals(naiveMatch(all, b), at(index.match(b[0], b[1])), "bracket at " + b[0] + ":" + b[1]);
+    }
+
+    private static String randomLine(Random random) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = random.nextInt(6); i > 0; i--) sb.append("()[]{}x ".charAt(random.nextInt(8)));
+        return sb.toString();
+    }
+
+    private static int[] brackets(String line) {
+        List<Integer> found = new ArrayList<>();
+        for (int c = 0; c < line.length(); c++) {
+            int kind = BracketIndex.kindOf(line.charAt(c));
+            if (kind >= 0) found.add(BracketIndex.encode(c, kind, "([{".indexOf(line.charAt(c)) >= 0));
+        }
+        return found.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private static String naiveMatch(List<int[]> all, int[] b) {
+        int i = indexOf(all, b);
+        int depth = 0;
+        int dir = b[3] == 1 ? 1 : -1;
+        for (int j = i; j >= 0 && j < all.size(); j += dir) {
+            int[] o = all.get(j);
+            if (o[2] != b[2]) continue;
+            depth += o[3] == 1 ? dir : -dir;
+            if (depth == 0) return o[0] + ":" + o[1];
+        }
+        return null;
+    }
+
+    private static int indexOf(List<int[]> all, int[] b) {
+        for (int i = 0; i < all.size(); i++) if (all.get(i) == b) return i;
+        return -1;
+    }
+}
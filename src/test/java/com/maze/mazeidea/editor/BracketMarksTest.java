@@ -0,0 +1,34 @@
+package com.maze.mazeidea.editor;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+public class BracketMarksTest {
+    @Test
+    public void testEditAboveTheMatchShiftsTheMarks() {
+        // "{\n}" with both braces marked, then a line typed in front of them
+        BracketMarks marks = new BracketMarks();
+        marks.set(0, 2);
+        marks.edited(0, 0, "int x;\n".length());
+        assertArrayEquals(new int[]{7, 9}, marks.clear());
+        assertArrayEquals(new int[0], marks.clear());
+    }
+
+    @Test
+    public void testEditsBetweenAndAfterTheMarks() {
+        BracketMarks marks = new BracketMarks();
+        marks.set(3, 10);
+        marks.edited(5, 2, 0);
+        marks.edited(20, 0, 4);
+        assertArrayEquals(new int[]{3, 8}, marks.clear());
+    }
+
+    @Test
+    public void testDeletedMarkIsForgotten() {
+        BracketMarks marks = new BracketMarks();
+        marks.set(3, 10);
+        marks.edited(2, 3, 1);
+        assertArrayEquals(new int[]{8}, marks.clear());
+    }
+}
@@ -0,0 +1,28 @@
+package com.maze.mazeidea.editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CompletionModelTest {
+    @Test
+    public void testFiltersAndRanksAsThePrefixGrows() {
+        CompletionModel model = new CompletionModel();
+        model.addAll(List.of("getValue", "get", "getName", "GetterFactory", "size"));
+        assertEquals(List.of("get", "getName", "getValue", "GetterFactory"), model.filter("ge", 10));
+        assertEquals(List.of("getName", "getValue", "GetterFactory"), model.filter("get", 10));
+        assertEquals(List.of("getName"), model.filter("getN", 10));
+        assertEquals(List.of("get"), model.filter("g", 1));
+    }
+
+    @Test
+    public void testLateCandidatesMergeWithoutDuplicates() {
+        CompletionModel model = new CompletionModel();
+        model.addAll(List.of("println", "print"));
+        model.addAll(List.of("print", "printf"));
+        assertEquals(3, model.size());
+        assertEquals(List.of("printf", "println"), model.filter("print", 10));
+    }
+}
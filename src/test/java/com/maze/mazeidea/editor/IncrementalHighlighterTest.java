@@ -0,0 +1,165 @@
+package com.maze.mazeidea.editor;
+
+import org.fxmisc.richtext.model.StyleSpan;
+import org.fxmisc.richtext.model.StyleSpans;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IncrementalHighlighterTest {
+    /** A plain string document that keeps one style per character, like the code area would. */
+    private static final class Doc implements IncrementalHighlighter.Target {
+        String text;
+        final List<String> styles = new ArrayList<>();
+        int firstVisible = -1, lastVisible = -1;
+
+        Doc(String text) {
+            this.text = text;
+            for (int i = 0; i < text.length(); i++) styles.add("");
+        }
+
+        void replace(int pos, int removedLength, String inserted) {
+            text = text.substring(0, pos) + inserted + text.substring(pos + removedLength);
+            for (int i = 0; i < removedLength; i++) styles.remove(pos);
+            for (int i = 0; i < inserted.length(); i++) styles.add(pos, "");
+        }
+
+        String[] lines() { return text.split("\n", -1); }
+
+        @Override public int paragraphCount() { return lines().length; }
+        @Override public String paragraphText(int paragraph) { return lines()[paragraph]; }
+        @Override public int paragraphAt(int offset) {
+            int n = 0;
+            for (int i = 0; i < offset; i++) if (text.charAt(i) == '\n') n++;
+            return n;
+        }
+        @Override public void setStyleSpans(int paragraph, StyleSpans<Collection<String>> spans) {
+            int pos = 0;
+            for (int p = 0; p < paragraph; p++) pos += lines()[p].length() + 1;
+            for (StyleSpan<Collection<String>> span : spans) {
+                String style = span.getStyle().isEmpty() ? "" : span.getStyle().iterator().next();
+                for (int i = 0; i < span.getLength(); i++) styles.set(pos++, style);
+            }
+        }
+
+        @Override public int firstVisibleParagraph() { return firstVisible; }
+        @Override public int lastVisibleParagraph() { return lastVisible; }
+
+        String styleAt(String token) { return styles.get(text.indexOf(token)); }
+    }
+
+    private static String source(int lines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < lines; i++) sb.append("    int x").append(i).append(" = call(").append(i).append(");\n");
+        return sb.append("}").toString();
+    }
+
+    @Test
+    public void testTypingInALineOnlyRelexesThatLine() {
+        Doc doc = new Doc(source(10_000));
+        IncrementalHighlighter h = new IncrementalHighlighter(doc, new JavaLexer());
+        h.highlightAll();
+        long before = h.lexedParagraphs();
+
+        int pos = doc.text.indexOf("x5000");
+        doc.replace(pos, 0, "final ");
+        h.textChanged(pos, "", "final ");
+
+        assertEquals(1, h.lexedParagraphs() - before);
+        assertEquals("keyword", doc.styleAt("final "));
+    }
+
+    @Test
+    public void testOpeningABlockCommentRestylesUntilItCloses() {
+        Doc doc = new Doc("int a;\nint b;\nint c;\n*/ int d;\nint e;");
+        IncrementalHighlighter h = new IncrementalHighlighter(doc, new JavaLexer());
+        h.highlightAll();
+        assertEquals("keyword", doc.styleAt("int b"));
+
+        doc.replace(0, 0, "/*");
+        h.textChanged(0, "", "/*");
+        assertEquals("comment", doc.styleAt("int b"));
+        assertEquals("comment", doc.styleAt("int c"));
+        assertEquals("keyword", doc.styleAt("int d"));
+        assertEquals(Lexer.INITIAL, h.stateAt(3));
+
+        // deleting the opener (and a line break) restores the plain highlighting
+        doc.replace(0, 9, "");
+        h.textChanged(0, "/*int a;\n", "");
+        assertEquals("keyword", doc.styleAt("int b"));
+        assertEquals("keyword", doc.styleAt("int c"));
+        assertTrue(doc.styles.get(doc.text.indexOf("*/")).equals(""));
+    }
+
+    @Test
+    public void testInsertingLinesKeepsStatesAligned() {
+        Doc doc = new Doc("/* a\nb */\nint c;");
+        IncrementalHighlighter h = new IncrementalHighlighter(doc, new JavaLexer());
+        h.highlightAll();
+        int pos = doc.text.indexOf("b */");
+        doc.replace(pos, 0, "x\ny\n");
+        h.textChanged(pos, "", "x\ny\n");
+        assertEquals(JavaLexer.BLOCK_COMMENT, h.stateAt(2));
+        assertEquals(Lexer.INITIAL, h.stateAt(3));
+        assertEquals("comment", doc.styleAt("y"));
+        assertEquals("keyword", doc.styleAt("int c"));
+    }
+
+    @Test
+    public void testBackgroundPassStylesViewportFirst() {
+        Doc doc = new Doc(source(10_000));
+        doc.firstVisible = 0;
+        doc.lastVisible = 49;
+        IncrementalHighlighter h = new IncrementalHighlighter(doc, new JavaLexer());
+        ArrayDeque<Runnable> posted = new ArrayDeque<>();
+        h.highlightInBackground(posted::add, 1000);
+
+        assertEquals(50, h.lexedParagraphs());
+        assertEquals("keyword", doc.styleAt("int x49 "));
+        assertEquals("", doc.styleAt("int x50 "));
+        assertFalse(h.isComplete());
+
+        // scrolled far down before the pass gets there: that viewport is styled in the next step
+        doc.firstVisible = 8000;
+        doc.lastVisible = 8049;
+        posted.poll().run();
+        assertEquals("keyword", doc.styleAt("int x8000 "));
+        assertEquals("keyword", doc.styleAt("int x1049 "));
+        assertEquals("", doc.styleAt("int x1050 "));
+
+        while (!posted.isEmpty()) posted.poll().run();
+        assertTrue(h.isComplete());
+        assertEquals("keyword", doc.styleAt("int x9999 "));
+    }
+
+    @Test
+    public void testEditsDuringBackgroundPass() {
+        Doc doc = new Doc(source(3000));
+        IncrementalHighlighter h = new IncrementalHighlighter(doc, new JavaLexer());
+        ArrayDeque<Runnable> posted = new ArrayDeque<>();
+        h.highlightInBackground(posted::add, 500);
+        posted.poll().run();
+
+        // above the frontier: lexed right away, and the comment runs on to the frontier
+        doc.replace(0, 0, "/*\n");
+        h.textChanged(0, "", "/*\n");
+        assertEquals("comment", doc.styleAt("int x10 "));
+        // below it: left to the background pass
+        int pos = doc.text.indexOf("x2500");
+        doc.replace(pos, 0, "final ");
+        h.textChanged(pos, "", "final ");
+        assertEquals("", doc.styleAt("final "));
+
+        while (!posted.isEmpty()) posted.poll().run();
+        assertEquals("comment", doc.styleAt("final "));
+        assertEquals("comment", doc.styleAt("}"));
+        assertEquals(JavaLexer.BLOCK_COMMENT, h.stateAt(doc.paragraphCount() - 1));
+    }
+}
@@ -0,0 +1,59 @@
+package com.maze.mazeidea.editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class JavaLexerTest {
+    private final JavaLexer lexer = new JavaLexer();
+
+    private List<String> tokens(String text, int state, int[] endState) {
+        List<String> out = new ArrayList<>();
+        endState[0] = lexer.lex(text, state, (start, end, type) -> out.add(type + ":" + text.substring(start, end)));
+        return out;
+    }
+
+    @Test
+    public void testTokensOfOneLine() {
+        int[] end = new int[1];
+        List<String> t = tokens("public int classy = f(\"a\\\"b\", 'c')[0]; // done", Lexer.INITIAL, end);
+        assertEquals(List.of("KEYWORD:public", "KEYWORD:int", "PAREN:(", "STRING:\"a\\\"b\"", "STRING:'c'",
+                "PAREN:)", "BRACKET:[", "BRACKET:]", "SEMICOLON:;", "COMMENT:// done"), t);
+        assertEquals(Lexer.INITIAL, end[0]);
+    }
+
+    @Test
+    public void testBlockCommentsAndTextBlocksSpanParagraphs() {
+        int[] end = new int[1];
+        assertEquals(List.of("KEYWORD:int", "COMMENT:/* open"), tokens("int /* open", Lexer.INITIAL, end));
+        assertEquals(JavaLexer.BLOCK_COMMENT, end[0]);
+        assertEquals(List.of("COMMENT:still int"), tokens("still int", end[0], end));
+        assertEquals(List.of("COMMENT:*/", "KEYWORD:return", "SEMICOLON:;"), tokens("*/ return;", end[0], end));
+        assertEquals(Lexer.INITIAL, end[0]);
+
+        assertEquals(List.of("STRING:\"\"\""), tokens("String s = \"\"\"", Lexer.INITIAL, end).subList(0, 1));
+        assertEquals(JavaLexer.TEXT_BLOCK, end[0]);
+        assertEquals(List.of("STRING:  class \"\"\"", "SEMICOLON:;"), tokens("  class \"\"\";", end[0], end));
+        assertEquals(Lexer.INITIAL, end[0]);
+    }
+
+    @Test
+    public void testLongCommentOnOneLine() {
+        // the old regex overflowed the stack on comments of a few thousand characters
+        String comment = "/*" + "x".repeat(200_000) + "*/";
+        int[] end = new int[1];
+        assertEquals(List.of("COMMENT:" + comment, "KEYWORD:int"), tokens(comment + " int", Lexer.INITIAL, end));
+    }
+
+    @Test
+    public void testRegistryPicksLexerByExtension() {
+        assertSame(JavaLexer.class, LexerRegistry.forFile(Paths.get("src/Main.JAVA")).getClass());
+        assertSame(Lexer.PLAIN, LexerRegistry.forFile(Paths.get("README.md")));
+        assertSame(Lexer.PLAIN, LexerRegistry.forFile(Paths.get("Makefile")));
+    }
+}
@@ -0,0 +1,89 @@
+package com.maze.mazeidea.editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class MappedTextTest {
+    @Test
+    public void testLinesAcrossSegmentsAndCheckpoints() throws Exception {
+        Path file = Files.createTempFile("mapped", ".log");
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 2000; i++) sb.append("line ").append(i).append(i % 3 == 0 ? "\r\n" : "\n");
+        sb.append("last ü");
+        Files.writeString(file, sb.toString());
+
+        // 1 KB segments, so lookups cross segment boundaries as well as checkpoints
+        try (MappedText text = MappedText.open(file, 1024)) {
+            text.buildIndex(n -> {});
+            assertTrue(text.isIndexed());
+            assertEquals(2001, text.lineCount());
+            assertEquals("line 0", text.line(0));
+            assertEquals("line 63", text.line(63));
+            assertEquals("line 64", text.line(64));
+            assertEquals("line 1999", text.line(1999));
+            assertEquals("last ü", text.line(2000));
+
+            long hit = text.find("line 1234", 0);
+            assertEquals(1234, text.lineOf(hit));
+            assertEquals(text.lineStart(1234), hit);
+            assertEquals(-1, text.find("line 1234", hit + 1));
+            assertEquals(2000, text.lineOf(text.find("ü", 0)));
+        }
+    }
+
+    @Test
+    public void testTrailingLineBreakAndEmptyFile() throws Exception {
+        Path file = Files.createTempFile("mapped", ".log");
+        Files.writeString(file, "a\nb\n");
+        try (MappedText text = MappedText.open(file)) {
+            text.buildIndex(n -> {});
+            assertEquals(2, text.lineCount());
+            assertEquals("b", text.line(1));
+        }
+        Files.writeString(file, "");
+        try (MappedText text = MappedText.open(file)) {
+            text.buildIndex(n -> {});
+            assertEquals(1, text.lineCount());
+            assertEquals("", text.line(0));
+        }
+    }
+
+    @Test
+    public void testLongLineIsCutAtACharacterBoundary() throws Exception {
+        Path file = Files.createTempFile("mapped", ".log");
+        // two-byte characters from offset 1, so MAX_LINE_BYTES falls inside one
+        Files.writeString(file, "a" + "ü".repeat(MappedText.MAX_LINE_BYTES) + "\nnext");
+        try (MappedText text = MappedText.open(file)) {
+            text.buildIndex(n -> {});
+            assertEquals("a" + "ü".repeat(MappedText.MAX_LINE_BYTES / 2 - 1) + " …", text.line(0));
+            assertEquals("next", text.line(1));
+        }
+    }
+
+    @Test
+    public void testTruncatedFileReportsExternalChange() throws Exception {
+        Path file = Files.createTempFile("mapped", ".log");
+        Files.writeString(file, "one\ntwo\nthree\n".repeat(1000));
+        MappedText text = MappedText.open(file, 1024);
+        text.buildIndex(n -> {});
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ch.truncate(10);
+        }
+        assertThrows(MappedText.ExternalChangeException.class, () -> text.line(2000));
+        assertThrows(MappedText.ExternalChangeException.class, () -> text.find("three", 0));
+
+        // once closed the mapping is gone; reads fail cleanly instead of touching it
+        text.close();
+        assertThrows(IllegalStateException.class, () -> text.line(0));
+        assertEquals(-1, text.find("one", 0));
+        Files.delete(file);
+    }
+}
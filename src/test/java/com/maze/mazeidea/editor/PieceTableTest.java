@@ -0,0 +1,52 @@
+package com.maze.mazeidea.editor;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PieceTableTest {
+    @Test
+    public void testRandomEditsMatchAStringBuilder() {
+        Random random = new Random(42);
+        StringBuilder expected = new StringBuilder("class A {\n    int x;\n}\n");
+        PieceTable table = new PieceTable(expected.toString());
+        for (int i = 0; i < 5000; i++) {
+            int pos = random.nextInt(expected.length() + 1);
+            int removed = random.nextInt(4) == 0 ? random.nextInt(Math.min(8, expected.length() - pos) + 1) : 0;
+            String inserted = random.nextInt(3) == 0 ? "" : "ab\nc".substring(random.nextInt(4));
+            expected.replace(pos, pos + removed, inserted);
+            table.replace(pos, removed, inserted);
+        }
+        PieceTable.Snapshot snapshot = table.snapshot();
+        assertEquals(expected.toString(), snapshot.toString());
+        assertEquals(expected.length(), snapshot.length());
+        for (int i = 0; i < expected.length(); i += 7) assertEquals(expected.charAt(i), snapshot.charAt(i));
+        assertEquals(expected.substring(10, 60), snapshot.subSequence(10, 60));
+        assertTrue(table.pieceCount() <= PieceTable.MAX_PIECES);
+    }
+
+    @Test
+    public void testSnapshotsAreUnaffectedByLaterEdits() {
+        PieceTable table = new PieceTable("hello world");
+        table.replace(5, 0, ",");
+        PieceTable.Snapshot before = table.snapshot();
+        table.replace(0, 5, "goodbye");
+        table.replace(table.length(), 0, "!");
+        assertEquals("hello, world", before.toString());
+        assertEquals("goodbye, world!", table.toString());
+    }
+
+    @Test
+    public void testTypingExtendsOnePiece() {
+        PieceTable table = new PieceTable("ab");
+        // typing between a and b, one character at a time, across a chunk of the add buffer
+        String typed = "x".repeat(70_000);
+        for (int i = 0; i < typed.length(); i++) table.replace(1 + i, 0, "x");
+        assertEquals(3, table.pieceCount());
+        assertEquals("a" + typed + "b", table.toString());
+        assertEquals('x', table.snapshot().charAt(65_537));
+    }
+}
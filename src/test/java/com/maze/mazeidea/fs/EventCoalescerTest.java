@@ -0,0 +1,36 @@
+package com.maze.mazeidea.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class EventCoalescerTest {
+    @Test
+    public void testBurstCollapsesToOneEventPerPath() {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+        List<FileEvent> delivered = new ArrayList<>();
+        EventCoalescer coalescer = new EventCoalescer(scheduler, delivered::addAll, 10_000, 10_000);
+
+        Path a = Path.of("a.txt");
+        Path b = Path.of("b.txt");
+        Path c = Path.of("c.txt");
+        for (int i = 0; i < 100; i++) coalescer.add(new FileEvent(a, FileEvent.EventType.MODIFY, i));
+        coalescer.add(new FileEvent(b, FileEvent.EventType.CREATE, 1));
+        coalescer.add(new FileEvent(b, FileEvent.EventType.MODIFY, 2));
+        coalescer.add(new FileEvent(c, FileEvent.EventType.CREATE, 1));
+        coalescer.add(new FileEvent(c, FileEvent.EventType.DELETE, 2));
+        coalescer.flush();
+        scheduler.shutdownNow();
+
+        assertEquals(2, delivered.size());
+        assertTrue(delivered.stream().anyMatch(e -> e.path().equals(a) && e.type() == FileEvent.EventType.MODIFY));
+        assertTrue(delivered.stream().anyMatch(e -> e.path().equals(b) && e.type() == FileEvent.EventType.CREATE));
+    }
+}
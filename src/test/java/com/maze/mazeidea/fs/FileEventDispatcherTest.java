@@ -0,0 +1,67 @@
+package com.maze.mazeidea.fs;
+
+import com.maze.mazeidea.util.ExecutorRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileEventDispatcherTest {
+    private static List<FileEvent> events(int n) {
+        List<FileEvent> out = new ArrayList<>();
+        for (int i = 0; i < n; i++) out.add(new FileEvent(Path.of("f" + i), FileEvent.EventType.MODIFY, i));
+        return out;
+    }
+
+    @Test
+    public void testFullRingDropsRestOfBatchAfterOneWait() throws Exception {
+        AtomicInteger drops = new AtomicInteger();
+        FileEventDispatcher dispatcher = new FileEventDispatcher(4, drops::incrementAndGet);
+        CountDownLatch inListener = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger delivered = new AtomicInteger();
+        dispatcher.addBatchListener(batch -> {
+            inListener.countDown();
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException ignored) {}
+            delivered.addAndGet(batch.size());
+        });
+        try {
+            // the listener holds the first event, so the ring fills up behind it
+            dispatcher.publish(events(1));
+            assertTrue(inListener.await(10, TimeUnit.SECONDS));
+
+            long start = System.nanoTime();
+            dispatcher.publish(events(1000));
+            long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            assertTrue(millis < 2000, "publish waited " + millis + " ms");
+
+            FileEventDispatcher.Metrics m = dispatcher.metrics();
+            assertEquals(1, drops.get());
+            assertEquals(1001, m.published());
+            assertEquals(996, m.dropped());
+            assertEquals(1, m.producerWaits());
+            assertEquals(4, m.highWater());
+            assertEquals(4, m.queueDepth());
+            // the ring is the dispatch pool's queue in the pool stats
+            ExecutorRegistry.PoolStats pool = ExecutorRegistry.shared().snapshot().stream()
+                    .filter(p -> p.name().equals("file-event-dispatch")).findFirst().orElseThrow();
+            assertTrue(pool.queued() >= 4, "queued " + pool.queued());
+
+            release.countDown();
+            for (int i = 0; i < 100 && delivered.get() < 5; i++) Thread.sleep(50);
+            assertEquals(5, delivered.get());
+        } finally {
+            release.countDown();
+            dispatcher.shutdown();
+        }
+    }
+}
@@ -6,8 +6,12 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class FileWatcherServiceTest {
@@ -28,4 +32,36 @@ public class FileWatcherServiceTest {
         watcher.stop();
         assertTrue(events.stream().anyMatch(e -> e.path().equals(file) && e.type() == FileEvent.EventType.CREATE));
     }
+
+    @Test
+    public void testOverflowOfOneDirectoryRescansOnlyItsSubtree() throws Exception {
+        Path root = Files.createTempDirectory("fwtest").toRealPath();
+        Path a = Files.createDirectories(root.resolve("a/deep"));
+        Files.writeString(a.resolve("x.txt"), "");
+        Path b = Files.createDirectory(root.resolve("b"));
+        Files.writeString(b.resolve("y.txt"), "");
+        FileWatcherService watcher = new FileWatcherService(root, WatchMode.NATIVE);
+        // nothing is known, so a rescan reports every file it walks as created
+        watcher.setStampSource(dir -> Map.of());
+        List<FileEvent> events = new CopyOnWriteArrayList<>();
+        watcher.registerListener(events::add);
+        watcher.start();
+        try {
+            watcher.registration().get(5, TimeUnit.SECONDS);
+            watcher.overflowed(List.of(root.resolve("a")), null);
+            for (int i = 0; i < 30 && events.isEmpty(); i++) Thread.sleep(100);
+            Thread.sleep(300);
+            assertEquals(List.of(a.resolve("x.txt")), events.stream().map(FileEvent::path).distinct().collect(Collectors.toList()));
+
+            // overflow on many keys at once is a kernel queue overflow: the whole tree is rescanned
+            events.clear();
+            List<Path> many = new ArrayList<>();
+            for (int i = 0; i <= FileWatcherService.MAX_OVERFLOW_RESCANS; i++) many.add(root.resolve("a/gone" + i));
+            watcher.overflowed(many, null);
+            for (int i = 0; i < 30 && events.stream().noneMatch(e -> e.path().startsWith(b)); i++) Thread.sleep(100);
+            assertTrue(events.stream().anyMatch(e -> e.path().equals(b.resolve("y.txt"))), () -> "events " + events);
+        } finally {
+            watcher.stop();
+        }
+    }
 }
@@ -0,0 +1,66 @@
+package com.maze.mazeidea.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class IgnoreRulesTest {
+    @Test
+    public void testGitignoreSemantics() {
+        Path root = Path.of("/work/repo");
+        IgnoreRules rules = IgnoreRules.compile(root, List.of(
+                "# comment",
+                "node_modules/",
+                "*.log",
+                "!keep.log",
+                "/build",
+                "docs/**/*.tmp",
+                "out/",
+                "!out/readme.md"
+        ));
+
+        assertTrue(rules.isIgnored(root.resolve("node_modules"), true));
+        assertTrue(rules.isIgnored(root.resolve("web/node_modules/react/index.js")));
+        assertFalse(rules.isIgnored(root.resolve("node_modules"), false));
+
+        assertTrue(rules.isIgnored(root.resolve("server/app.log")));
+        assertFalse(rules.isIgnored(root.resolve("server/keep.log")));
+
+        assertTrue(rules.isIgnored(root.resolve("build"), true));
+        assertFalse(rules.isIgnored(root.resolve("src/build"), true));
+
+        assertTrue(rules.isIgnored(root.resolve("docs/a/b/c.tmp")));
+        assertTrue(rules.isIgnored(root.resolve("docs/c.tmp")));
+        assertFalse(rules.isIgnored(root.resolve("src/c.tmp")));
+
+        // files inside an excluded directory cannot be re-included
+        assertTrue(rules.isIgnored(root.resolve("out/readme.md")));
+
+        assertFalse(rules.isIgnored(root.resolve("src/Main.java")));
+        assertFalse(rules.isIgnored(Path.of("/elsewhere/app.log")));
+    }
+
+    @Test
+    public void testTrailingDoubleStarMatchesOnlyContents() {
+        Path root = Path.of("/work/repo");
+        IgnoreRules rules = IgnoreRules.compile(root, List.of("abc/**", "**/gen/**", "!abc/**/keep.txt"));
+
+        assertFalse(rules.isIgnored(root.resolve("abc"), true));
+        assertFalse(rules.isIgnored(root.resolve("abc"), false));
+        assertTrue(rules.isIgnored(root.resolve("abc/x.txt")));
+        assertTrue(rules.isIgnored(root.resolve("abc/sub"), true));
+        assertTrue(rules.isIgnored(root.resolve("abc/sub/deep/y.txt")));
+        assertFalse(rules.isIgnored(root.resolve("src/abc/x.txt")));
+        // abc itself is not excluded, so a later negation can re-include a file directly inside it
+        assertFalse(rules.isIgnored(root.resolve("abc/keep.txt")));
+
+        assertFalse(rules.isIgnored(root.resolve("gen"), true));
+        assertFalse(rules.isIgnored(root.resolve("lib/gen"), true));
+        assertTrue(rules.isIgnored(root.resolve("lib/gen/A.java")));
+        assertTrue(rules.isIgnored(root.resolve("gen/A.java")));
+    }
+}
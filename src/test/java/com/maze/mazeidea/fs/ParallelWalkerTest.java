@@ -0,0 +1,43 @@
+package com.maze.mazeidea.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ParallelWalkerTest {
+    @Test
+    public void testWalkVisitsEveryFileAndSkipsIgnoredDirectories() throws Exception {
+        Path dir = Files.createTempDirectory("walk");
+        for (int d = 0; d < 5; d++) {
+            Path sub = Files.createDirectories(dir.resolve("pkg" + d + "/nested"));
+            for (int i = 0; i < 50; i++) Files.writeString(sub.resolve("F" + i + ".java"), "class F" + i + " {}");
+        }
+        Files.createDirectories(dir.resolve("target"));
+        Files.writeString(dir.resolve("target/Out.class"), "x");
+
+        Set<Path> seen = ConcurrentHashMap.newKeySet();
+        ForkJoinPool pool = new ForkJoinPool(3);
+        boolean complete = new ParallelWalker(pool).walk(dir, IgnoreRules.compile(dir, List.of("target/")),
+                (file, attrs) -> seen.add(file));
+
+        assertTrue(complete);
+        assertEquals(250, seen.size());
+        assertFalse(seen.contains(dir.resolve("target/Out.class")));
+
+        // an interrupted visitor stops the walk and reports it as incomplete
+        boolean stopped = new ParallelWalker(pool).walk(dir, IgnoreRules.none(), (file, attrs) -> {
+            throw new InterruptedException();
+        });
+        pool.shutdownNow();
+        assertFalse(stopped);
+    }
+}
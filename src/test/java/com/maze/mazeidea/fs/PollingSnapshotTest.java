@@ -0,0 +1,39 @@
+package com.maze.mazeidea.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class PollingSnapshotTest {
+    @Test
+    public void testDiffBetweenSnapshots() throws Exception {
+        Path dir = Files.createTempDirectory("poll");
+        Path kept = Files.writeString(dir.resolve("kept.txt"), "kept");
+        Path grown = Files.writeString(dir.resolve("grown.txt"), "a");
+        Path removed = Files.writeString(dir.resolve("removed.txt"), "bye");
+        ForkJoinPool pool = new ForkJoinPool(2);
+
+        PollingSnapshot before = PollingSnapshot.scan(dir, pool, null);
+        Files.writeString(grown, "a much longer body");
+        Files.delete(removed);
+        Files.createDirectories(dir.resolve("nested"));
+        Path added = Files.writeString(dir.resolve("nested/added.txt"), "new");
+        PollingSnapshot after = PollingSnapshot.scan(dir, pool, null);
+        pool.shutdownNow();
+
+        List<FileEvent> events = before.diff(after, dir, 0);
+        assertEquals(3, before.size());
+        assertEquals(3, after.size());
+        assertEquals(3, events.size());
+        assertTrue(events.stream().noneMatch(e -> e.path().equals(kept)));
+        assertTrue(events.stream().anyMatch(e -> e.path().equals(grown) && e.type() == FileEvent.EventType.MODIFY));
+        assertTrue(events.stream().anyMatch(e -> e.path().equals(removed) && e.type() == FileEvent.EventType.DELETE));
+        assertTrue(events.stream().anyMatch(e -> e.path().equals(added) && e.type() == FileEvent.EventType.CREATE));
+    }
+}
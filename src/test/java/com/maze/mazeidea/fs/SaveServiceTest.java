@@ -0,0 +1,122 @@
+package com.maze.mazeidea.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SaveServiceTest {
+    // runs tasks only when asked to
+    private static final class ManualExecutor extends AbstractExecutorService {
+        final List<Runnable> tasks = new ArrayList<>();
+        public void execute(Runnable r) { tasks.add(r); }
+        void runAll() { while (!tasks.isEmpty()) tasks.remove(0).run(); }
+        public void shutdown() {}
+        public List<Runnable> shutdownNow() { return tasks; }
+        public boolean isShutdown() { return false; }
+        public boolean isTerminated() { return false; }
+        public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
+    }
+
+    private static final class Recorder implements SaveService.Listener {
+        final List<FileStamp> replacing = new CopyOnWriteArrayList<>();
+        final List<String> saved = new CopyOnWriteArrayList<>();
+        public void replacing(Path file, FileStamp stamp) { replacing.add(stamp); }
+        public void saved(Path file, String content, FileStamp stamp) { saved.add(content); }
+    }
+
+    @Test
+    public void testQueuedSavesCoalesce() throws Exception {
+        Path dir = Files.createTempDirectory("save");
+        Path file = dir.resolve("A.java");
+        Files.writeString(file, "old");
+        ManualExecutor executor = new ManualExecutor();
+        Recorder recorder = new Recorder();
+        SaveService saves = new SaveService(executor, recorder);
+
+        CompletableFuture<FileStamp> first = saves.save(file, "one");
+        CompletableFuture<FileStamp> second = saves.save(file, "two");
+        CompletableFuture<FileStamp> third = saves.save(file, new StringBuilder("three ü"));
+        assertEquals(1, executor.tasks.size());
+        assertFalse(first.isDone());
+        executor.runAll();
+
+        assertEquals("three ü", Files.readString(file));
+        assertEquals(List.of("three ü"), recorder.saved);
+        FileStamp stamp = third.get();
+        assertEquals(stamp, first.get());
+        assertEquals(stamp, second.get());
+        assertEquals(stamp, recorder.replacing.get(0));
+        assertEquals(Files.size(file), stamp.size());
+        assertEquals(Files.getLastModifiedTime(file).toMillis(), stamp.modified());
+        try (Stream<Path> files = Files.list(dir)) {
+            assertEquals(List.of(file), files.collect(java.util.stream.Collectors.toList()));
+        }
+
+        // once written, the next save is a new write
+        CompletableFuture<FileStamp> fourth = saves.save(file, "four");
+        executor.runAll();
+        fourth.get();
+        assertEquals("four", Files.readString(file));
+        assertEquals(2, recorder.saved.size());
+        assertEquals(0, saves.pendingFiles());
+    }
+
+    @Test
+    public void testSavesThroughSymbolicLink() throws Exception {
+        Path dir = Files.createTempDirectory("save");
+        Path real = Files.writeString(Files.createDirectory(dir.resolve("real")).resolve("A.java"), "old");
+        Path link = Files.createSymbolicLink(dir.resolve("A.java"), real);
+        ManualExecutor executor = new ManualExecutor();
+        SaveService saves = new SaveService(executor, new Recorder());
+
+        CompletableFuture<FileStamp> done = saves.save(link, "new");
+        executor.runAll();
+        done.get();
+        assertTrue(Files.isSymbolicLink(link));
+        assertEquals("new", Files.readString(real));
+        try (Stream<Path> files = Files.list(real.getParent())) {
+            assertEquals(1, files.count());
+        }
+    }
+
+    @Test
+    public void testWatcherDropsEventsOfOwnSaves() throws Exception {
+        Path dir = Files.createTempDirectory("save").toRealPath();
+        Path file = dir.resolve("A.java");
+        Files.writeString(file, "old");
+        FileWatcherService watcher = new FileWatcherService(dir, WatchMode.NATIVE);
+        List<FileEvent> events = new CopyOnWriteArrayList<>();
+        watcher.registerListener(events::add);
+        watcher.start();
+        SaveService saves = new SaveService(Executors.newSingleThreadExecutor(), new SaveService.Listener() {
+            public void replacing(Path f, FileStamp stamp) { watcher.expectOwnWrite(f, stamp); }
+            public void saved(Path f, String content, FileStamp stamp) {}
+        });
+        try {
+            saves.save(file, "class A {}").get(5, TimeUnit.SECONDS);
+            Thread.sleep(1000);
+            assertTrue(events.isEmpty(), () -> "unexpected " + events.get(0).path() + " " + events.get(0).type());
+
+            // someone else changing the file is reported again
+            Files.writeString(file, "class A { int changed; }");
+            for (int i = 0; i < 30 && events.isEmpty(); i++) Thread.sleep(100);
+            assertTrue(events.stream().anyMatch(e -> e.path().equals(file)));
+        } finally {
+            saves.close(1000);
+            watcher.stop();
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.maze.mazeidea.fs;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SubtreeRescannerTest {
+    @Test
+    public void testRescanEmitsDifferenceAgainstKnownStamps() throws Exception {
+        Path dir = Files.createTempDirectory("rescan");
+        Path unchanged = Files.writeString(dir.resolve("same.txt"), "same");
+        Path changed = Files.writeString(dir.resolve("changed.txt"), "new content");
+        Files.createDirectories(dir.resolve("sub"));
+        Path created = Files.writeString(dir.resolve("sub/created.txt"), "created");
+        Path deleted = dir.resolve("deleted.txt");
+
+        Map<Path, FileStamp> known = new HashMap<>();
+        known.put(unchanged, new FileStamp(Files.size(unchanged), Files.getLastModifiedTime(unchanged).toMillis()));
+        known.put(changed, new FileStamp(1, 0));
+        known.put(deleted, new FileStamp(1, 0));
+
+        ForkJoinPool pool = new ForkJoinPool(2);
+        List<FileEvent> events = new SubtreeRescanner(pool).rescan(dir, known, d -> {});
+        pool.shutdownNow();
+
+        assertEquals(3, events.size());
+        assertTrue(events.stream().anyMatch(e -> e.path().equals(changed) && e.type() == FileEvent.EventType.MODIFY));
+        assertTrue(events.stream().anyMatch(e -> e.path().equals(created) && e.type() == FileEvent.EventType.CREATE));
+        assertTrue(events.stream().anyMatch(e -> e.path().equals(deleted) && e.type() == FileEvent.EventType.DELETE));
+    }
+}
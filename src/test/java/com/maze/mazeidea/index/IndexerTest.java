@@ -5,8 +5,13 @@ import org.junit.jupiter.api.Test;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class IndexerTest {
@@ -28,4 +33,57 @@ public class IndexerTest {
 
         assertTrue(results.contains(tempFile));
     }
+
+    @Test
+    public void testBulkProducerWaitsWhileBacklogIsFull() throws Exception {
+        // files that don't exist are removed from the store; hold that up until the producer is stuck
+        CountDownLatch release = new CountDownLatch(1);
+        InMemoryIndexStore memory = new InMemoryIndexStore();
+        IndexStore store = new IndexStore() {
+            public void indexFile(Path path, String content) { memory.indexFile(path, content); }
+            public void remove(Path path) {
+                try { release.await(); } catch (InterruptedException ignored) {}
+                memory.remove(path);
+            }
+            public List<Path> query(String q, int maxResults) { return memory.query(q, maxResults); }
+            public boolean contains(Path path) { return memory.contains(path); }
+            public void close() {}
+        };
+        Indexer indexer = new Indexer(new CacheService(10), store, 2);
+        indexer.start();
+        Path dir = Files.createTempDirectory("idx");
+        int total = 3 * Indexer.MAX_BACKLOG;
+        AtomicInteger submitted = new AtomicInteger();
+        Thread producer = new Thread(() -> {
+            try {
+                for (int i = 0; i < total; i += 256) {
+                    List<Path> chunk = new ArrayList<>();
+                    for (int j = i; j < Math.min(total, i + 256); j++) chunk.add(dir.resolve("missing-" + j));
+                    indexer.submitBulk(chunk);
+                    submitted.addAndGet(chunk.size());
+                }
+            } catch (InterruptedException ignored) {}
+        });
+        producer.start();
+        try {
+            for (int i = 0; i < 500 && producer.getState() != Thread.State.WAITING; i++) Thread.sleep(10);
+            assertEquals(Thread.State.WAITING, producer.getState());
+            assertTrue(indexer.backlog() <= Indexer.MAX_BACKLOG, () -> "backlog " + indexer.backlog());
+            assertTrue(submitted.get() < total);
+
+            int max = 0;
+            release.countDown();
+            while (producer.isAlive()) {
+                max = Math.max(max, indexer.backlog());
+                producer.join(1);
+            }
+            assertTrue(max <= Indexer.MAX_BACKLOG, "backlog peaked at " + max);
+            assertEquals(total, submitted.get());
+            for (int i = 0; i < 500 && indexer.backlog() > 0; i++) Thread.sleep(10);
+            assertEquals(0, indexer.backlog());
+        } finally {
+            release.countDown();
+            indexer.stop();
+        }
+    }
 }
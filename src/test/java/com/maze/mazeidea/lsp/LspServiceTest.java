@@ -0,0 +1,102 @@
+package com.maze.mazeidea.lsp;
+
+import org.eclipse.lsp4j.InitializeResult;
+import org.eclipse.lsp4j.Position;
+import org.eclipse.lsp4j.ServerCapabilities;
+import org.eclipse.lsp4j.TextDocumentContentChangeEvent;
+import org.eclipse.lsp4j.TextDocumentSyncKind;
+import org.eclipse.lsp4j.TextDocumentSyncOptions;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class LspServiceTest {
+    private static int offset(String text, Position p) {
+        int pos = 0;
+        for (int line = 0; line < p.getLine(); line++) pos = text.indexOf('\n', pos) + 1;
+        return pos + p.getCharacter();
+    }
+
+    private static Position position(String text, int offset) {
+        int line = 0, lineStart = 0;
+        for (int i = 0; i < offset; i++) {
+            if (text.charAt(i) == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        return new Position(line, offset - lineStart);
+    }
+
+    // what a server does with the changes of one didChange, in order
+    private static String apply(String text, Iterable<TextDocumentContentChangeEvent> changes) {
+        for (TextDocumentContentChangeEvent c : changes) {
+            text = text.substring(0, offset(text, c.getRange().getStart())) + c.getText()
+                    + text.substring(offset(text, c.getRange().getEnd()));
+        }
+        return text;
+    }
+
+    @Test
+    public void testRangedChangesReproduceTheEdits() {
+        Random random = new Random(7);
+        String sent = "class A {\n    int x;\n}\n";
+        String text = sent;
+        LspService.PendingChanges pending = new LspService.PendingChanges();
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < 20; i++) {
+                int pos = random.nextInt(text.length() + 1);
+                int removed = random.nextInt(3) == 0 ? random.nextInt(Math.min(12, text.length() - pos) + 1) : 0;
+                String inserted = "xy\nz".substring(random.nextInt(4));
+                Position start = position(text, pos);
+                String removedText = text.substring(pos, pos + removed);
+                text = text.substring(0, pos) + inserted + text.substring(pos + removed);
+                pending.add(start.getLine(), start.getCharacter(), removedText, inserted, text);
+            }
+            LspService.PendingChanges.Batch batch = pending.drain();
+            sent = apply(sent, batch.changes);
+            assertEquals(text, sent);
+            assertEquals(text, batch.text.toString());
+        }
+        assertNull(pending.drain());
+    }
+
+    @Test
+    public void testTypingMergesIntoOneChange() {
+        LspService.PendingChanges pending = new LspService.PendingChanges();
+        String text = "int ;";
+        for (char c : "count".toCharArray()) {
+            int pos = text.indexOf(';');
+            text = text.substring(0, pos) + c + text.substring(pos);
+            pending.add(0, pos, "", String.valueOf(c), text);
+        }
+        LspService.PendingChanges.Batch batch = pending.drain();
+        assertEquals(1, batch.changes.size());
+        assertEquals("count", batch.changes.get(0).getText());
+        assertEquals("int count;", apply("int ;", batch.changes));
+    }
+
+    @Test
+    public void testTooManyChangesFallBackToFullText() {
+        LspService.PendingChanges pending = new LspService.PendingChanges();
+        for (int i = 0; i <= LspService.PendingChanges.MAX_CHANGES; i++) pending.add(i, 0, "", "x", "text");
+        LspService.PendingChanges.Batch batch = pending.drain();
+        assertNull(batch.changes);
+        assertEquals("text", batch.text);
+    }
+
+    @Test
+    public void testSyncKindFromCapabilities() {
+        ServerCapabilities caps = new ServerCapabilities();
+        caps.setTextDocumentSync(TextDocumentSyncKind.Incremental);
+        assertEquals(TextDocumentSyncKind.Incremental, LspService.syncKind(new InitializeResult(caps)));
+        TextDocumentSyncOptions options = new TextDocumentSyncOptions();
+        options.setChange(TextDocumentSyncKind.Full);
+        caps.setTextDocumentSync(options);
+        assertEquals(TextDocumentSyncKind.Full, LspService.syncKind(new InitializeResult(caps)));
+        assertEquals(TextDocumentSyncKind.Full, LspService.syncKind(new InitializeResult(new ServerCapabilities())));
+    }
+}
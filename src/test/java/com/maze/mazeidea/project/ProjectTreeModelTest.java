@@ -0,0 +1,104 @@
+package com.maze.mazeidea.project;
+
+import com.maze.mazeidea.fs.FileEvent;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ProjectTreeModelTest {
+    private static List<String> names(List<ProjectTreeModel.Entry> entries) {
+        return entries.stream().map(e -> e.path.getFileName() + (e.directory ? "/" : "")).collect(Collectors.toList());
+    }
+
+    private static FileEvent event(Path path, FileEvent.EventType type) {
+        return new FileEvent(path, type, System.currentTimeMillis());
+    }
+
+    @Test
+    public void testListsSortedAndCached() throws Exception {
+        Path dir = Files.createTempDirectory("tree");
+        Files.createDirectory(dir.resolve("src"));
+        Files.createDirectory(dir.resolve("Docs"));
+        Files.writeString(dir.resolve("pom.xml"), "");
+        Files.writeString(dir.resolve("README.md"), "");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ProjectTreeModel model = new ProjectTreeModel(executor, d -> true);
+            assertNull(model.cached(dir));
+            List<ProjectTreeModel.Entry> entries = model.list(dir).get(5, TimeUnit.SECONDS);
+            assertEquals(List.of("Docs/", "src/", "pom.xml", "README.md"), names(entries));
+            assertSame(entries, model.cached(dir));
+            assertSame(entries, model.list(dir).get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEventsUpdateKeptListings() throws Exception {
+        Path dir = Files.createTempDirectory("tree").toAbsolutePath().normalize();
+        Path sub = Files.createDirectory(dir.resolve("sub"));
+        Files.writeString(sub.resolve("a.txt"), "");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ProjectTreeModel model = new ProjectTreeModel(executor, d -> true);
+            model.list(dir).get(5, TimeUnit.SECONDS);
+            model.list(sub).get(5, TimeUnit.SECONDS);
+            List<List<ProjectTreeModel.Entry>> seen = new ArrayList<>();
+            model.watch(dir, seen::add);
+
+            Path created = Files.createDirectory(dir.resolve("new"));
+            Files.writeString(dir.resolve("b.txt"), "");
+            model.applyEvents(List.of(event(created, FileEvent.EventType.CREATE),
+                    event(dir.resolve("b.txt"), FileEvent.EventType.CREATE),
+                    event(dir.resolve("b.txt"), FileEvent.EventType.MODIFY),
+                    event(Path.of("/elsewhere/x"), FileEvent.EventType.CREATE)));
+            assertEquals(1, seen.size());
+            assertEquals(List.of("new/", "sub/", "b.txt"), names(seen.get(0)));
+            assertSame(seen.get(0), model.cached(dir));
+
+            // deleting a folder drops it from its parent and forgets its own listing
+            Files.delete(sub.resolve("a.txt"));
+            Files.delete(sub);
+            model.applyEvents(List.of(event(sub, FileEvent.EventType.DELETE)));
+            assertEquals(List.of("new/", "b.txt"), names(model.cached(dir)));
+            assertNull(model.cached(sub));
+            assertTrue(model.list(sub).get(5, TimeUnit.SECONDS).isEmpty());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testForgottenListingIsReadAgain() throws Exception {
+        Path dir = Files.createTempDirectory("tree");
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            ProjectTreeModel model = new ProjectTreeModel(executor, d -> !d.endsWith("node_modules"));
+            assertTrue(model.isWatched(dir));
+            assertFalse(model.isWatched(dir.resolve("node_modules")));
+            assertTrue(model.list(dir).get(5, TimeUnit.SECONDS).isEmpty());
+            // no event reports this file; only reading the directory again finds it
+            Files.writeString(dir.resolve("late.txt"), "");
+            assertTrue(model.list(dir).get(5, TimeUnit.SECONDS).isEmpty());
+            model.forget(dir);
+            assertNull(model.cached(dir));
+            assertEquals(List.of("late.txt"), names(model.list(dir).get(5, TimeUnit.SECONDS)));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.maze.mazeidea.trace;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class StallDetectorTest {
+    @Test
+    public void testRecordsStallWithBlockingStack() throws Exception {
+        // a single thread stands in for the FX application thread
+        ExecutorService ui = Executors.newSingleThreadExecutor();
+        AtomicReference<Thread> uiThread = new AtomicReference<>();
+        ui.submit(() -> uiThread.set(Thread.currentThread())).get();
+
+        StallDetector detector = new StallDetector(uiThread.get(), ui::execute, 100, 8);
+        detector.start();
+        Thread.sleep(150);
+        ui.submit(StallDetectorTest::blockingHandler);
+        long deadline = System.currentTimeMillis() + 5000;
+        while (detector.totalStalls() == 0 && System.currentTimeMillis() < deadline) Thread.sleep(20);
+        detector.stop();
+        ui.shutdownNow();
+
+        List<StallDetector.Stall> stalls = detector.stalls();
+        assertEquals(1, stalls.size());
+        StallDetector.Stall stall = stalls.get(0);
+        assertTrue(stall.durationMillis() >= 300, "duration " + stall.durationMillis());
+        assertTrue(stall.samples().stream().anyMatch(stack -> Arrays.stream(stack)
+                .anyMatch(f -> f.getMethodName().equals("blockingHandler"))));
+
+        Path out = Files.createTempFile("stalls", ".txt");
+        detector.dump(out);
+        assertTrue(Files.readString(out).contains("blockingHandler"));
+    }
+
+    private static void blockingHandler() {
+        try { Thread.sleep(400); } catch (InterruptedException ignored) {}
+    }
+}
@@ -0,0 +1,65 @@
+package com.maze.mazeidea.trace;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.StringWriter;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TracerTest {
+
+    @BeforeEach
+    public void setUp() {
+        Tracer.setEnabled(true);
+        Tracer.reset();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        Tracer.setEnabled(false);
+        Tracer.reset();
+    }
+
+    @Test
+    public void nestedSpansRecordDepthAndDuration() {
+        try (Tracer.Span outer = Tracer.begin("outer")) {
+            try (Tracer.Span inner = Tracer.begin("inner", "detail")) {
+                assertEquals(1, inner.depth());
+            }
+            assertEquals(0, outer.depth());
+        }
+        List<Tracer.Span> spans = Tracer.spans();
+        assertEquals(2, spans.size());
+        assertEquals("inner", spans.get(0).name());
+        assertEquals("outer", spans.get(1).name());
+        assertTrue(spans.get(1).durationNanos() >= spans.get(0).durationNanos());
+        assertTrue(spans.get(0).startNanos() >= spans.get(1).startNanos());
+    }
+
+    @Test
+    public void disabledTracerRecordsNothing() {
+        Tracer.setEnabled(false);
+        try (Tracer.Span ignored = Tracer.begin("skipped")) {
+            Tracer.instant("marker");
+        }
+        assertTrue(Tracer.spans().isEmpty());
+    }
+
+    @Test
+    public void exportsChromeTraceEvents() throws Exception {
+        try (Tracer.Span ignored = Tracer.begin("load \"fxml\"")) {
+            Tracer.instant("shown");
+        }
+        StringWriter out = new StringWriter();
+        Tracer.writeChromeTrace(out);
+        String json = out.toString();
+        assertTrue(json.startsWith("{\"displayTimeUnit\":\"ms\",\"traceEvents\":["));
+        assertTrue(json.contains("\"name\":\"load \\\"fxml\\\"\""));
+        assertTrue(json.contains("\"ph\":\"X\""));
+        assertTrue(json.contains("\"ph\":\"i\""));
+        assertTrue(json.contains("\"thread_name\""));
+    }
+}
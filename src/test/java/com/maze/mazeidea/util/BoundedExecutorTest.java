@@ -0,0 +1,110 @@
+package com.maze.mazeidea.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BoundedExecutorTest {
+    @Test
+    public void testLimitsConcurrencyOnSharedExecutor() throws Exception {
+        ExecutorService shared = Executors.newCachedThreadPool();
+        BoundedExecutor bounded = new BoundedExecutor(shared, 3);
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        for (int i = 0; i < 20; i++) {
+            bounded.execute(() -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try { Thread.sleep(10); } catch (InterruptedException ignored) {}
+                running.decrementAndGet();
+            });
+        }
+        bounded.shutdown();
+        assertTrue(bounded.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(3, peak.get());
+        // the shared executor is untouched
+        assertTrue(!shared.isShutdown());
+        shared.shutdownNow();
+    }
+
+    @Test
+    public void testLimitOfOneRunsInOrderAndShutdownNowDropsQueue() throws Exception {
+        ExecutorService shared = Executors.newCachedThreadPool();
+        BoundedExecutor serial = new BoundedExecutor(shared, 1);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            int n = i;
+            serial.execute(() -> order.add(n));
+        }
+        CountDownLatch started = new CountDownLatch(1);
+        serial.execute(() -> {
+            started.countDown();
+            try { Thread.sleep(10_000); } catch (InterruptedException ignored) {}
+        });
+        serial.execute(() -> order.add(-1));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(1, serial.shutdownNow().size());
+        assertTrue(serial.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(50, order.size());
+        for (int i = 0; i < 50; i++) assertEquals(i, order.get(i));
+        shared.shutdownNow();
+    }
+
+    @Test
+    public void testTaskRefusedByBackingExecutorIsRetriedOrFailed() throws Exception {
+        ExecutorService shared = Executors.newCachedThreadPool();
+        AtomicInteger refuse = new AtomicInteger();
+        // refuses as many tasks as asked to, then accepts again
+        Executor flaky = command -> {
+            if (refuse.getAndUpdate(n -> Math.max(0, n - 1)) > 0) throw new RejectedExecutionException("busy");
+            shared.execute(command);
+        };
+        BoundedExecutor bounded = new BoundedExecutor(flaky, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        bounded.execute(() -> {
+            try { release.await(); } catch (InterruptedException ignored) {}
+        });
+        // refused while another task runs: kept and started once that one is done
+        refuse.set(1);
+        CountDownLatch ran = new CountDownLatch(1);
+        bounded.execute(ran::countDown);
+        assertEquals(1, bounded.queued());
+        release.countDown();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+
+        // refused with nothing left running: the queued task fails instead of waiting for good
+        BoundedExecutor serial = new BoundedExecutor(flaky, 1);
+        CountDownLatch release2 = new CountDownLatch(1);
+        serial.execute(() -> {
+            try { release2.await(); } catch (InterruptedException ignored) {}
+        });
+        Future<?> waiting = serial.submit(() -> {});
+        assertEquals(1, serial.queued());
+        refuse.set(1);
+        release2.countDown();
+        for (int i = 0; i < 500 && !waiting.isDone(); i++) Thread.sleep(10);
+        assertTrue(waiting.isCancelled());
+        assertEquals(0, serial.queued());
+        // and a task refused straight away is rejected to the caller
+        for (int i = 0; i < 500 && serial.active() > 0; i++) Thread.sleep(10);
+        refuse.set(1);
+        assertThrows(RejectedExecutionException.class, () -> serial.execute(() -> {}));
+        assertEquals(0, serial.active());
+        bounded.execute(() -> {});
+        bounded.shutdown();
+        assertTrue(bounded.awaitTermination(5, TimeUnit.SECONDS));
+        shared.shutdownNow();
+    }
+}
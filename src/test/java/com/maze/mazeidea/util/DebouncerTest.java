@@ -0,0 +1,122 @@
+package com.maze.mazeidea.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class DebouncerTest {
+    // a timer on virtual time: scheduled tasks run, in order, when the test advances the clock past them
+    private static final class ManualTimer extends AbstractExecutorService implements ScheduledExecutorService {
+        private final List<Scheduled> tasks = new ArrayList<>();
+        long nanos;
+
+        private final class Scheduled implements ScheduledFuture<Object> {
+            final Runnable task;
+            final long at;
+            boolean cancelled, done;
+
+            Scheduled(Runnable task, long at) {
+                this.task = task;
+                this.at = at;
+            }
+
+            public long getDelay(TimeUnit unit) { return unit.convert(at - nanos, TimeUnit.NANOSECONDS); }
+            public int compareTo(Delayed o) { return Long.compare(getDelay(TimeUnit.NANOSECONDS), o.getDelay(TimeUnit.NANOSECONDS)); }
+            public boolean cancel(boolean interrupt) { return !done && (cancelled = true); }
+            public boolean isCancelled() { return cancelled; }
+            public boolean isDone() { return done || cancelled; }
+            public Object get() { return null; }
+            public Object get(long timeout, TimeUnit unit) { return null; }
+        }
+
+        void advance(long millis) {
+            long until = nanos + TimeUnit.MILLISECONDS.toNanos(millis);
+            while (true) {
+                Scheduled next = tasks.stream().filter(t -> !t.isDone() && t.at <= until)
+                        .min(Comparator.comparingLong(t -> t.at)).orElse(null);
+                if (next == null) break;
+                nanos = Math.max(nanos, next.at);
+                next.done = true;
+                next.task.run();
+            }
+            nanos = until;
+        }
+
+        public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+            Scheduled s = new Scheduled(command, nanos + unit.toNanos(delay));
+            tasks.add(s);
+            return s;
+        }
+        public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) { throw new UnsupportedOperationException(); }
+        public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) { throw new UnsupportedOperationException(); }
+        public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) { throw new UnsupportedOperationException(); }
+        public void execute(Runnable command) { command.run(); }
+        public void shutdown() {}
+        public List<Runnable> shutdownNow() { return List.of(); }
+        public boolean isShutdown() { return false; }
+        public boolean isTerminated() { return false; }
+        public boolean awaitTermination(long timeout, TimeUnit unit) { return true; }
+    }
+
+    @Test
+    public void testKeysCoalesceIndependently() {
+        ManualTimer timer = new ManualTimer();
+        Debouncer debouncer = new Debouncer(Runnable::run, timer, () -> timer.nanos);
+        List<String> ran = new ArrayList<>();
+        debouncer.debounce("a", () -> ran.add("a1"), 50);
+        debouncer.debounce("b", () -> ran.add("b1"), 50);
+        timer.advance(30);
+        debouncer.debounce("a", () -> ran.add("a2"), 50);
+        timer.advance(20);
+        // b has been quiet for 50ms, a only for 20ms
+        assertEquals(List.of("b1"), ran);
+        assertEquals(1, debouncer.pendingCount());
+        timer.advance(30);
+        assertEquals(List.of("b1", "a2"), ran);
+        assertEquals(0, debouncer.pendingCount());
+    }
+
+    @Test
+    public void testMaxWaitFlushesContinuousRequests() {
+        ManualTimer timer = new ManualTimer();
+        Debouncer debouncer = new Debouncer(Runnable::run, timer, () -> timer.nanos);
+        List<Integer> ran = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            int n = i;
+            debouncer.debounce("typing", () -> ran.add(n), 100, 150);
+            timer.advance(20);
+        }
+        // requests never pause for 100ms, but each burst is flushed 150ms after it began: at 140, 300, 460
+        assertEquals(List.of(7, 15, 23), ran);
+        debouncer.shutdown();
+        timer.advance(1000);
+        assertEquals(3, ran.size());
+    }
+
+    @Test
+    public void testRunsOnTheSharedTimer() throws Exception {
+        Debouncer debouncer = new Debouncer();
+        List<String> ran = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        debouncer.debounce("a", () -> ran.add("a1"), 500);
+        debouncer.debounce("a", () -> {
+            ran.add("a2");
+            done.countDown();
+        }, 500);
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(List.of("a2"), ran);
+    }
+}
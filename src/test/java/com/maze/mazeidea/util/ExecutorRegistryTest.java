@@ -0,0 +1,96 @@
+package com.maze.mazeidea.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RecursiveTask;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ExecutorRegistryTest {
+    private static ExecutorRegistry.PoolStats stats(ExecutorRegistry registry, String name) {
+        return registry.snapshot().stream().filter(s -> s.name().equals(name)).findFirst().orElseThrow();
+    }
+
+    @Test
+    public void testReportsQueueDepthCompletionsAndRejections() throws Exception {
+        ExecutorRegistry registry = new ExecutorRegistry();
+        ExecutorService pool = registry.single("test-worker");
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch started = new CountDownLatch(1);
+        pool.execute(() -> {
+            started.countDown();
+            try { release.await(); } catch (InterruptedException ignored) {}
+        });
+        for (int i = 0; i < 4; i++) pool.execute(() -> {});
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        ExecutorRegistry.PoolStats busy = stats(registry, "test-worker");
+        assertEquals(1, busy.active());
+        assertEquals(4, busy.queued());
+        assertTrue(registry.report().contains("test-worker"));
+
+        release.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertThrows(RejectedExecutionException.class, () -> pool.execute(() -> {}));
+
+        ExecutorRegistry.PoolStats done = stats(registry, "test-worker");
+        assertEquals(5, done.completed());
+        assertEquals(1, done.rejected());
+        assertEquals(5, done.runTimes().count());
+        assertEquals(5, done.waitTimes().count());
+    }
+
+    @Test
+    public void testForkJoinPoolTimesOutsideSubmissionsOnly() throws Exception {
+        ExecutorRegistry registry = new ExecutorRegistry();
+        ForkJoinPool pool = registry.forkJoin("test-fj", 2);
+        assertEquals(55, (int) pool.invoke(new Fib(10)));
+        pool.submit(() -> 1).get(5, TimeUnit.SECONDS);
+        CountDownLatch ran = new CountDownLatch(1);
+        pool.execute(ran::countDown);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5, TimeUnit.SECONDS));
+        assertThrows(RejectedExecutionException.class, () -> pool.execute(() -> {}));
+
+        // the forked subtasks of Fib are part of its one run
+        ExecutorRegistry.PoolStats done = stats(registry, "test-fj");
+        assertEquals(3, done.completed());
+        assertEquals(1, done.rejected());
+        assertEquals(3, done.runTimes().count());
+        assertEquals(3, done.waitTimes().count());
+    }
+
+    private static final class Fib extends RecursiveTask<Integer> {
+        private final int n;
+
+        Fib(int n) {
+            this.n = n;
+        }
+
+        @Override
+        protected Integer compute() {
+            if (n < 2) return n;
+            Fib a = new Fib(n - 1);
+            a.fork();
+            return new Fib(n - 2).compute() + a.join();
+        }
+    }
+
+    @Test
+    public void testHistogramPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) h.record(TimeUnit.MICROSECONDS.toNanos(10));
+        h.record(TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(16, h.percentileMicros(50));
+        assertTrue(h.percentileMicros(100) >= 50_000);
+    }
+}